@@ -33,7 +33,9 @@ import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.util.SortedListAdapterCallback;
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.view.animation.Animation;
 import android.view.animation.AnimationUtils;
@@ -44,6 +46,7 @@ import org.y20k.transistor.core.Station;
 import org.y20k.transistor.helpers.DialogError;
 import org.y20k.transistor.helpers.LogHelper;
 import org.y20k.transistor.helpers.PlaybackStatus;
+import org.y20k.transistor.helpers.Preconnector;
 import org.y20k.transistor.helpers.ShortcutHelper;
 import org.y20k.transistor.helpers.SingletonProperties;
 import org.y20k.transistor.helpers.StationContextMenu;
@@ -53,6 +56,7 @@ import org.y20k.transistor.sqlcore.StationsDbHelper;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.List;
 import java.util.Objects;
 
 
@@ -92,6 +96,10 @@ public class CollectionAdapter extends RecyclerView.Adapter<CollectionAdapterVie
                 int result = Integer.compare(station2.IS_FAVOURITE, station1.IS_FAVOURITE);
                 if (result == 0) {//equal
                     result = station1.CATEGORY.compareToIgnoreCase(station2.CATEGORY);
+                    if (result == 0) {
+                        // dead stations go to the end of their category
+                        result = Boolean.compare(station1.isUnhealthy(), station2.isUnhealthy());
+                    }
                     if (result == 0) {
                         result = station1.TITLE.compareToIgnoreCase(station2.TITLE);
                     }
@@ -326,6 +334,41 @@ public class CollectionAdapter extends RecyclerView.Adapter<CollectionAdapterVie
             }
         });
 
+        // a press on a station usually ends in play (long click) or the player screen - warm up its connection meanwhile
+        final Runnable preconnectRunnable = new Runnable() {
+            @Override
+            public void run() {
+                int adapterPosition = holder.getAdapterPosition();
+                if (adapterPosition != RecyclerView.NO_POSITION) {
+                    Preconnector.preconnect(mActivity, mStationList.get(adapterPosition));
+                }
+            }
+        };
+        holder.itemView.setOnTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View view, MotionEvent event) {
+                if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                    // wait for tap timeout - scrolling cancels the press
+                    view.postDelayed(preconnectRunnable, ViewConfiguration.getTapTimeout());
+                } else if (event.getActionMasked() == MotionEvent.ACTION_CANCEL) {
+                    view.removeCallbacks(preconnectRunnable);
+                }
+                return false;
+            }
+        });
+        holder.itemView.setOnHoverListener(new View.OnHoverListener() {
+            @Override
+            public boolean onHover(View view, MotionEvent event) {
+                if (event.getActionMasked() == MotionEvent.ACTION_HOVER_ENTER) {
+                    // mouse or stylus pointing at station
+                    view.postDelayed(preconnectRunnable, ViewConfiguration.getTapTimeout());
+                } else if (event.getActionMasked() == MotionEvent.ACTION_HOVER_EXIT) {
+                    view.removeCallbacks(preconnectRunnable);
+                }
+                return false;
+            }
+        });
+
     }
 
     private String getTitleOfBox(Station station, int position) {
@@ -608,6 +651,30 @@ public class CollectionAdapter extends RecyclerView.Adapter<CollectionAdapterVie
         }
     }
 
+    /* Applies catalog sync to collection - one batched update of the sorted list. Returns number of stations changed */
+    public int applyCatalogChanges(List<Station> updatedStations, long[] removedStationIds) {
+        mStationList.beginBatchedUpdates();
+        try {
+            for (long removedStationId : removedStationIds) {
+                int position = getItemPosition(removedStationId);
+                if (position >= 0) {
+                    mStationList.removeItemAt(position);
+                }
+            }
+            for (Station station : updatedStations) {
+                int position = getItemPosition(station._ID);
+                if (position >= 0) {
+                    mStationList.updateItemAt(position, station);
+                } else {
+                    mStationList.add(station);
+                }
+            }
+        } finally {
+            mStationList.endBatchedUpdates();
+        }
+        return removedStationIds.length + updatedStations.size();
+    }
+
     /* change Rating station within collection */
     public int updateItemAtPosition(Station station, int position) {
         // name of station is new
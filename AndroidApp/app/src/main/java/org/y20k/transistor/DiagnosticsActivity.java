@@ -0,0 +1,221 @@
+/**
+ * DiagnosticsActivity.java
+ * Implements the DiagnosticsActivity class
+ * The DiagnosticsActivity shows percentiles of the playback quality histograms and exports them as CSV
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor;
+
+import android.content.Intent;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import org.y20k.transistor.core.QoeHistogram;
+import org.y20k.transistor.sqlcore.StationsDbHelper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * DiagnosticsActivity class
+ * Hidden screen for testing startup tuning on real devices - histograms of all stations come first, then one
+ * block per station. Percentiles are bucket bounds, so "<=500" means the value lies in the bucket up to 500.
+ */
+public final class DiagnosticsActivity extends AppCompatActivity {
+
+    /* Define log tag */
+    private static final String LOG_TAG = DiagnosticsActivity.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final int[] PERCENTILES = {50, 90, 99};
+    private static final long ALL_STATIONS = -1;
+    private TextView mTextView;
+    private List<QoeHistogram> mHistograms = new ArrayList<>();
+
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+        mTextView = (TextView) findViewById(R.id.diagnostics_text);
+        new LoadHistogramsHelper(false).execute();
+    }
+
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_diagnostics_actionbar, menu);
+        return super.onCreateOptionsMenu(menu);
+    }
+
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.menu_export_csv:
+                exportCsv();
+                return true;
+            case R.id.menu_reset_diagnostics:
+                new LoadHistogramsHelper(true).execute();
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+
+    /* Shares histograms as CSV - one line per station and metric */
+    private void exportCsv() {
+        if (mHistograms.isEmpty()) {
+            Toast.makeText(this, R.string.toastmessage_diagnostics_empty, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        StringBuilder csv = new StringBuilder("station_id,station,metric,sessions");
+        for (int percent : PERCENTILES) {
+            csv.append(",p").append(percent);
+        }
+        csv.append(",buckets\n");
+        for (QoeHistogram histogram : mHistograms) {
+            csv.append(histogram.getStationId()).append(',')
+                    .append(quote(getStationTitle(histogram))).append(',')
+                    .append(histogram.getMetric()).append(',')
+                    .append(histogram.getCount());
+            for (int percent : PERCENTILES) {
+                csv.append(',').append(histogram.formatPercentile(percent));
+            }
+            csv.append(',').append(quote(histogram.toString())).append('\n');
+        }
+
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType("text/csv");
+        intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.title_activity_diagnostics));
+        intent.putExtra(Intent.EXTRA_TEXT, csv.toString());
+        startActivity(Intent.createChooser(intent, getString(R.string.menu_export_csv)));
+    }
+
+
+    /* Shows percentiles of histograms */
+    private void showHistograms() {
+        if (mHistograms.isEmpty()) {
+            mTextView.setText(R.string.toastmessage_diagnostics_empty);
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        long stationId = Long.MIN_VALUE;
+        for (QoeHistogram histogram : mHistograms) {
+            if (histogram.getStationId() != stationId) {
+                stationId = histogram.getStationId();
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(getStationTitle(histogram)).append('\n');
+                text.append(String.format(Locale.US, "%-15s %6s", "metric", "n"));
+                for (int percent : PERCENTILES) {
+                    text.append(String.format(Locale.US, " %8s", "p" + percent));
+                }
+                text.append('\n');
+            }
+            text.append(String.format(Locale.US, "%-15s %6d", histogram.getMetric(), histogram.getCount()));
+            for (int percent : PERCENTILES) {
+                text.append(String.format(Locale.US, " %8s", histogram.formatPercentile(percent)));
+            }
+            text.append('\n');
+        }
+        mTextView.setText(text.toString());
+    }
+
+
+    /* Returns title for the histograms of a station */
+    private static String getStationTitle(QoeHistogram histogram) {
+        if (histogram.getStationId() == ALL_STATIONS) {
+            return "All stations";
+        } else if (histogram.getStationTitle() == null) {
+            return "Station " + histogram.getStationId();
+        }
+        return histogram.getStationTitle();
+    }
+
+
+    /* Quotes a CSV field */
+    private static String quote(String field) {
+        return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+
+
+    /* Merges histograms of all stations per metric - in order of QoeHistogram.METRICS */
+    private static List<QoeHistogram> mergeStations(List<QoeHistogram> histograms) {
+        Map<String, QoeHistogram> merged = new LinkedHashMap<>();
+        for (String metric : QoeHistogram.METRICS) {
+            merged.put(metric, new QoeHistogram(ALL_STATIONS, null, metric, null));
+        }
+        for (QoeHistogram histogram : histograms) {
+            QoeHistogram total = merged.get(histogram.getMetric());
+            if (total != null) {
+                total.merge(histogram);
+            }
+        }
+        List<QoeHistogram> result = new ArrayList<>();
+        for (QoeHistogram histogram : merged.values()) {
+            if (histogram.getCount() > 0) {
+                result.add(histogram);
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Inner class: Loads histograms in background - deletes them first if requested
+     */
+    private class LoadHistogramsHelper extends AsyncTask<Void, Void, List<QoeHistogram>> {
+
+        private final boolean mReset;
+
+        private LoadHistogramsHelper(boolean reset) {
+            mReset = reset;
+        }
+
+        @Override
+        protected List<QoeHistogram> doInBackground(Void... voids) {
+            StationsDbHelper dbHelper = new StationsDbHelper(getApplicationContext());
+            if (mReset) {
+                dbHelper.DeleteQoeHistograms();
+            }
+            List<QoeHistogram> histograms = dbHelper.GetQoeHistograms();
+            List<QoeHistogram> result = mergeStations(histograms);
+            result.addAll(histograms);
+            return result;
+        }
+
+        @Override
+        protected void onPostExecute(List<QoeHistogram> histograms) {
+            if (isFinishing()) {
+                return;
+            }
+            mHistograms = histograms;
+            showHistograms();
+        }
+    }
+    /**
+     * End of inner class
+     */
+
+}
@@ -17,6 +17,7 @@ package org.y20k.transistor;
 import android.content.Intent;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
+import android.view.View;
 
 import org.y20k.transistor.helpers.TransistorKeys;
 
@@ -42,6 +43,14 @@ public final class InfosheetActivity extends AppCompatActivity {
         // set activity view
         if (intent.hasExtra(TransistorKeys.EXTRA_INFOSHEET_CONTENT) && intent.getIntExtra(TransistorKeys.EXTRA_INFOSHEET_CONTENT, -1) == TransistorKeys.INFOSHEET_CONTENT_ABOUT) {
             setContentView(R.layout.fragment_infosheet_about);
+            // hidden entry to the playback diagnostics
+            findViewById(R.id.infosheet_about_title).setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View view) {
+                    startActivity(new Intent(InfosheetActivity.this, DiagnosticsActivity.class));
+                    return true;
+                }
+            });
         } else if (intent.hasExtra(TransistorKeys.EXTRA_INFOSHEET_CONTENT) && intent.getIntExtra(TransistorKeys.EXTRA_INFOSHEET_CONTENT, -1) == TransistorKeys.INFOSHEET_CONTENT_HOWTO) {
             setContentView(R.layout.fragment_infosheet_howto);
         }
@@ -57,8 +57,13 @@ import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
+import org.y20k.transistor.helpers.CatalogSyncService;
+import org.y20k.transistor.helpers.DataSaver;
 import org.y20k.transistor.helpers.DialogAdd;
 import org.y20k.transistor.helpers.LogHelper;
+import org.y20k.transistor.helpers.Preconnector;
+import org.y20k.transistor.helpers.SingletonProperties;
+import org.y20k.transistor.helpers.StationHealthService;
 import org.y20k.transistor.helpers.StorageHelper;
 import org.y20k.transistor.helpers.TransistorKeys;
 
@@ -106,6 +111,17 @@ public final class MainActivity extends AppCompatActivity implements NavigationV
         // initialize broadcast receivers
         initializeBroadcastReceivers();
 
+        // warm up connection to last played station - it is likely to be played again
+        if (savedInstanceState == null) {
+            Preconnector.preconnect(this, SingletonProperties.getInstance().getLastRunningStation_ID());
+        }
+
+        // probe stations in background from time to time - dead stations sink to the end of the list
+        StationHealthService.schedule(this);
+
+        // keep stations of the remote catalog up to date
+        CatalogSyncService.schedule(this);
+
         //Mal:toolbar and Drawer
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -276,6 +292,15 @@ public final class MainActivity extends AppCompatActivity implements NavigationV
             searchView.setSearchableInfo(
                     searchManager.getSearchableInfo(getComponentName()));
 
+            // show state of data saver
+            menu.findItem(R.id.menu_data_saver).setChecked(DataSaver.isEnabled(this));
+
+            // low-latency playback engine is not finished - toggle only in debug builds
+            MenuItem playbackEngineItem = menu.findItem(R.id.menu_playback_engine);
+            playbackEngineItem.setVisible(BuildConfig.DEBUG);
+            String playbackEngine = PreferenceManager.getDefaultSharedPreferences(this).getString(TransistorKeys.PREF_PLAYBACK_ENGINE, TransistorKeys.PLAYBACK_ENGINE_MEDIA_PLAYER);
+            playbackEngineItem.setChecked(TransistorKeys.PLAYBACK_ENGINE_AUDIO_TRACK.equals(playbackEngine));
+
         }catch(Exception ex){
             LogHelper.e(LOG_TAG, ex.getMessage());
         }finally {
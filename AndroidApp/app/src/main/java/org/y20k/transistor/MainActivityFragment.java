@@ -30,6 +30,7 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.Parcelable;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
@@ -53,6 +54,7 @@ import com.facebook.drawee.backends.pipeline.Fresco;
 import com.facebook.imagepipeline.core.ImagePipeline;
 
 import org.y20k.transistor.core.Station;
+import org.y20k.transistor.helpers.DataSaver;
 import org.y20k.transistor.helpers.DialogAdd;
 import org.y20k.transistor.helpers.DialogInitial;
 import org.y20k.transistor.helpers.ImageHelper;
@@ -117,6 +119,8 @@ public final class MainActivityFragment extends Fragment {
     private SleepTimerService mSleepTimerService;
     private String mSleepTimerNotificationMessage;
     private Snackbar mSleepTimerNotification;
+    private final Handler mSleepTimerHandler = new Handler();
+    private static final int SLEEP_TIMER_UPDATE_INTERVAL = 1000; // ms
     private ProgressDialog progressDialogLoading;
     private int mLayoutViewManager;
 
@@ -254,19 +258,9 @@ public final class MainActivityFragment extends Fragment {
                 //if no records only we will try to import init data
                 //First Show Init Layout and refresh button
                 mRelativeEmptyView.setVisibility(View.VISIBLE);
-                //load XML initial data
-                //check for internet connection
-                if (isOnline()) {
-                    LogHelper.v(LOG_TAG, "User is Online.");
-                    Toast.makeText(mActivity, "You're Online", Toast.LENGTH_SHORT).show();
-                    //open new dialog to import/download init XML data
-                    DialogInitial dialogInit = new DialogInitial(mActivity, mFolder);
-                    dialogInit.show();
-                } else {
-                    LogHelper.v(LOG_TAG, "User is not Online.");
-                    //Toast.makeText(this, "You're not Online", Toast.LENGTH_SHORT).show();
-                    Toast.makeText(mActivity, "You're not Online :(", Toast.LENGTH_SHORT).show();
-                }
+                //load initial data - the starter catalog is part of the app, no internet connection needed
+                DialogInitial dialogInit = new DialogInitial(mActivity, mFolder);
+                dialogInit.show();
             } else {
                 //if there are records we shouldn't try again import init data
                 save_PREF_INITIAL_DATA_LOADED_State(mActivity);
@@ -356,13 +350,23 @@ public final class MainActivityFragment extends Fragment {
 
         // show notification bar if timer is running
         if (mSleepTimerRunning) {
-            showSleepTimerNotification(-1);
+            showSleepTimerNotification(SleepTimerService.getDeadline(mActivity) - System.currentTimeMillis());
+        } else if (mSleepTimerNotification != null && mSleepTimerNotification.isShown()) {
+            // timer expired while in background
+            mSleepTimerNotification.dismiss();
         }
 
         //check if initial xml data loaded
         runInitialDataRefreshIfFirstTime();
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        // remaining time of sleep timer is only updated while visible
+        mSleepTimerHandler.removeCallbacks(mSleepTimerUpdateRunnable);
+    }
+
     @Override
     public void onStart() {
         LogHelper.i("MainActivityFragment", "onStart");
@@ -409,6 +413,25 @@ public final class MainActivityFragment extends Fragment {
                 dialog.show();
                 return true;
 
+            // CASE DATA SAVER
+            case R.id.menu_data_saver:
+                boolean dataSaverEnabled = !item.isChecked();
+                item.setChecked(dataSaverEnabled);
+                DataSaver.setEnabled(mActivity, dataSaverEnabled);
+                Toast.makeText(mActivity, dataSaverEnabled ? R.string.toastmessage_data_saver_enabled
+                        : R.string.toastmessage_data_saver_disabled, Toast.LENGTH_SHORT).show();
+                return true;
+
+            // CASE PLAYBACK ENGINE (debug builds only)
+            case R.id.menu_playback_engine:
+                boolean audioTrackEngine = !item.isChecked();
+                item.setChecked(audioTrackEngine);
+                PreferenceManager.getDefaultSharedPreferences(mActivity).edit()
+                        .putString(TransistorKeys.PREF_PLAYBACK_ENGINE, audioTrackEngine ? TransistorKeys.PLAYBACK_ENGINE_AUDIO_TRACK : TransistorKeys.PLAYBACK_ENGINE_MEDIA_PLAYER)
+                        .apply();
+                Toast.makeText(mActivity, R.string.toastmessage_playback_engine_changed, Toast.LENGTH_SHORT).show();
+                return true;
+
             // CASE ABOUT
             case R.id.menu_about:
                 // get title and content
@@ -692,14 +715,15 @@ public final class MainActivityFragment extends Fragment {
 
     /* Starts timer service and notification */
     private void startSleepTimer(long duration) {
-        // start timer service
+        // start timer service - a running timer is extended
         if (mSleepTimerService == null) {
             mSleepTimerService = new SleepTimerService();
         }
+        long remainingTime = Math.max(0, SleepTimerService.getDeadline(mActivity) - System.currentTimeMillis()) + duration;
         mSleepTimerService.startActionStart(mActivity, duration);
 
         // show timer notification
-        showSleepTimerNotification(duration);
+        showSleepTimerNotification(remainingTime);
         mSleepTimerRunning = true;
         LogHelper.v(LOG_TAG, "Starting timer service and notification.");
     }
@@ -712,6 +736,7 @@ public final class MainActivityFragment extends Fragment {
             mSleepTimerService.startActionStop(mActivity);
         }
         // cancel notification
+        mSleepTimerHandler.removeCallbacks(mSleepTimerUpdateRunnable);
         if (mSleepTimerNotification != null && mSleepTimerNotification.isShown()) {
             mSleepTimerNotification.dismiss();
         }
@@ -738,6 +763,7 @@ public final class MainActivityFragment extends Fragment {
             @Override
             public void onClick(View view) {
                 // stop sleep timer service
+                mSleepTimerHandler.removeCallbacks(mSleepTimerUpdateRunnable);
                 mSleepTimerService.startActionStop(mActivity);
                 mSleepTimerRunning = false;
                 saveAppState(mActivity);
@@ -748,9 +774,29 @@ public final class MainActivityFragment extends Fragment {
         });
         mSleepTimerNotification.show();
 
+        // count down while visible
+        mSleepTimerHandler.removeCallbacks(mSleepTimerUpdateRunnable);
+        mSleepTimerHandler.postDelayed(mSleepTimerUpdateRunnable, SLEEP_TIMER_UPDATE_INTERVAL);
+
     }
 
 
+    /* Updates remaining time in sleep timer notification - the deadline is stored by SleepTimerService */
+    private final Runnable mSleepTimerUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mSleepTimerNotification == null || !mSleepTimerNotification.isShown()) {
+                return;
+            }
+            long deadline = SleepTimerService.getDeadline(mActivity);
+            if (deadline > 0) {
+                mSleepTimerNotification.setText(mSleepTimerNotificationMessage + getReadableTime(deadline - System.currentTimeMillis()));
+            }
+            mSleepTimerHandler.postDelayed(this, SLEEP_TIMER_UPDATE_INTERVAL);
+        }
+    };
+
+
     /* Translates milliseconds into minutes and seconds */
     private String getReadableTime(long remainingTime) {
         return String.format(Locale.getDefault(), "%02d:%02d",
@@ -835,18 +881,18 @@ public final class MainActivityFragment extends Fragment {
         IntentFilter imageChangeRequestIntentFilter = new IntentFilter(TransistorKeys.ACTION_IMAGE_CHANGE_REQUESTED);
         LocalBroadcastManager.getInstance(mApplication).registerReceiver(mImageChangeRequestReceiver, imageChangeRequestIntentFilter);
 
-        // RECEIVER: sleep timer service sends updates
+        // RECEIVER: sleep timer service reports expiry
         mSleepTimerStartedReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                // get duration from intent
+                // get remaining time from intent - 0 once the timer expired
                 long remaining = intent.getLongExtra(TransistorKeys.EXTRA_TIMER_REMAINING, 0);
-                if (mSleepTimerNotification != null && remaining > 0) {
-                    // update existing notification
-                    mSleepTimerNotification.setText(mSleepTimerNotificationMessage + getReadableTime(remaining));
-                } else if (mSleepTimerNotification != null) {
+                if (remaining <= 0) {
                     // cancel notification
-                    mSleepTimerNotification.dismiss();
+                    mSleepTimerHandler.removeCallbacks(mSleepTimerUpdateRunnable);
+                    if (mSleepTimerNotification != null) {
+                        mSleepTimerNotification.dismiss();
+                    }
                     // save state and update user interface
                     mPlayback = false;
                     mSleepTimerRunning = false;
@@ -989,6 +1035,18 @@ public final class MainActivityFragment extends Fragment {
                     mCollectionAdapter.notifyDataSetChanged();
                 }
                 break;
+            // CASE: stations of remote catalog were added, changed or removed
+            case TransistorKeys.STATION_CATALOG_SYNCED:
+                if (intent.hasExtra(TransistorKeys.EXTRA_STATIONS) && intent.hasExtra(TransistorKeys.EXTRA_REMOVED_STATION_IDS)) {
+                    ArrayList<Station> updatedStations = intent.getParcelableArrayListExtra(TransistorKeys.EXTRA_STATIONS);
+                    long[] removedStationIds = intent.getLongArrayExtra(TransistorKeys.EXTRA_REMOVED_STATION_IDS);
+                    mCollectionAdapter.applyCatalogChanges(updatedStations, removedStationIds);
+                    if (mCollectionAdapter.getItemCount() > 0) {
+                        toggleActionCall();
+                    }
+                }
+                break;
+
             case TransistorKeys.STATION_CHANGED_RATING:
                 if (intent.hasExtra(TransistorKeys.EXTRA_STATION)) {
 
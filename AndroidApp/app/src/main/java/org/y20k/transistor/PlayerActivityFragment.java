@@ -65,6 +65,7 @@ import org.y20k.transistor.helpers.LogHelper;
 import org.y20k.transistor.helpers.NotificationHelper;
 import org.y20k.transistor.helpers.PermissionHelper;
 import org.y20k.transistor.helpers.PlaybackStatus;
+import org.y20k.transistor.helpers.Preconnector;
 import org.y20k.transistor.helpers.ShortcutHelper;
 import org.y20k.transistor.helpers.SingletonProperties;
 import org.y20k.transistor.helpers.StorageHelper;
@@ -408,6 +409,15 @@ public final class PlayerActivityFragment extends Fragment {
                 LogHelper.v(LOG_TAG, "Staring playback from shortcut.");
             }
 
+        } else {
+            // user may press play any moment - warm up connection
+            Station currentStation = PlayerService.getStation();
+            if (mStation != null && (currentStation == null || !SingletonProperties.getInstance().getIsPlayback()
+                    || !currentStation.getStreamUri().equals(mStation.getStreamUri()))) {
+                Preconnector.preconnect(mActivity, mStation);
+            }
+            // user looks at another station than the one playing - let service warm it up
+            prepareStandby();
         }
 
         // set up button symbol and playback indicator
@@ -545,6 +555,20 @@ public final class PlayerActivityFragment extends Fragment {
     }
 
 
+    /* Asks player service to prepare this station in standby, if another station is playing */
+    private void prepareStandby() {
+        Station currentStation = PlayerService.getStation();
+        if (mStation == null || currentStation == null || !SingletonProperties.getInstance().getIsPlayback()
+                || currentStation.getStreamUri().equals(mStation.getStreamUri())) {
+            return;
+        }
+        Intent intent = new Intent(mActivity, PlayerService.class);
+        intent.setAction(TransistorKeys.ACTION_PREPARE_STANDBY);
+        intent.putExtra(TransistorKeys.EXTRA_STATION, mStation);
+        mActivity.startService(intent);
+    }
+
+
     /* Stops player service */
     private void stopPlayback() {
         // reset metadata
@@ -609,6 +633,15 @@ public final class PlayerActivityFragment extends Fragment {
                 return true;
             }
 
+            // CASE RECORD
+            case R.id.menu_record: {
+                // start or stop recording using intent
+                Intent intent = new Intent(mActivity, PlayerService.class);
+                intent.setAction(PlayerService.isRecording() ? TransistorKeys.ACTION_RECORD_STOP : TransistorKeys.ACTION_RECORD_START);
+                mActivity.startService(intent);
+                return true;
+            }
+
             // CASE DEFAULT
             default:
                 return defaultReturn;
@@ -23,12 +23,15 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
+import android.net.ConnectivityManager;
 import android.net.wifi.WifiManager;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -44,21 +47,36 @@ import android.util.Log;
 import android.widget.Toast;
 
 import org.y20k.transistor.core.Station;
+import org.y20k.transistor.core.StreamProfile;
+import org.y20k.transistor.helpers.AudioTrackEngine;
+import org.y20k.transistor.helpers.DataSaver;
+import org.y20k.transistor.helpers.DataUsageCounter;
 import org.y20k.transistor.helpers.LogHelper;
+import org.y20k.transistor.helpers.MediaPlayerEngine;
 import org.y20k.transistor.helpers.MetadataHelper;
+import org.y20k.transistor.helpers.MetadataTracker;
 import org.y20k.transistor.helpers.NotificationHelper;
+import org.y20k.transistor.helpers.PlaybackEngine;
+import org.y20k.transistor.helpers.PlaybackMetrics;
+import org.y20k.transistor.helpers.PlaybackScheduler;
 import org.y20k.transistor.helpers.PlaybackStatus;
+import org.y20k.transistor.helpers.Preconnector;
+import org.y20k.transistor.helpers.ReconnectManager;
 import org.y20k.transistor.helpers.SingletonProperties;
+import org.y20k.transistor.helpers.StorageHelper;
+import org.y20k.transistor.helpers.StreamProxy;
+import org.y20k.transistor.helpers.StreamMirrors;
+import org.y20k.transistor.helpers.StreamRecorder;
 import org.y20k.transistor.helpers.TransistorKeys;
+import org.y20k.transistor.sqlcore.StationsDbHelper;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
+import java.util.Map;
 
 
 /**
@@ -66,33 +84,64 @@ import okhttp3.Response;
  */
 public final class PlayerService extends MediaBrowserServiceCompat implements
         AudioManager.OnAudioFocusChangeListener,
-        MediaPlayer.OnBufferingUpdateListener,
-        MediaPlayer.OnCompletionListener,
-        MediaPlayer.OnPreparedListener,
-        MediaPlayer.OnErrorListener,
-        MediaPlayer.OnInfoListener {
+        PlaybackEngine.Listener {
 
     /* Define log tag */
     private static final String LOG_TAG = PlayerService.class.getSimpleName();
 
 
     /* Main class variables */
+    private static final int STANDBY_DELAY = 5000; // ms after playback started
+    private static final int STANDBY_TIMEOUT = 5 * 60 * 1000; // ms
+    private static final int STANDBY_MAX_AGE = 20 * 1000; // ms a prepared standby player may wait before it lags behind live
+    private static final int STANDBY_REANCHOR_LEAD = 10 * 1000; // ms before a known start time the last reconnect happens
+    private static final int STALLS_BEFORE_STEP_DOWN = 2;
+    private static final int FIRST_AUDIO_POLL_INTERVAL = 50; // ms
+    private static final int FIRST_AUDIO_TIMEOUT = 30000; // ms after player started
+    private static final int FADE_OUT_STEPS = 20;
+    private static final int FADE_OUT_STEP_DURATION = 250; // ms - fade lasts five seconds
+    private static final long SCHEDULE_WAKE_LOCK_TIMEOUT = PlaybackScheduler.PREBUFFER_LEAD + 30000; // ms
     private static Station mStation;
     private MetadataHelper mMetadataHelper;
+    private MetadataHelper mTimeShiftHelper;
+    private StreamListener mTimeShiftStreamListener;
+    private Handler mHandler;
+    private static boolean mRecording = false;
+    private MetadataTracker mMetadataTracker;
     private AudioManager mAudioManager;
-    private MediaPlayer mMediaPlayer;
+    private PlaybackEngine mPlaybackEngine;
+    private boolean mPlaybackEngineFallback;
+    private Station mStandbyStation;
+    private PlaybackEngine mStandbyEngine;
+    private MetadataHelper mStandbyMetadataHelper;
+    private StreamListener mStandbyStreamListener;
+    private String mStandbyVariantUri;
+    private boolean mStandbyPrepared;
+    private long mStandbyPreparedTime;
+    private long mStandbyStartTime; // elapsed realtime the standby player is going to be used at - 0 if unknown
+    private StreamProfile mStandbyProfile;
     private static MediaSessionCompat mSession;
     private static MediaControllerCompat mController;
     private int mStationID_Position;
     private String mStationMetadata;
     private String mStreamUri;
+    private volatile String mActiveMirror; // stream URI actually playing - the station's or one of its mirrors
+    private StreamListener mStreamListener;
+    private int mStallCount;
+    private int mVariantStepDown;
+    private volatile PlaybackMetrics mPlaybackMetrics;
+    private long mFirstAudioPollStart;
+    private int mFadeOutStep = -1; // step of the sleep timer fade, -1 if not fading
     private boolean mPlayback;
     private boolean mStationLoading;
     private boolean mStationMetadataReceived;
     private int mPlayerInstanceCounter;
     private HeadphoneUnplugReceiver mHeadphoneUnplugReceiver;
-    private int mReconnectCounter;
+    private ReconnectManager mReconnectManager;
     private WifiManager.WifiLock mWifiLock;
+    private PowerManager.WakeLock mScheduleWakeLock;
+    private Station mScheduledStation;
+    private int mScheduledStationPosition;
 
 
     /* Constructor (default) */
@@ -108,9 +157,37 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
 
         // set up variables
         mAudioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-        mMediaPlayer = null;
+        mPlaybackEngine = null;
         mPlayerInstanceCounter = 0;
-        mReconnectCounter = 0;
+        mHandler = new Handler();
+        deleteStaleTimeShiftFiles();
+        mReconnectManager = new ReconnectManager(this, new ReconnectManager.Listener() {
+            @Override
+            public void onReconnect() {
+                if (mPlaybackMetrics != null) {
+                    mPlaybackMetrics.onReconnect();
+                }
+                reconnectPlayback();
+            }
+
+            @Override
+            public void onStalled() {
+                // next connect prefers another mirror
+                StreamMirrors.reportFailure(mActiveMirror);
+                // repeated stalls - network cannot keep up, next connect uses a lower quality variant
+                mStallCount++;
+                if (mStallCount >= STALLS_BEFORE_STEP_DOWN) {
+                    mStallCount = 0;
+                    mVariantStepDown++;
+                    LogHelper.v(LOG_TAG, "Stream stalled repeatedly. Stepping down quality: " + mVariantStepDown);
+                }
+            }
+
+            @Override
+            public void onGiveUp() {
+                stopPlayback(false);
+            }
+        });
         mStationMetadataReceived = false;
         mSession = createMediaSession(this);
 
@@ -118,6 +195,11 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
         WifiManager wifi = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
         mWifiLock = wifi.createWifiLock(WifiManager.WIFI_MODE_FULL, "Transistor_lock");
 
+        // create wake lock for scheduled starts - the playback engines hold their own once playing
+        PowerManager powerManager = (PowerManager) getApplicationContext().getSystemService(Context.POWER_SERVICE);
+        mScheduleWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "Transistor_schedule");
+        mScheduleWakeLock.setReferenceCounted(false);
+
         try {
             mController = new MediaControllerCompat(getApplicationContext(), mSession.getSessionToken());
         } catch (RemoteException e) {
@@ -129,19 +211,18 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
         BroadcastReceiver metadataChangedReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                if (intent.hasExtra(TransistorKeys.EXTRA_METADATA) && intent.hasExtra(TransistorKeys.EXTRA_STATION)) {
+                // metadata is published by the MetadataTracker of the current playback session - it already saved it to preferences
+                if (mPlayback && mStation != null && intent.hasExtra(TransistorKeys.EXTRA_METADATA)) {
 
-                    Station station = intent.getParcelableExtra(TransistorKeys.EXTRA_STATION);
                     mStationMetadata = intent.getStringExtra(TransistorKeys.EXTRA_METADATA);
-                    saveAppState();
 
-                    if (!mStationMetadataReceived && station.equals(mStation)) {
+                    if (!mStationMetadataReceived) {
                         // race between onPrepared and MetadataHelper has been won by the latter
                         mStationMetadataReceived = true;
                     }
 
                     // update media session metadata
-                    mSession.setMetadata(getMetadata(context, station, mStationMetadata));
+                    mSession.setMetadata(getMetadata(context, mStation, mStationMetadata));
 
                     // update notification
                     NotificationHelper.update(mStation, mStationID_Position, mStationMetadata, mSession);
@@ -184,8 +265,14 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
         else if (intent.getAction().equals(TransistorKeys.ACTION_STOP)) {
             LogHelper.v(LOG_TAG, "Service received command: STOP");
 
-            // update controller - pause playback
-            mController.getTransportControls().pause();
+            if (intent.getBooleanExtra(TransistorKeys.EXTRA_FADE_OUT, false) && mPlaybackEngine != null && mPlaybackEngine.isPlaying()) {
+                // sleep timer - lower volume step by step before pausing
+                mFadeOutStep = 0;
+                mHandler.removeCallbacks(mFadeOutRunnable);
+                mHandler.post(mFadeOutRunnable);
+            } else {
+                stopPlaybackOnRequest();
+            }
 
         }
 
@@ -199,6 +286,40 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
 
         }
 
+        // ACTION RECORD START
+        else if (intent.getAction().equals(TransistorKeys.ACTION_RECORD_START)) {
+            LogHelper.v(LOG_TAG, "Service received command: RECORD START");
+            startRecording();
+        }
+
+        // ACTION RECORD STOP
+        else if (intent.getAction().equals(TransistorKeys.ACTION_RECORD_STOP)) {
+            LogHelper.v(LOG_TAG, "Service received command: RECORD STOP");
+            stopRecording();
+            Toast.makeText(this, R.string.toastmessage_recording_stopped, Toast.LENGTH_SHORT).show();
+        }
+
+        // ACTION PREPARE STANDBY
+        else if (intent.getAction().equals(TransistorKeys.ACTION_PREPARE_STANDBY)) {
+            LogHelper.v(LOG_TAG, "Service received command: PREPARE STANDBY");
+            if (intent.hasExtra(TransistorKeys.EXTRA_STATION)) {
+                Station station = intent.getParcelableExtra(TransistorKeys.EXTRA_STATION);
+                prepareStandby(station);
+            }
+        }
+
+        // ACTION PREPARE SCHEDULED - sent by the alarm of PlaybackScheduler
+        else if (intent.getAction().equals(TransistorKeys.ACTION_PREPARE_SCHEDULED)) {
+            LogHelper.v(LOG_TAG, "Service received command: PREPARE SCHEDULED");
+            long stationId = intent.getLongExtra(TransistorKeys.EXTRA_STATION_DB_ID, -1);
+            long scheduledTime = intent.getLongExtra(TransistorKeys.EXTRA_SCHEDULED_TIME, 0);
+            if (stationId != -1) {
+                // keep CPU awake until audio is live
+                mScheduleWakeLock.acquire(SCHEDULE_WAKE_LOCK_TIMEOUT);
+                new PrepareScheduledHelper(stationId, scheduledTime).execute();
+            }
+        }
+
         // listen for media button
         MediaButtonReceiver.handleIntent(mSession, intent);
 
@@ -232,30 +353,32 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
             // gain of audio focus of unknown duration
             case AudioManager.AUDIOFOCUS_GAIN:
                 if (mPlayback) {
-                    if (mMediaPlayer == null) {
+                    if (mPlaybackEngine == null) {
                         initializeMediaPlayer();
-                    } else if (!mMediaPlayer.isPlaying()) {
-                        mMediaPlayer.start();
+                    } else if (!mPlaybackEngine.isPlaying()) {
+                        mPlaybackEngine.start();
                     }
-                    mMediaPlayer.setVolume(1.0f, 1.0f);
+                    // a running sleep timer fade keeps its volume
+                    float volume = getPlaybackVolume();
+                    mPlaybackEngine.setVolume(volume, volume);
                 }
                 break;
             // loss of audio focus of unknown duration
             case AudioManager.AUDIOFOCUS_LOSS:
-                stopPlayback(false);
+                pausePlayback();
                 break;
             // transient loss of audio focus
             case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
-                if (!mPlayback && mMediaPlayer != null && mMediaPlayer.isPlaying()) {
+                if (!mPlayback && mPlaybackEngine != null && mPlaybackEngine.isPlaying()) {
                     stopPlayback(false);
-                } else if (mPlayback && mMediaPlayer != null && mMediaPlayer.isPlaying()) {
-                    mMediaPlayer.pause();
+                } else if (mPlayback && mPlaybackEngine != null && mPlaybackEngine.isPlaying()) {
+                    mPlaybackEngine.pause();
                 }
                 break;
             // temporary external request of audio focus
             case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
-                if (mMediaPlayer != null && mMediaPlayer.isPlaying()) {
-                    mMediaPlayer.setVolume(0.1f, 0.1f);
+                if (mPlaybackEngine != null && mPlaybackEngine.isPlaying()) {
+                    mPlaybackEngine.setVolume(0.1f, 0.1f);
                 }
                 break;
         }
@@ -263,16 +386,28 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
 
 
     @Override
-    public void onCompletion(MediaPlayer mp) {
+    public void onCompletion(PlaybackEngine engine) {
+        if (engine == mStandbyEngine) {
+            LogHelper.w(LOG_TAG, "Standby stream ended. Discarding standby player.");
+            discardStandby();
+            return;
+        }
         LogHelper.w(LOG_TAG, "Resuming playback after completion / signal loss. Player instance count: " + mPlayerInstanceCounter);
-        mp.reset();
-        mPlayerInstanceCounter++;
-        initializeMediaPlayer();
+        handleStreamFailure();
     }
 
 
     @Override
-    public void onPrepared(MediaPlayer mp) {
+    public void onPrepared(PlaybackEngine engine) {
+
+        if (engine == mStandbyEngine) {
+            // keep standby player paused - it starts when the user switches to its station
+            LogHelper.v(LOG_TAG, "Standby player prepared: " + mStandbyStation.TITLE);
+            mStandbyPrepared = true;
+            mStandbyPreparedTime = SystemClock.elapsedRealtime();
+            scheduleStandbyReanchor();
+            return;
+        }
 
         if (mPlayerInstanceCounter == 1) {
             LogHelper.v(LOG_TAG, "Preparation finished. Starting playback. Player instance count: " + mPlayerInstanceCounter);
@@ -284,8 +419,20 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
                 NotificationHelper.update(mStation, mStationID_Position, mStation.TITLE, mSession);
             }
 
-            // start media player
-            mp.start();
+            // start media player - a new engine of a reconnect continues a running fade
+            engine.start();
+            if (mFadeOutStep >= 0) {
+                float volume = getPlaybackVolume();
+                engine.setVolume(volume, volume);
+            }
+            if (mPlaybackMetrics != null) {
+                mPlaybackMetrics.onPrepared();
+                if (!mPlaybackMetrics.hasFirstAudio()) {
+                    mFirstAudioPollStart = SystemClock.elapsedRealtime();
+                    mHandler.removeCallbacks(mFirstAudioRunnable);
+                    mHandler.post(mFirstAudioRunnable);
+                }
+            }
 
             // send local broadcast: buffering finished
             Intent i = new Intent();
@@ -306,8 +453,12 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
             // decrease counter
             mPlayerInstanceCounter--;
 
-            // reset reconnect counter
-            mReconnectCounter = 0;
+            // stream is up - reset backoff and start watching the byte flow
+            mReconnectManager.onPlaybackStarted();
+
+            // warm up the station the user is likely to switch to next
+            mHandler.removeCallbacks(mPrepareStandbyRunnable);
+            mHandler.postDelayed(mPrepareStandbyRunnable, STANDBY_DELAY);
 
         } else {
             LogHelper.v(LOG_TAG, "Stopping and re-initializing media player. Player instance count: " + mPlayerInstanceCounter);
@@ -334,7 +485,14 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
 
 
     @Override
-    public boolean onError(MediaPlayer mp, int what, int extra) {
+    public boolean onError(PlaybackEngine engine, int what, int extra) {
+
+        if (engine == mStandbyEngine) {
+            // standby failures must not disturb the running stream
+            LogHelper.w(LOG_TAG, "Standby player error (" + what + " / " + extra + "). Discarding standby player.");
+            discardStandby();
+            return true;
+        }
 
         switch (what) {
             case MediaPlayer.MEDIA_ERROR_UNKNOWN:
@@ -366,22 +524,38 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
                 break;
         }
 
-        // stop playback
-        stopPlayback(false);
+        // low-latency engine could not handle stream - use MediaPlayer for the rest of the session
+        if (engine instanceof AudioTrackEngine) {
+            LogHelper.w(LOG_TAG, "Falling back to MediaPlayer.");
+            mPlaybackEngineFallback = true;
+        }
 
-        // try to reconnect to stream - limited to ten attempts
-        if (mReconnectCounter < 10) {
-            mReconnectCounter++;
-            LogHelper.e(LOG_TAG, "Trying to reconnect after media playback error - attempt #" + mReconnectCounter + ".");
-            startPlayback();
+        // stored stream profile may be outdated - probe stream again on reconnect, preferring another mirror
+        final String failedStreamUri = (mActiveMirror != null) ? mActiveMirror : mStreamUri;
+        if (failedStreamUri != null) {
+            StreamMirrors.reportFailure(failedStreamUri);
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    StationsDbHelper dbHelper = new StationsDbHelper(getApplicationContext());
+                    dbHelper.DeleteStreamProfile(failedStreamUri);
+                }
+            });
         }
 
+        // try to reconnect to stream
+        handleStreamFailure();
+
         return true;
     }
 
 
     @Override
-    public boolean onInfo(MediaPlayer mp, int what, int extra) {
+    public boolean onInfo(PlaybackEngine engine, int what, int extra) {
+
+        if (engine == mStandbyEngine) {
+            return true;
+        }
 
         switch (what) {
             case MediaPlayer.MEDIA_INFO_UNKNOWN:
@@ -389,9 +563,17 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
                 break;
             case MediaPlayer.MEDIA_INFO_BUFFERING_START:
                 LogHelper.i(LOG_TAG, "Buffering started");
+                mReconnectManager.onBufferingStarted();
+                if (mPlaybackMetrics != null) {
+                    mPlaybackMetrics.onBufferingStarted();
+                }
                 break;
             case MediaPlayer.MEDIA_INFO_BUFFERING_END:
                 LogHelper.i(LOG_TAG, "Buffering finished");
+                mReconnectManager.onBufferingEnded();
+                if (mPlaybackMetrics != null) {
+                    mPlaybackMetrics.onBufferingEnded();
+                }
                 break;
             case MediaPlayer.MEDIA_INFO_METADATA_UPDATE: // case never selected
                 LogHelper.i(LOG_TAG, "New metadata available");
@@ -406,7 +588,7 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
 
 
     @Override
-    public void onBufferingUpdate(MediaPlayer mp, int percent) {
+    public void onBufferingUpdate(PlaybackEngine engine, int percent) {
         LogHelper.v(LOG_TAG, "Buffering: " + percent);
     }
 
@@ -421,6 +603,18 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
         mPlayback = false;
         saveAppState();
 
+        // cancel pending reconnects
+        mReconnectManager.stop();
+        finishPlaybackMetrics();
+
+        // drop paused stream, standby player and pending scheduled start
+        discardTimeShift();
+        discardStandby();
+        mHandler.removeCallbacks(mScheduledStartRunnable);
+        if (mScheduleWakeLock.isHeld()) {
+            mScheduleWakeLock.release();
+        }
+
         // unregister receivers
         try {
             this.unregisterReceiver(mHeadphoneUnplugReceiver);
@@ -442,6 +636,12 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
     }
 
 
+    /* Getter for recording state */
+    public static boolean isRecording() {
+        return mRecording;
+    }
+
+
     /* Starts playback */
     private void startPlayback() {
 
@@ -458,6 +658,25 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
             mWifiLock.acquire();
         }
 
+        // start tracking metadata for this playback session
+        if (mMetadataTracker != null) {
+            mMetadataTracker.stop();
+        }
+        mMetadataTracker = new MetadataTracker(getApplicationContext());
+
+        // a running sleep timer fade belongs to the previous playback
+        cancelFadeOut();
+
+        // measure startup and stalls of this playback session
+        finishPlaybackMetrics();
+        mPlaybackMetrics = new PlaybackMetrics(this, mStation._ID);
+
+        // supervise stream - reconnects on errors, stalls and network changes
+        mReconnectManager.start();
+        mPlaybackEngineFallback = false;
+        mStallCount = 0;
+        mVariantStepDown = 0;
+
         // register headphone unplug receiver
         IntentFilter headphoneUnplugIntentFilter = new IntentFilter(AudioManager.ACTION_AUDIO_BECOMING_NOISY);
         mHeadphoneUnplugReceiver = new HeadphoneUnplugReceiver();
@@ -475,12 +694,14 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
         mPlayerInstanceCounter++;
 
         // stop running player - request focus and initialize media player
-        if (mMediaPlayer != null && mMediaPlayer.isPlaying()) {
+        if (mPlaybackEngine != null && mPlaybackEngine.isPlaying()) {
             releaseMediaPlayer();
             NotificationHelper.stop();
         }
         if (mStreamUri != null && requestFocus()) {
-            initializeMediaPlayer();
+            if (!activateStandby()) {
+                initializeMediaPlayer();
+            }
 
             // update MediaSession
             mSession.setPlaybackState(getPlaybackState());
@@ -495,6 +716,544 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
     }
 
 
+    /* Pauses playback - the stream proxy keeps recording into its time-shift buffer, so that resume continues at the pause point.
+       Only for a pause by audio focus loss or by the media session - see stopPlaybackOnRequest */
+    private void pausePlayback() {
+        if (mMetadataHelper == null || mPlaybackEngine == null || !mPlaybackEngine.isPlaying() || !mMetadataHelper.isTimeShiftAvailable()
+                || (DataSaver.isEnabled(this) && DataSaver.isMeteredNetwork(this))) {
+            // data saver on a metered network - do not download while nobody listens
+            discardTimeShift();
+            stopPlayback(false);
+            return;
+        }
+
+        // keep proxy alive while the player is released - its bytes still count, but do not feed the stall watchdog
+        discardTimeShift();
+        mMetadataHelper.markPausePosition(mPlaybackEngine.getCurrentPosition());
+        mTimeShiftHelper = mMetadataHelper;
+        mMetadataHelper = null;
+        mTimeShiftStreamListener = mStreamListener;
+        mStreamListener = null;
+        if (mTimeShiftStreamListener != null) {
+            mTimeShiftStreamListener.setInactive();
+        }
+        stopPlayback(false);
+
+        // stop recording once the buffer would wrap around anyway
+        mHandler.postDelayed(mTimeShiftExpiredRunnable, getTimeShiftMinutes() * 60 * 1000L);
+        LogHelper.v(LOG_TAG, "Playback paused. Time-shift buffer keeps recording.");
+    }
+
+
+    /* Stops recording of paused stream */
+    private void discardTimeShift() {
+        mHandler.removeCallbacks(mTimeShiftExpiredRunnable);
+        if (mTimeShiftStreamListener != null) {
+            mTimeShiftStreamListener.flushDataUsage();
+            mTimeShiftStreamListener = null;
+        }
+        if (mTimeShiftHelper != null) {
+            mTimeShiftHelper.closeShoutcastProxyConnection();
+            mTimeShiftHelper = null;
+            // Wifi lock was kept for the recording paused stream - unless a scheduled start is buffering
+            if (!mPlayback && mScheduledStation == null && mWifiLock.isHeld()) {
+                mWifiLock.release();
+            }
+        }
+    }
+
+
+    /* Stops playback on request of the user or the sleep timer - no resume expected, so the time-shift buffer is dropped */
+    private void stopPlaybackOnRequest() {
+        //update global variables
+        SingletonProperties.getInstance().CurrentSelectedStation_Playback_Status = PlaybackStatus.STOPPED;
+        logAllStatus();
+
+        discardTimeShift();
+        stopPlayback(false);
+    }
+
+
+    /* Runs when paused stream has been recorded for the maximum time */
+    private final Runnable mTimeShiftExpiredRunnable = new Runnable() {
+        @Override
+        public void run() {
+            LogHelper.v(LOG_TAG, "Paused too long. Discarding time-shift buffer.");
+            discardTimeShift();
+        }
+    };
+
+
+    /* Polls playback position until the first audio is heard */
+    private final Runnable mFirstAudioRunnable = new Runnable() {
+        @Override
+        public void run() {
+            PlaybackMetrics playbackMetrics = mPlaybackMetrics;
+            if (playbackMetrics == null || mPlaybackEngine == null) {
+                return;
+            }
+            if (mPlaybackEngine.getCurrentPosition() > 0) {
+                playbackMetrics.onFirstAudio();
+            } else if (SystemClock.elapsedRealtime() - mFirstAudioPollStart < FIRST_AUDIO_TIMEOUT) {
+                mHandler.postDelayed(this, FIRST_AUDIO_POLL_INTERVAL);
+            }
+        }
+    };
+
+
+    /* Lowers volume step by step - stops playback at the end of the fade. Keeps counting while a reconnect has no engine */
+    private final Runnable mFadeOutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!mPlayback) {
+                // paused meanwhile - resuming plays at full volume
+                mFadeOutStep = -1;
+                if (mPlaybackEngine != null) {
+                    mPlaybackEngine.setVolume(1.0f, 1.0f);
+                }
+                return;
+            }
+            mFadeOutStep++;
+            if (mFadeOutStep < FADE_OUT_STEPS) {
+                if (mPlaybackEngine != null) {
+                    float volume = getPlaybackVolume();
+                    mPlaybackEngine.setVolume(volume, volume);
+                }
+                mHandler.postDelayed(this, FADE_OUT_STEP_DURATION);
+            } else {
+                mFadeOutStep = -1;
+                if (mPlaybackEngine != null) {
+                    mPlaybackEngine.setVolume(1.0f, 1.0f);
+                }
+                stopPlaybackOnRequest();
+            }
+        }
+    };
+
+
+    /* Returns volume of playback - lowered while the sleep timer fades out */
+    private float getPlaybackVolume() {
+        return mFadeOutStep < 0 ? 1.0f : 1.0f - (float) mFadeOutStep / FADE_OUT_STEPS;
+    }
+
+
+    /* Stops sleep timer fade - does not restore volume */
+    private void cancelFadeOut() {
+        mHandler.removeCallbacks(mFadeOutRunnable);
+        mFadeOutStep = -1;
+    }
+
+
+    /* Ends metrics of the running playback session */
+    private void finishPlaybackMetrics() {
+        mHandler.removeCallbacks(mFirstAudioRunnable);
+        if (mPlaybackMetrics != null) {
+            mPlaybackMetrics.finish();
+            mPlaybackMetrics = null;
+        }
+    }
+
+
+    /* Runs when the daily data cap of the data saver has been used up */
+    private final Runnable mDataCapReachedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mPlayback) {
+                LogHelper.v(LOG_TAG, "Daily data cap reached. Stopping playback.");
+                Toast.makeText(PlayerService.this, R.string.toastalert_data_cap_reached, Toast.LENGTH_LONG).show();
+                stopPlayback(false);
+            }
+            // a paused stream must not keep downloading either
+            discardTimeShift();
+        }
+    };
+
+
+    /* Deletes time-shift buffers left behind by a killed process */
+    private void deleteStaleTimeShiftFiles() {
+        File[] files = getCacheDir().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(StreamProxy.TIME_SHIFT_FILE_PREFIX)) {
+                file.delete();
+            }
+        }
+    }
+
+
+    /* Reads size of time-shift buffer (in minutes of audio) from preferences - 0 disables time-shift */
+    private int getTimeShiftMinutes() {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(getApplication());
+        return settings.getInt(TransistorKeys.PREF_TIME_SHIFT_MINUTES, TransistorKeys.TIME_SHIFT_MINUTES_DEFAULT);
+    }
+
+
+    /* Starts recording the stream that is playing - audio is teed off the proxy, no second connection */
+    private void startRecording() {
+        if (!mPlayback || mMetadataHelper == null) {
+            // HLS streams and streams played without proxy cannot be recorded
+            Toast.makeText(this, R.string.toastalert_recording_not_possible, Toast.LENGTH_LONG).show();
+            return;
+        }
+        StreamRecorder recorder = createStreamRecorder();
+        if (recorder != null && mMetadataHelper.startRecording(recorder)) {
+            mRecording = true;
+            Toast.makeText(this, R.string.toastmessage_recording_started, Toast.LENGTH_SHORT).show();
+        } else {
+            Toast.makeText(this, R.string.toastalert_recording_not_possible, Toast.LENGTH_LONG).show();
+        }
+    }
+
+
+    /* Stops recording */
+    private void stopRecording() {
+        mRecording = false;
+        if (mMetadataHelper != null) {
+            mMetadataHelper.stopRecording();
+        }
+        if (mTimeShiftHelper != null) {
+            mTimeShiftHelper.stopRecording();
+        }
+    }
+
+
+    /* Creates a recorder writing into the recordings folder of the collection directory - returns null if storage is not available */
+    private StreamRecorder createStreamRecorder() {
+        StorageHelper storageHelper = new StorageHelper(getApplicationContext());
+        File collectionDirectory = storageHelper.getCollectionDirectory();
+        if (collectionDirectory == null) {
+            LogHelper.e(LOG_TAG, "Unable to record: external storage not available.");
+            return null;
+        }
+        File recordingsDirectory = new File(collectionDirectory, "Recordings");
+        if (!recordingsDirectory.exists() && !recordingsDirectory.mkdirs()) {
+            LogHelper.e(LOG_TAG, "Unable to create folder for recordings: " + recordingsDirectory);
+            return null;
+        }
+        return new StreamRecorder(recordingsDirectory, mStation.TITLE);
+    }
+
+
+    /* Runs a while after playback started */
+    private final Runnable mPrepareStandbyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            prepareStandby(null);
+        }
+    };
+
+
+    /* Runs at the scheduled time - starts the station, using the standby player prepared for it */
+    private final Runnable mScheduledStartRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Station station = mScheduledStation;
+            mScheduledStation = null;
+            if (station != null) {
+                LogHelper.v(LOG_TAG, "Scheduled start: " + station.TITLE);
+                mStation = station;
+                mStationID_Position = mScheduledStationPosition;
+                mStreamUri = station.getStreamUri().toString();
+                mController.getTransportControls().play();
+            }
+            if (mScheduleWakeLock.isHeld()) {
+                mScheduleWakeLock.release();
+            }
+        }
+    };
+
+
+    /* Runs when standby player has not been used for too long */
+    private final Runnable mStandbyTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            LogHelper.v(LOG_TAG, "Standby player not used. Discarding it.");
+            discardStandby();
+        }
+    };
+
+
+    /* Runs when prepared standby player has waited too long - its buffered audio is minutes old and the server may drop
+       a connection that is not read from, so it reconnects and prepares again */
+    private final Runnable mStandbyReanchorRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mStandbyStation == null || mStandbyProfile == null) {
+                return;
+            }
+            LogHelper.v(LOG_TAG, "Standby player lags behind live. Reconnecting: " + mStandbyStation.TITLE);
+            releaseStandbyStream();
+            if (!connectStandby(mStandbyStation, mStandbyProfile)) {
+                discardStandby();
+            }
+        }
+    };
+
+
+    /* Arms the next reconnect of the prepared standby player. Without a start time it reconnects once it is STANDBY_MAX_AGE old.
+       With a start time the last reconnect happens STANDBY_REANCHOR_LEAD before it, so that the player is fresh at that time */
+    private void scheduleStandbyReanchor() {
+        mHandler.removeCallbacks(mStandbyReanchorRunnable);
+        if (!mStandbyPrepared) {
+            // armed once preparation has finished
+            return;
+        }
+        long delay = STANDBY_MAX_AGE - (SystemClock.elapsedRealtime() - mStandbyPreparedTime);
+        if (mStandbyStartTime > 0) {
+            long timeToStart = mStandbyStartTime - SystemClock.elapsedRealtime();
+            if (timeToStart <= STANDBY_REANCHOR_LEAD) {
+                // used soon - a reconnect now would still be running at start time
+                return;
+            }
+            delay = Math.min(delay, timeToStart - STANDBY_REANCHOR_LEAD);
+        }
+        mHandler.postDelayed(mStandbyReanchorRunnable, Math.max(0, delay));
+    }
+
+
+    /* Sets time the standby player is going to be used at - e.g. a scheduled start */
+    private void setStandbyStartTime(long startTime) {
+        mStandbyStartTime = startTime;
+        scheduleStandbyReanchor();
+    }
+
+
+    /* Prepares a standby player for the station the user will likely switch to - station may be null */
+    private void prepareStandby(Station station) {
+        if (!mPlayback || mStationLoading || mStation == null) {
+            // standby only makes sense while a station is playing
+            return;
+        }
+        ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager.isActiveNetworkMetered()) {
+            // a second stream doubles data usage - only on unmetered networks
+            LogHelper.v(LOG_TAG, "Network is metered. No standby player.");
+            return;
+        }
+        new PrepareStandbyHelper(station).execute();
+    }
+
+
+    /* Returns profile of the stream a standby player should connect to - the same variant and best mirror a fresh start
+       would use. Returns null if the data cap is used up or the stream cannot be probed - runs in background */
+    private StreamProfile getStandbyProfile(Station station, String variantUri) {
+        if (DataSaver.isDailyCapReached(getApplicationContext(), DataUsageCounter.getUsageToday(getApplicationContext()))) {
+            LogHelper.v(LOG_TAG, "Daily data cap reached. No standby player.");
+            return null;
+        }
+        // standby connects to the best mirror only - racing a second one would double its data usage
+        String streamUri = rankStreamUris(station, variantUri).get(0);
+        StationsDbHelper dbHelper = new StationsDbHelper(getApplicationContext());
+        StreamProfile profile = dbHelper.GetStreamProfile(streamUri);
+        if (profile == null) {
+            profile = Preconnector.probeStream(streamUri);
+            if (profile != null) {
+                dbHelper.SaveStreamProfile(profile);
+            }
+        }
+        return profile;
+    }
+
+
+    /* Returns stream URIs of the given variant of a station, best first - mirrors carry the main stream, a lower quality variant has none */
+    private static List<String> rankStreamUris(Station station, String variantUri) {
+        return StreamMirrors.rank(variantUri.equals(station.StreamURI) ? station.getStreamUris() : Collections.singletonList(variantUri));
+    }
+
+
+    /* Picks the station to keep in standby: requested station, previously played station or next favourite - runs in background */
+    private Station pickStandbyStation(Station requestedStation, long currentStationId) {
+        if (requestedStation != null) {
+            return (requestedStation._ID != currentStationId) ? requestedStation : null;
+        }
+
+        ArrayList<Station> stations = new ArrayList<>();
+        StationsDbHelper dbHelper = new StationsDbHelper(getApplicationContext());
+        dbHelper.FillListOfAllStations(stations);
+
+        // users tend to switch back and forth between two stations
+        long lastStationId = SingletonProperties.getInstance().getLastRunningStation_ID();
+        if (lastStationId != currentStationId) {
+            for (Station station : stations) {
+                if (station._ID == lastStationId) {
+                    return station;
+                }
+            }
+        }
+
+        // otherwise the favourite following the current station
+        ArrayList<Station> favourites = new ArrayList<>();
+        int currentIndex = -1;
+        for (Station station : stations) {
+            if (station.IS_FAVOURITE == 1) {
+                if (station._ID == currentStationId) {
+                    currentIndex = favourites.size();
+                }
+                favourites.add(station);
+            }
+        }
+        for (int i = 1; i <= favourites.size(); i++) {
+            Station station = favourites.get((currentIndex + i) % favourites.size());
+            if (station._ID != currentStationId) {
+                return station;
+            }
+        }
+        return null;
+    }
+
+
+    /* Sets up standby player for the given variant of a station - it connects and buffers, but stays paused */
+    private void createStandby(Station station, String variantUri, StreamProfile profile) {
+        if (!connectStandby(station, profile)) {
+            return;
+        }
+        LogHelper.v(LOG_TAG, "Preparing standby player: " + station.TITLE);
+        mStandbyStation = station;
+        mStandbyVariantUri = variantUri;
+        mStandbyProfile = profile;
+        mHandler.postDelayed(mStandbyTimeoutRunnable, STANDBY_TIMEOUT);
+    }
+
+
+    /* Connects and prepares standby player - returns false if stream could not be set up */
+    private boolean connectStandby(Station station, StreamProfile profile) {
+        String streamUrl = profile.FINAL_URL;
+        PlaybackEngine engine = createPlaybackEngine(profile);
+        MetadataHelper metadataHelper = null;
+        StreamListener streamListener = null;
+        try {
+            if (!profile.IS_HLS) {
+                // no metadata tracker and no time-shift until the standby player is swapped in
+                streamListener = new StreamListener(station._ID, Collections.singletonMap(streamUrl, profile.STREAM_URI));
+                metadataHelper = new MetadataHelper(streamUrl, null, streamListener, null, 0);
+                String shoutcastProxy = metadataHelper.getShoutcastProxy();
+                if (shoutcastProxy != null && !shoutcastProxy.isEmpty()) {
+                    streamUrl = shoutcastProxy;
+                } else {
+                    metadataHelper = null;
+                }
+            }
+            engine.setDataSource(streamUrl);
+        } catch (IOException e) {
+            e.printStackTrace();
+            engine.release();
+            if (metadataHelper != null) {
+                metadataHelper.closeShoutcastProxyConnection();
+            }
+            return false;
+        }
+
+        mStandbyEngine = engine;
+        mStandbyMetadataHelper = metadataHelper;
+        mStandbyStreamListener = streamListener;
+        mStandbyPrepared = false;
+        engine.prepareAsync();
+        return true;
+    }
+
+
+    /* Swaps in the standby player if it is ready for the requested stream - returns false if stream has to be set up from scratch.
+       The network may have changed since the standby connected, so its variant has to be the one a fresh start would pick.
+       A standby timed to this start is used even while its last reconnect is still preparing - setting up anew would be slower */
+    private boolean activateStandby() {
+        if (mStandbyEngine == null || !mStreamUri.equals(mStandbyStation.getStreamUri().toString())
+                || !DataSaver.selectVariant(getApplicationContext(), mStation, mVariantStepDown).equals(mStandbyVariantUri)) {
+            discardStandby();
+            return false;
+        }
+        // reconnects of a timed standby keep it fresh until shortly after its start time
+        boolean timedStart = mStandbyStartTime > 0;
+        long maxAge = timedStart ? STANDBY_MAX_AGE + STANDBY_REANCHOR_LEAD : STANDBY_MAX_AGE;
+        boolean usable = mStandbyPrepared ? SystemClock.elapsedRealtime() - mStandbyPreparedTime <= maxAge : timedStart;
+        if (!usable) {
+            discardStandby();
+            return false;
+        }
+        final boolean prepared = mStandbyPrepared;
+        LogHelper.v(LOG_TAG, "Switching to standby player: " + mStreamUri + (prepared ? "" : " (still preparing)"));
+
+        // drop old player and proxy
+        releaseMediaPlayer();
+        discardTimeShift();
+        mHandler.removeCallbacks(mStandbyTimeoutRunnable);
+        mHandler.removeCallbacks(mStandbyReanchorRunnable);
+
+        // standby becomes the running stream
+        mPlaybackEngine = mStandbyEngine;
+        mMetadataHelper = mStandbyMetadataHelper;
+        if (mMetadataHelper != null) {
+            mMetadataHelper.setMetadataTracker(mMetadataTracker);
+            mStandbyStreamListener.setActive();
+            mStreamListener = mStandbyStreamListener;
+        } else {
+            mActiveMirror = mStreamUri;
+        }
+        mStandbyStation = null;
+        mStandbyVariantUri = null;
+        mStandbyProfile = null;
+        mStandbyStartTime = 0;
+        mStandbyEngine = null;
+        mStandbyMetadataHelper = null;
+        mStandbyStreamListener = null;
+        mStandbyPrepared = false;
+
+        // continue recording with the new station
+        if (mRecording && mMetadataHelper != null) {
+            StreamRecorder recorder = createStreamRecorder();
+            mRecording = recorder != null && mMetadataHelper.startRecording(recorder);
+        }
+
+        // player is prepared already - start it once startPlayback has finished. Otherwise onPrepared starts it
+        mPlayerInstanceCounter = 1;
+        if (!prepared) {
+            return true;
+        }
+        final PlaybackEngine engine = mPlaybackEngine;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (engine == mPlaybackEngine) {
+                    onPrepared(engine);
+                }
+            }
+        });
+        return true;
+    }
+
+
+    /* Releases standby player */
+    private void discardStandby() {
+        mHandler.removeCallbacks(mPrepareStandbyRunnable);
+        mHandler.removeCallbacks(mStandbyTimeoutRunnable);
+        releaseStandbyStream();
+        mStandbyStation = null;
+        mStandbyVariantUri = null;
+        mStandbyProfile = null;
+        mStandbyStartTime = 0;
+    }
+
+
+    /* Releases player, proxy and listener of the standby - keeps the station */
+    private void releaseStandbyStream() {
+        mHandler.removeCallbacks(mStandbyReanchorRunnable);
+        if (mStandbyEngine != null) {
+            mStandbyEngine.release();
+            mStandbyEngine = null;
+        }
+        if (mStandbyMetadataHelper != null) {
+            mStandbyMetadataHelper.closeShoutcastProxyConnection();
+            mStandbyMetadataHelper = null;
+        }
+        if (mStandbyStreamListener != null) {
+            mStandbyStreamListener.flushDataUsage();
+            mStandbyStreamListener = null;
+        }
+        mStandbyPrepared = false;
+    }
+
+
     /* Stops playback */
     private void stopPlayback(boolean dismissNotification) {
 
@@ -506,11 +1265,28 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
         mStationLoading = false;
         saveAppState();
 
-        // release Wifi lock
-        if (mWifiLock.isHeld()) {
+        // release Wifi lock - unless a paused stream keeps recording
+        if (mWifiLock.isHeld() && mTimeShiftHelper == null) {
             mWifiLock.release();
         }
 
+        // stop tracking metadata
+        if (mMetadataTracker != null) {
+            mMetadataTracker.stop();
+            mMetadataTracker = null;
+        }
+
+        // stop supervising stream
+        mReconnectManager.stop();
+        finishPlaybackMetrics();
+        cancelFadeOut();
+
+        // recordings end with playback
+        stopRecording();
+
+        // no switch expected while stopped - do not keep a second stream open
+        discardStandby();
+
         // send local broadcast
         Intent i = new Intent();
         i.setAction(TransistorKeys.ACTION_PLAYBACK_STATE_CHANGED);
@@ -532,6 +1308,8 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
 
 
         if (dismissNotification) {
+            // playback is over - no resume expected
+            discardTimeShift();
             // dismiss notification
             NotificationHelper.stop();
             // set media session in-active
@@ -553,15 +1331,69 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
     }
 
 
+    /* Releases broken player and lets ReconnectManager decide when to try again */
+    private void handleStreamFailure() {
+        releaseMediaPlayer();
+        if (mPlayback && mReconnectManager.onStreamFailed()) {
+            // keep showing loading state while waiting for reconnect
+            mStationLoading = true;
+        } else {
+            stopPlayback(false);
+        }
+    }
+
+
+    /* Sets up stream again within the running playback session */
+    private void reconnectPlayback() {
+        if (!mPlayback || mStreamUri == null) {
+            return;
+        }
+        LogHelper.w(LOG_TAG, "Reconnecting to stream: " + mStreamUri);
+
+        // drop stalled player and proxy
+        releaseMediaPlayer();
+        mStationLoading = true;
+
+        // send local broadcast
+        Intent i = new Intent();
+        i.setAction(TransistorKeys.ACTION_PLAYBACK_STATE_CHANGED);
+        i.putExtra(TransistorKeys.EXTRA_PLAYBACK_STATE_CHANGE, TransistorKeys.PLAYBACK_LOADING_STATION);
+        i.putExtra(TransistorKeys.EXTRA_STATION, mStation);
+        i.putExtra(TransistorKeys.EXTRA_STATION_Position_ID, mStationID_Position);
+        LocalBroadcastManager.getInstance(this.getApplication()).sendBroadcast(i);
+
+        // exactly one player instance is pending now
+        mPlayerInstanceCounter = 1;
+        initializeMediaPlayer();
+        mSession.setActive(true);
+    }
+
+
+    /* Creates playback engine - the low-latency engine for plain MP3 and AAC streams if enabled, MediaPlayer otherwise.
+       The low-latency engine is still experimental: it can only be enabled in debug builds, see menu_playback_engine */
+    private PlaybackEngine createPlaybackEngine(StreamProfile profile) {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(getApplication());
+        String engine = settings.getString(TransistorKeys.PREF_PLAYBACK_ENGINE, TransistorKeys.PLAYBACK_ENGINE_MEDIA_PLAYER);
+        if (BuildConfig.DEBUG && TransistorKeys.PLAYBACK_ENGINE_AUDIO_TRACK.equals(engine) && !mPlaybackEngineFallback
+                && profile != null && !profile.IS_HLS && ("mp3".equals(profile.CODEC) || "aac".equals(profile.CODEC))) {
+            int startThreshold = settings.getInt(TransistorKeys.PREF_START_THRESHOLD, TransistorKeys.START_THRESHOLD_DEFAULT);
+            LogHelper.v(LOG_TAG, "Using AudioTrack engine. Start threshold: " + startThreshold + " ms");
+            return new AudioTrackEngine(this, this, startThreshold);
+        }
+        return new MediaPlayerEngine(this, this);
+    }
+
+
     /* Release the media player */
     private void releaseMediaPlayer() {
-        if (mMediaPlayer != null) {
-            if (mMediaPlayer.isPlaying()) {
-                mMediaPlayer.stop();
-            }
-            mMediaPlayer.reset();
-            mMediaPlayer.release();
-            mMediaPlayer = null;
+        mActiveMirror = null;
+        if (mStreamListener != null) {
+            mStreamListener.flushDataUsage();
+            mStreamListener = null;
+        }
+        if (mPlaybackEngine != null) {
+            mPlaybackEngine.release();
+            mPlaybackEngine = null;
         }
 
         if (mMetadataHelper != null) {
@@ -724,8 +1556,8 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
             SingletonProperties.getInstance().CurrentSelectedStation_Playback_Status = PlaybackStatus.STOPPED;
             logAllStatus();
 
-            // stop playback on pause signal from Android Wear or headphone button
-            stopPlayback(false);
+            // pause playback on pause signal from Android Wear or headphone button - keeps recording for resume
+            pausePlayback();
 
 
         }
@@ -747,61 +1579,366 @@ public final class PlayerService extends MediaBrowserServiceCompat implements
      */
 
 
+    /* Saves stream profile in background */
+    private void saveStreamProfile(final StreamProfile profile) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                StationsDbHelper dbHelper = new StationsDbHelper(getApplicationContext());
+                dbHelper.SaveStreamProfile(profile);
+                LogHelper.v(LOG_TAG, "Saved " + profile.toString());
+            }
+        }).start();
+    }
+
+
     /**
-     * Inner class: Checks for HTTP Live Streaming (HLS) before playing
+     * Inner class: Receives upstream events of a stream proxy - feeds the stall watchdog only while its stream is playing
      */
-    private class InitializeMediaPlayerHelper extends AsyncTask<Void, Void, Boolean> {
+    private final class StreamListener implements StreamProxy.UpstreamListener {
+
+        private final Map<String, String> mStreamUris; // fetched URL -> stream URI of station or mirror
+        private final DataUsageCounter mDataUsageCounter;
+        private volatile String mConnectedStreamUri = null;
+        private volatile boolean mActive = false;
+
+        private StreamListener(long stationId, Map<String, String> streamUris) {
+            mStreamUris = streamUris;
+            mDataUsageCounter = new DataUsageCounter(getApplicationContext(), stationId);
+        }
+
+        /* Stores bytes not yet counted - in background */
+        private void flushDataUsage() {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mDataUsageCounter.flush();
+                }
+            });
+        }
+
+        /* Marks stream as the one playing - a stream that connected before, e.g. in standby, counts as connected now */
+        private void setActive() {
+            mActive = true;
+            if (mConnectedStreamUri != null) {
+                mActiveMirror = mConnectedStreamUri;
+                PlaybackMetrics playbackMetrics = mPlaybackMetrics;
+                if (playbackMetrics != null) {
+                    playbackMetrics.onConnected();
+                }
+            }
+        }
+
+        /* Marks stream as not playing - e.g. paused and recording into the time-shift buffer */
+        private void setInactive() {
+            mActive = false;
+        }
 
         @Override
-        protected Boolean doInBackground(Void... voids) {
-            String contentType = "";
-            URLConnection connection = null;
-            try {
-                OkHttpClient client = new OkHttpClient();
-                Request request = new Request.Builder()
-                        .url(mStreamUri)
-                        .build();
-                Response response = client.newCall(request).execute();
-                contentType = response.body().contentType().toString();
-                LogHelper.v(LOG_TAG, "MIME type of stream: " + contentType);
-                if (contentType.contains("application/vnd.apple.mpegurl") || contentType.contains("application/x-mpegurl")) { // || contentType.contains("audio/mpeg")
+        public void onUpstreamConnected(String streamUrl, String finalUrl, String contentType, int icyMetaint, int icyBr) {
+            String streamUri = getStreamUri(streamUrl);
+            mConnectedStreamUri = streamUri;
+            if (mActive) {
+                mActiveMirror = streamUri;
+                PlaybackMetrics playbackMetrics = mPlaybackMetrics;
+                if (playbackMetrics != null) {
+                    playbackMetrics.onConnected();
+                }
+            }
+            StreamMirrors.reportSuccess(streamUri);
+            // the proxy connection revalidates the stream profile for free
+            saveStreamProfile(new StreamProfile(streamUri, finalUrl, contentType, icyMetaint, icyBr));
+        }
+
+        @Override
+        public void onUpstreamFailed(String streamUrl) {
+            StreamMirrors.reportFailure(getStreamUri(streamUrl));
+        }
+
+        @Override
+        public void onUpstreamData(int byteCount) {
+            boolean dataCapReached = mDataUsageCounter.count(byteCount);
+            if (mActive) {
+                mReconnectManager.onBytesReceived(byteCount);
+                PlaybackMetrics playbackMetrics = mPlaybackMetrics;
+                if (playbackMetrics != null) {
+                    playbackMetrics.onBytesReceived(byteCount);
+                }
+            }
+            // the cap counts all streams - also a paused one or the standby
+            if (dataCapReached) {
+                mHandler.post(mDataCapReachedRunnable);
+            }
+        }
+
+        /* Maps fetched URL back to stream URI */
+        private String getStreamUri(String streamUrl) {
+            String streamUri = mStreamUris.get(streamUrl);
+            return (streamUri != null) ? streamUri : streamUrl;
+        }
+    }
+    /**
+     * End of inner class
+     */
+
+
+    /**
+     * Inner class: Picks and probes the standby station in background
+     */
+    private class PrepareStandbyHelper extends AsyncTask<Void, Void, StreamProfile> {
+
+        private final Station mRequestedStation;
+        private final long mCurrentStationId = mStation._ID;
+        private final String mCurrentStreamUri = mStreamUri;
+        private Station mCandidate = null;
+        private String mCandidateVariantUri = null;
+
+        private PrepareStandbyHelper(Station requestedStation) {
+            mRequestedStation = requestedStation;
+        }
+
+        @Override
+        protected StreamProfile doInBackground(Void... voids) {
+            mCandidate = pickStandbyStation(mRequestedStation, mCurrentStationId);
+            if (mCandidate == null) {
+                return null;
+            }
+            mCandidateVariantUri = DataSaver.selectVariant(getApplicationContext(), mCandidate, 0);
+            return getStandbyProfile(mCandidate, mCandidateVariantUri);
+        }
+
+        @Override
+        protected void onPostExecute(StreamProfile profile) {
+            if (profile == null || !mPlayback || mStationLoading || !mCurrentStreamUri.equals(mStreamUri)) {
+                // nothing to prepare - or user switched or stopped meanwhile
+                return;
+            }
+            if (mStandbyStation != null && mStandbyStation.getStreamUri().equals(mCandidate.getStreamUri()) && mCandidateVariantUri.equals(mStandbyVariantUri)) {
+                // already in standby
+                return;
+            } else if (mScheduledStation != null) {
+                // standby player is reserved for the scheduled start
+                return;
+            }
+            discardStandby();
+            createStandby(mCandidate, mCandidateVariantUri, profile);
+        }
+
+    }
+    /**
+     * End of inner class
+     */
+
+
+    /**
+     * Inner class: Prepares a scheduled start - loads station and stream profile and arms the next alarm in background
+     */
+    private class PrepareScheduledHelper extends AsyncTask<Void, Void, StreamProfile> {
+
+        private final long mStationId;
+        private final long mScheduledTime;
+        private Station mScheduled = null;
+        private String mScheduledVariantUri = null;
+        private int mPosition = 0;
+
+        private PrepareScheduledHelper(long stationId, long scheduledTime) {
+            mStationId = stationId;
+            mScheduledTime = scheduledTime;
+        }
+
+        @Override
+        protected StreamProfile doInBackground(Void... voids) {
+            // alarms are one-shot - arm the start after this one
+            PlaybackScheduler.scheduleAfter(getApplicationContext(), mScheduledTime + 1);
+
+            ArrayList<Station> stations = new ArrayList<>();
+            StationsDbHelper dbHelper = new StationsDbHelper(getApplicationContext());
+            dbHelper.FillListOfAllStations(stations);
+            for (int i = 0; i < stations.size(); i++) {
+                if (stations.get(i)._ID == mStationId) {
+                    mScheduled = stations.get(i);
+                    mPosition = i;
+                    break;
+                }
+            }
+            if (mScheduled == null) {
+                return null;
+            }
+            mScheduledVariantUri = DataSaver.selectVariant(getApplicationContext(), mScheduled, 0);
+            return getStandbyProfile(mScheduled, mScheduledVariantUri);
+        }
+
+        @Override
+        protected void onPostExecute(StreamProfile profile) {
+            if (mScheduled == null || (mPlayback && mStation != null && mStation._ID == mScheduled._ID)) {
+                // station deleted - or playing already
+                LogHelper.v(LOG_TAG, "Nothing to start for station " + mStationId);
+                mScheduleWakeLock.release();
+                return;
+            }
+            mScheduledStation = mScheduled;
+            mScheduledStationPosition = mPosition;
+
+            // connect and buffer now - without a profile the stream is set up from scratch at start time
+            if (profile != null && !(mStandbyStation != null && mStandbyStation.getStreamUri().equals(mScheduled.getStreamUri()) && mScheduledVariantUri.equals(mStandbyVariantUri))) {
+                if (!mWifiLock.isHeld()) {
+                    mWifiLock.acquire();
+                }
+                discardStandby();
+                createStandby(mScheduled, mScheduledVariantUri, profile);
+            }
+            if (mStandbyStation != null && mStandbyStation._ID == mScheduled._ID) {
+                // reconnects of the standby player are timed to the start
+                setStandbyStartTime(SystemClock.elapsedRealtime() + Math.max(0, mScheduledTime - System.currentTimeMillis()));
+            }
+
+            mHandler.removeCallbacks(mScheduledStartRunnable);
+            mHandler.postDelayed(mScheduledStartRunnable, Math.max(0, mScheduledTime - System.currentTimeMillis()));
+            LogHelper.v(LOG_TAG, "Scheduled start of " + mScheduled.TITLE + " in " + (mScheduledTime - System.currentTimeMillis()) + " ms");
+        }
+
+    }
+    /**
+     * End of inner class
+     */
+
+
+    /**
+     * Inner class: Checks for HTTP Live Streaming (HLS) before playing - uses stored stream profile on repeat plays
+     */
+    private class InitializeMediaPlayerHelper extends AsyncTask<Void, Void, StreamProfile> {
+
+        // mirrors carry the main stream - a lower quality variant is played without mirrors
+        private final String mVariantUri = DataSaver.selectVariant(getApplicationContext(), mStation, mVariantStepDown);
+        private final List<String> mStreamUris = rankStreamUris(mStation, mVariantUri);
+        private final String mProfileStreamUri = mStreamUris.get(0);
+        private String mMirrorUrl = null;
+        private boolean mProfileFromCache = false;
+        private boolean mDataCapReached = false;
+
+        @Override
+        protected StreamProfile doInBackground(Void... voids) {
+            if (DataSaver.isDailyCapReached(getApplicationContext(), DataUsageCounter.getUsageToday(getApplicationContext()))) {
+                mDataCapReached = true;
+                return null;
+            }
+            StationsDbHelper dbHelper = new StationsDbHelper(getApplicationContext());
+
+            // second best mirror is raced against the best one - its stored profile saves a redirect
+            if (mStreamUris.size() > 1) {
+                String mirrorUri = mStreamUris.get(1);
+                StreamProfile mirrorProfile = dbHelper.GetStreamProfile(mirrorUri);
+                mMirrorUrl = (mirrorProfile != null) ? mirrorProfile.FINAL_URL : mirrorUri;
+            }
+
+            // repeat play - skip probing
+            StreamProfile profile = dbHelper.GetStreamProfile(mProfileStreamUri);
+            if (profile != null) {
+                LogHelper.v(LOG_TAG, "Using stored " + profile.toString());
+                mProfileFromCache = true;
+                return profile;
+            }
+
+            // first play - probe stream
+            profile = Preconnector.probeStream(mProfileStreamUri);
+            if (profile != null) {
+                if (profile.IS_HLS) {
                     LogHelper.v(LOG_TAG, "HTTP Live Streaming detected.");
-                    return true;
-                } else {
-                    return false;
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
-                return false;
+                dbHelper.SaveStreamProfile(profile);
             }
+            return profile;
         }
 
         @Override
-        protected void onPostExecute(Boolean result) {
-            mMediaPlayer = new MediaPlayer();
-            mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-            mMediaPlayer.setOnCompletionListener(PlayerService.this);
-            mMediaPlayer.setOnPreparedListener(PlayerService.this);
-            mMediaPlayer.setOnErrorListener(PlayerService.this);
-            mMediaPlayer.setOnInfoListener(PlayerService.this);
-            mMediaPlayer.setOnBufferingUpdateListener(PlayerService.this);
-            mMediaPlayer.setWakeMode(getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK); // needs android.permission.WAKE_LOCK
+        protected void onPostExecute(StreamProfile profile) {
+            if (mDataCapReached) {
+                mHandler.post(mDataCapReachedRunnable);
+                return;
+            }
+            mPlaybackEngine = createPlaybackEngine(profile);
+
+            // use URL after redirects, if known
+            String streamUrl = (profile != null) ? profile.FINAL_URL : mProfileStreamUri;
 
             try {
-                //mMediaPlayer.setDataSource(mStreamUri);
-                if (result) {
+                if (profile != null && profile.IS_HLS) {
                     // stream is HLS - do not extract metadata
-                    mMediaPlayer.setDataSource(mStreamUri);
+                    discardTimeShift();
+                    mActiveMirror = mProfileStreamUri;
+                    mPlaybackEngine.setDataSource(streamUrl);
+
+                    // revalidate stored profile in background
+                    if (mProfileFromCache) {
+                        new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                StreamProfile freshProfile = Preconnector.probeStream(mProfileStreamUri);
+                                if (freshProfile != null) {
+                                    saveStreamProfile(freshProfile);
+                                }
+                            }
+                        }).start();
+                    }
                 } else {
-                    // normal stream - extract metadata
-                    //mMetadataHelper = new MetadataHelper(getApplicationContext(), mStation);
-                    MetadataHelper.prepareMetadata(mStreamUri, mStation, getApplicationContext());
-                    mMediaPlayer.setDataSource(mStreamUri);
-
-                    //mMediaPlayer.setDataSource(mMetadataHelper.getShoutcastProxy());
+                    // normal stream - fetch it once through the local proxy, which strips and extracts metadata
+                    if (mMetadataHelper != null) {
+                        mMetadataHelper.closeShoutcastProxyConnection();
+                    }
+                    // resume after pause - continue from time-shift buffer
+                    if (mTimeShiftHelper != null && mTimeShiftHelper.isRelaying(streamUrl)) {
+                        LogHelper.v(LOG_TAG, "Resuming from time-shift buffer.");
+                        mHandler.removeCallbacks(mTimeShiftExpiredRunnable);
+                        mMetadataHelper = mTimeShiftHelper;
+                        mTimeShiftHelper = null;
+                        mStreamListener = mTimeShiftStreamListener;
+                        mTimeShiftStreamListener = null;
+                        if (mStreamListener != null) {
+                            mStreamListener.setActive();
+                        }
+                    } else {
+                        discardTimeShift();
+                    }
+                    if (mMetadataTracker == null) {
+                        mMetadataTracker = new MetadataTracker(getApplicationContext());
+                    }
+                    if (mMetadataHelper != null) {
+                        mMetadataHelper.setMetadataTracker(mMetadataTracker);
+                    } else {
+                        // the proxy connection revalidates the stream profile for free
+                        // best two mirrors are raced - the first one delivering audio plays
+                        List<String> streamUrls = new ArrayList<>();
+                        Map<String, String> streamUris = new HashMap<>();
+                        streamUrls.add(streamUrl);
+                        streamUris.put(streamUrl, mProfileStreamUri);
+                        if (mMirrorUrl != null) {
+                            streamUrls.add(mMirrorUrl);
+                            streamUris.put(mMirrorUrl, mStreamUris.get(1));
+                        }
+                        StreamListener streamListener = new StreamListener(mStation._ID, streamUris);
+                        streamListener.setActive();
+                        mStreamListener = streamListener;
+                        mMetadataHelper = new MetadataHelper(streamUrls, mMetadataTracker, streamListener, getCacheDir(), getTimeShiftMinutes());
+
+                        // continue recording after a reconnect - in a new file
+                        if (mRecording) {
+                            StreamRecorder recorder = createStreamRecorder();
+                            mRecording = recorder != null && mMetadataHelper.startRecording(recorder);
+                        }
+                    }
+                    String shoutcastProxy = mMetadataHelper.getShoutcastProxy();
+                    if (shoutcastProxy != null && !shoutcastProxy.isEmpty()) {
+                        mPlaybackEngine.setDataSource(shoutcastProxy);
+                    } else {
+                        // proxy could not be set up - play stream directly without metadata
+                        LogHelper.w(LOG_TAG, "Unable to start metadata proxy. Playing stream directly.");
+                        mMetadataHelper = null;
+                        mActiveMirror = mProfileStreamUri;
+                        mPlaybackEngine.setDataSource(streamUrl);
+                    }
                 }
 
-                mMediaPlayer.prepareAsync();
+                mPlaybackEngine.prepareAsync();
             } catch (IOException e) {
                 e.printStackTrace();
             }
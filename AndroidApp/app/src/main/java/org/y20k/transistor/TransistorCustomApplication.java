@@ -5,13 +5,24 @@ import android.content.res.Configuration;
 
 import com.facebook.drawee.backends.pipeline.Fresco;
 
+import org.y20k.transistor.helpers.CachingDns;
+import org.y20k.transistor.helpers.HttpMetricsListener;
 import org.y20k.transistor.helpers.SingletonProperties;
 
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
 /**
  * Created by Tarek on 2017-03-30.
  */
 
 public class TransistorCustomApplication extends Application {
+
+    // one HTTP client for the whole app - shares connections and DNS results between probe, stream, metadata and image calls
+    private static OkHttpClient sHttpClient;
+
     // Called when the application is starting, before any other application objects have been created.
     // Overriding this method is totally optional!
     @Override
@@ -24,6 +35,23 @@ public class TransistorCustomApplication extends Application {
         SingletonProperties.setContextToApplicationContext(getApplicationContext());
     }
 
+    /**
+     * Returns the application wide HTTP client
+     */
+    public static synchronized OkHttpClient getHttpClient() {
+        if (sHttpClient == null) {
+            sHttpClient = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                    .dns(new CachingDns())
+                    .connectTimeout(10, TimeUnit.SECONDS)
+                    .readTimeout(15, TimeUnit.SECONDS)
+                    .writeTimeout(15, TimeUnit.SECONDS)
+                    .eventListenerFactory(HttpMetricsListener.FACTORY)
+                    .build();
+        }
+        return sHttpClient;
+    }
+
     // Called by the system when the device configuration changes while your component is running.
     // Overriding this method is totally optional!
     @Override
@@ -0,0 +1,83 @@
+/**
+ * PlaybackSchedule.java
+ * Implements the PlaybackSchedule class
+ * A PlaybackSchedule starts a station at a given time of day on selected weekdays
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.core;
+
+import android.content.Context;
+import android.text.format.DateFormat;
+
+import java.util.Calendar;
+
+
+/**
+ * PlaybackSchedule class
+ * Times are local wall clock times - a start at 07:00 stays at 07:00 when the time zone or daylight saving
+ * time changes. Weekdays are a bit mask with one bit per Calendar.DAY_OF_WEEK.
+ */
+public final class PlaybackSchedule {
+
+    /* Main class variables */
+    public static final int EVERY_DAY = 0x7F;
+    public long _ID = -1;
+    public final long STATION_ID;
+    public final int HOUR;
+    public final int MINUTE;
+    public final int DAYS;
+
+
+    /* Constructor */
+    public PlaybackSchedule(long stationId, int hour, int minute, int days) {
+        STATION_ID = stationId;
+        HOUR = hour;
+        MINUTE = minute;
+        DAYS = (days & EVERY_DAY) != 0 ? days & EVERY_DAY : EVERY_DAY;
+    }
+
+
+    /* Returns bit of a weekday - dayOfWeek as in Calendar.DAY_OF_WEEK */
+    public static int getDayBit(int dayOfWeek) {
+        return 1 << (dayOfWeek - 1);
+    }
+
+
+    /* Returns next start time (ms since epoch) at or after notBefore - -1 if there is none */
+    public long getNextStartTime(long notBefore) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(notBefore);
+        calendar.set(Calendar.HOUR_OF_DAY, HOUR);
+        calendar.set(Calendar.MINUTE, MINUTE);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        // today plus a full week covers every weekday mask
+        for (int day = 0; day <= 7; day++) {
+            if (calendar.getTimeInMillis() >= notBefore && (DAYS & getDayBit(calendar.get(Calendar.DAY_OF_WEEK))) != 0) {
+                return calendar.getTimeInMillis();
+            }
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            calendar.set(Calendar.HOUR_OF_DAY, HOUR);
+            calendar.set(Calendar.MINUTE, MINUTE);
+        }
+        return -1;
+    }
+
+
+    /* Returns time of day formatted according to the user's 12/24 hour setting */
+    public String getTimeString(Context context) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, HOUR);
+        calendar.set(Calendar.MINUTE, MINUTE);
+        return DateFormat.getTimeFormat(context).format(calendar.getTime());
+    }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * QoeHistogram.java
+ * Implements the QoeHistogram class
+ * A QoeHistogram counts the values of one playback quality metric of a station in fixed buckets
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.core;
+
+import java.util.Arrays;
+
+
+/**
+ * QoeHistogram class
+ * Every metric has its own fixed bucket bounds - a bucket counts values up to its bound, the last one counts
+ * everything above. Stored as comma-separated counts, so a histogram takes a few dozen bytes per station.
+ */
+public final class QoeHistogram {
+
+    /* Keys */
+    public static final String METRIC_CONNECT = "connect_ms";
+    public static final String METRIC_PREPARED = "prepared_ms";
+    public static final String METRIC_FIRST_AUDIO = "first_audio_ms";
+    public static final String METRIC_REBUFFERS = "rebuffers";
+    public static final String METRIC_STALL = "stall_ms";
+    public static final String METRIC_RECEIVED = "received_kb";
+    public static final String METRIC_RECONNECTS = "reconnects";
+    public static final String[] METRICS = {METRIC_CONNECT, METRIC_PREPARED, METRIC_FIRST_AUDIO,
+            METRIC_REBUFFERS, METRIC_STALL, METRIC_RECEIVED, METRIC_RECONNECTS};
+
+
+    /* Main class variables */
+    private static final long[] BOUNDS_STARTUP = {100, 200, 300, 500, 750, 1000, 1500, 2000, 3000, 5000, 8000, 13000, 20000};
+    private static final long[] BOUNDS_STALL = {0, 500, 1000, 2000, 5000, 10000, 20000, 30000, 60000, 120000};
+    private static final long[] BOUNDS_COUNT = {0, 1, 2, 3, 5, 8, 13, 20};
+    private static final long[] BOUNDS_KILOBYTES = {64, 256, 1024, 4096, 16384, 65536, 262144};
+    private final long mStationId;
+    private final String mStationTitle;
+    private final String mMetric;
+    private final long[] mBounds;
+    private final long[] mCounts;
+
+
+    /* Constructor - buckets as stored by toString, null or unreadable buckets start empty */
+    public QoeHistogram(long stationId, String stationTitle, String metric, String buckets) {
+        mStationId = stationId;
+        mStationTitle = stationTitle;
+        mMetric = metric;
+        mBounds = getBounds(metric);
+        mCounts = new long[mBounds.length + 1];
+        if (buckets == null) {
+            return;
+        }
+        String[] counts = buckets.split(",");
+        if (counts.length != mCounts.length) {
+            // bucket bounds changed - old counts do not fit
+            return;
+        }
+        try {
+            for (int i = 0; i < counts.length; i++) {
+                mCounts[i] = Long.parseLong(counts[i]);
+            }
+        } catch (NumberFormatException e) {
+            Arrays.fill(mCounts, 0);
+        }
+    }
+
+
+    /* Counts a value */
+    public void add(long value) {
+        int bucket = 0;
+        while (bucket < mBounds.length && value > mBounds[bucket]) {
+            bucket++;
+        }
+        mCounts[bucket]++;
+    }
+
+
+    /* Adds counts of another histogram of the same metric */
+    public void merge(QoeHistogram histogram) {
+        if (!mMetric.equals(histogram.mMetric)) {
+            return;
+        }
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] += histogram.mCounts[i];
+        }
+    }
+
+
+    /* Returns number of values counted */
+    public long getCount() {
+        long count = 0;
+        for (long bucketCount : mCounts) {
+            count += bucketCount;
+        }
+        return count;
+    }
+
+
+    /* Returns bound of the bucket holding the given percentile - Long.MAX_VALUE if above the last bound, -1 if empty */
+    public long getPercentile(int percent) {
+        long count = getCount();
+        if (count == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (count * percent + 99) / 100);
+        long cumulated = 0;
+        for (int i = 0; i < mBounds.length; i++) {
+            cumulated += mCounts[i];
+            if (cumulated >= rank) {
+                return mBounds[i];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+
+    /* Formats a percentile - e.g. "<=500" or ">20000" */
+    public String formatPercentile(int percent) {
+        long percentile = getPercentile(percent);
+        if (percentile < 0) {
+            return "-";
+        } else if (percentile == Long.MAX_VALUE) {
+            return ">" + mBounds[mBounds.length - 1];
+        }
+        return "<=" + percentile;
+    }
+
+
+    /* Getter for station ID */
+    public long getStationId() {
+        return mStationId;
+    }
+
+
+    /* Getter for station title - may be null if station has been deleted */
+    public String getStationTitle() {
+        return mStationTitle;
+    }
+
+
+    /* Getter for metric - one of the METRIC keys */
+    public String getMetric() {
+        return mMetric;
+    }
+
+
+    /* Returns bucket counts separated by commas - the stored form */
+    @Override
+    public String toString() {
+        StringBuilder buckets = new StringBuilder();
+        for (int i = 0; i < mCounts.length; i++) {
+            if (i > 0) {
+                buckets.append(',');
+            }
+            buckets.append(mCounts[i]);
+        }
+        return buckets.toString();
+    }
+
+
+    /* Returns bucket bounds of a metric */
+    private static long[] getBounds(String metric) {
+        switch (metric) {
+            case METRIC_REBUFFERS:
+            case METRIC_RECONNECTS:
+                return BOUNDS_COUNT;
+            case METRIC_STALL:
+                return BOUNDS_STALL;
+            case METRIC_RECEIVED:
+                return BOUNDS_KILOBYTES;
+            default:
+                return BOUNDS_STARTUP;
+        }
+    }
+
+}
@@ -15,11 +15,8 @@
 package org.y20k.transistor.core;
 
 import android.app.Activity;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
@@ -33,31 +30,43 @@ import android.util.Xml;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
+import org.y20k.transistor.TransistorCustomApplication;
+import org.y20k.transistor.helpers.DataSaver;
 import org.y20k.transistor.helpers.LogHelper;
+import org.y20k.transistor.helpers.PlaylistParser;
 import org.y20k.transistor.helpers.SingletonProperties;
 import org.y20k.transistor.helpers.StorageHelper;
+import org.y20k.transistor.helpers.StreamFormatSniffer;
 import org.y20k.transistor.helpers.TransistorKeys;
-import org.y20k.transistor.sqlcore.StationsDbContract;
+import org.y20k.transistor.sqlcore.StationBatchWriter;
 import org.y20k.transistor.sqlcore.StationsDbHelper;
 
-import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import okhttp3.Request;
+import okhttp3.Response;
+
 
 /**
  * Station class
@@ -108,6 +117,27 @@ public final class Station implements Comparable<Station>, Parcelable {
      */
     public String StreamURI;
 
+    /**
+     * Station mirror stream URIs - newline separated, in order of preference (optional)
+     */
+    public String MIRROR_URIS;
+
+    /**
+     * Station quality variants - newline separated "<kbit/s> <uri>" lines, e.g. "32 http://example.org/low" (optional)
+     */
+    public String VARIANT_URIS;
+
+    /**
+     * Station health - results of the background probe (see StationHealthService), 0 / -1 if never probed
+     */
+    public int HEALTH_CONNECT_TIME;
+    public int HEALTH_FIRST_BYTE_TIME;
+    public int HEALTH_BITRATE;
+    public float HEALTH_SUCCESS_RATIO = -1;
+
+    /* Stations whose probes mostly failed recently count as unhealthy */
+    public static final float UNHEALTHY_SUCCESS_RATIO = 0.3f;
+
     /**
      * Station CONTENT TYPE (value auto detected / or can be read from xml metadata - if it's imported using xml file)
      */
@@ -156,18 +186,12 @@ public final class Station implements Comparable<Station>, Parcelable {
     //inserted stations if user import XML file
     private ArrayList<Station> mInsertedStations = new ArrayList<Station>();
 
-    /* Supported xml import file content types */
-    private static final String[] CONTENT_TYPES_IMPORT_XML = {"application/xml"};
-
+    /* Stream URLs kept from a playlist - the first one plays, the others are mirrors */
+    private static final int MAX_PLAYLIST_STREAM_URIS = 10;
 
-    /* Supported audio file content types */
-    private static final String[] CONTENT_TYPES_MPEG = {"audio/mpeg"};
-    private static final String[] CONTENT_TYPES_OGG = {"audio/ogg", "application/ogg"};
-    private static final String[] CONTENT_TYPES_AAC = {"audio/aac", "audio/aacp"};
-
-    /* Supported playlist content types */
-    private static final String[] CONTENT_TYPES_PLS = {"audio/x-scpls"};
-    private static final String[] CONTENT_TYPES_M3U = {"audio/x-mpegurl", "application/vnd.apple.mpegurl", "audio/mpegurl"};
+    /* XML import: stations resolved at the same time, and stations stored per transaction */
+    private static final int IMPORT_THREADS = 8;
+    private static final int IMPORT_BATCH_SIZE = 16;
 
     /* Regular expression to extract content-type and charset from header string */
     private static final Pattern CONTENT_TYPE_PATTERN = Pattern.compile("([^;]*)(; ?charset=([^;]+))?");
@@ -184,11 +208,23 @@ public final class Station implements Comparable<Station>, Parcelable {
     }
 
     private void MainConstructor(File folder, URL fileLocation, Activity mActivity) throws XmlPullParserException, IOException {
+        // one request tells what the remote file is - its first bytes are kept for parsing
+        StreamFormatSniffer.Result sniffResult = sniff(fileLocation);
+        try {
+            readRemoteFile(fileLocation, sniffResult, mActivity);
+        } finally {
+            if (sniffResult != null) {
+                sniffResult.close();
+            }
+        }
+    }
+
+    private void readRemoteFile(URL fileLocation, StreamFormatSniffer.Result sniffResult, Activity mActivity) throws XmlPullParserException, IOException {
         // create results bundle
         mStationFetchResults = new Bundle();
 
         // determine content type of remote file
-        ContentType contentType = getContentType(fileLocation);
+        ContentType contentType = getContentType(sniffResult);
         ContentType resultContentType = contentType;
 
         LogHelper.v(LOG_TAG, "Content type of given file is " + contentType);
@@ -196,7 +232,7 @@ public final class Station implements Comparable<Station>, Parcelable {
         //is XML import file
         if (isXMLFile(contentType)) {
             //READ THE XML FILE ITEMS
-            readXmlEntries(fileLocation, mActivity);
+            readXmlElementsFromInputStream(mActivity, sniffResult.getInputStream());
             // set playback state
             mPlayback = false;
             return;
@@ -213,11 +249,8 @@ public final class Station implements Comparable<Station>, Parcelable {
 
         // content type is playlist
         else if (isPlaylist(contentType)) {
-            // download and parse station data from playlist file
-            mPlaylistFileContent = downloadPlaylistFile(fileLocation);
-
-            // parse result of downloadPlaylistFile
-            if (parse(mPlaylistFileContent, this) && StreamURI != null) {
+            // parse station data straight from the response - continues after the sniffed bytes
+            if (parse(sniffResult.getInputStream(), sniffResult.getFormat(), sniffResult.getFinalUrl(), this) && StreamURI != null) {
                 TITLE = detactStationName(fileLocation);
                 // save results
                 mStationFetchResults.putParcelable(TransistorKeys.RESULT_PLAYLIST_TYPE, contentType);
@@ -271,16 +304,21 @@ public final class Station implements Comparable<Station>, Parcelable {
         // create results bundle
         mStationFetchResults = new Bundle();
 
-        // read local file and put result into mPlaylistFileContent
+        // read and parse local playlist file - format is detected from its content
+        boolean parsed = false;
         File localFile = new File(fileLocation.getPath());
         if (localFile.exists()) {
-            mPlaylistFileContent = readPlaylistFile(localFile);
+            try (InputStream inputStream = new FileInputStream(localFile)) {
+                parsed = parse(inputStream, null, null, this);
+            } catch (IOException e) {
+                LogHelper.e(LOG_TAG, "Unable to read playlist file: " + localFile.toString());
+                mPlaylistFileContent = "[IO error. Unable to read playlist file: " + localFile.toString() + "]";
+            }
         } else {
             LogHelper.v(LOG_TAG, "File does not exist " + localFile);
         }
 
-        // parse the raw content of playlist file (mPlaylistFileContent)
-        if (parse(mPlaylistFileContent, this) && StreamURI != null) {
+        if (parsed && StreamURI != null) {
             URL streamURL = null;
             try {
                 MainConstructor(folder, streamURL, mActivity);
@@ -297,67 +335,26 @@ public final class Station implements Comparable<Station>, Parcelable {
 
     }
 
-    private String readPlaylistFile(File playlistFile) {
-
-        try (BufferedReader br = new BufferedReader(new FileReader(playlistFile))) {
-            String line;
-            int counter = 0;
-            StringBuilder sb = new StringBuilder("");
-
-            // read until last line reached or until line five
-            while ((line = br.readLine()) != null && counter < 5) {
-                sb.append(line);
-                sb.append("\n");
-                counter++;
-            }
-
-            // set mPlaylistFileContent and return String
-            mPlaylistFileContent = sb.toString();
-            return sb.toString();
-
-        } catch (IOException e) {
-            LogHelper.e(LOG_TAG, "Unable to read playlist file: " + playlistFile.toString());
-            // set mPlaylistFileContent and return null
-            mPlaylistFileContent = "[IO error. Unable to read playlist file: " + playlistFile.toString() + "]";
-            return null;
-        }
-
-    }
-
     public Station() {
         //nothing for now, this will create empty station object
     }
 
-    //v3
-    private void readXmlEntries(URL fileLocation, Activity mActivity) throws XmlPullParserException, IOException {
-        InputStream stream = null;
-        try {
-            HttpURLConnection conn = (HttpURLConnection) fileLocation.openConnection();
-            conn.setReadTimeout(10000 /* milliseconds */);
-            conn.setConnectTimeout(15000 /* milliseconds */);
-            conn.setRequestMethod("GET");
-            conn.setDoInput(true);
-            // Starts the query
-            conn.connect();
-            stream = conn.getInputStream();
-            readXmlElementsFromInputStream(mActivity, stream);
-        } finally {
-            // close InputStream after the app is
-            // finished using it.
-            if (stream != null) {
-                stream.close();
-            }
-        }
+    /* Imports stations from XML catalog - parses all entries first, then resolves their streams in parallel */
+    public void readXmlElementsFromInputStream(Activity mActivity, InputStream stream) throws XmlPullParserException, IOException {
+        List<Station> entries = readXmlEntries(stream);
+        LogHelper.v(LOG_TAG, "Parsed " + entries.size() + " stations from XML. Resolving streams.");
+        mInsertedStations.addAll(resolveImportedStations(entries, mActivity));
     }
 
-    public void readXmlElementsFromInputStream(Activity mActivity, InputStream stream) throws XmlPullParserException, IOException {
+    /* Reads entries of XML catalog - no network access, returns stations having a unique ID and a stream URI */
+    public List<Station> readXmlEntries(InputStream stream) throws XmlPullParserException, IOException {
         //parse
         XmlPullParser parser = Xml.newPullParser();
         parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
         parser.setInput(stream, null);
         parser.nextTag();
 
-        List entries = new ArrayList();
+        List<Station> entries = new ArrayList<>();
 
         parser.require(XmlPullParser.START_TAG, null, "channels");
         while (parser.next() != XmlPullParser.END_TAG) {
@@ -395,6 +392,13 @@ public final class Station implements Comparable<Station>, Parcelable {
                     } else if (tagName.equals("uri")) {
                         parser.require(XmlPullParser.START_TAG, null, "uri");
                         stationItem.StreamURI = readXmlElementText(parser);
+                    } else if (tagName.equals("mirror_uri")) {
+                        parser.require(XmlPullParser.START_TAG, null, "mirror_uri");
+                        stationItem.addMirrorUri(readXmlElementText(parser));
+                    } else if (tagName.equals("variant")) {
+                        parser.require(XmlPullParser.START_TAG, null, "variant");
+                        int bitrate = parseBitrate(parser.getAttributeValue(null, "bitrate"));
+                        stationItem.addVariantUri(bitrate, readXmlElementText(parser));
                     } else if (tagName.equals("content_type")) {
                         parser.require(XmlPullParser.START_TAG, null, "content_type");
                         stationItem.CONTENT_TYPE = readXmlElementText(parser);
@@ -423,46 +427,108 @@ public final class Station implements Comparable<Station>, Parcelable {
                 }
                 if (stationItem.UNIQUE_ID != null && !stationItem.UNIQUE_ID.isEmpty()
                         && stationItem.StreamURI != null && !stationItem.StreamURI.isEmpty()) {
+                    entries.add(stationItem);
+                }
+            } else {
+                skipXmlTagParse(parser);
+            }
+        }
+        return entries;
+    }
 
+    /* Resolves imported stations in parallel - stores them in batches as they finish, so that a slow host delays only its own station. Returns stations stored */
+    public static List<Station> resolveImportedStations(List<Station> entries, Context context) {
+        return resolveImportedStations(entries, null, context);
+    }
 
-                    //get content type of station streamUrl
-                    ContentType itemCnt = getContentType(Uri.parse(stationItem.StreamURI));
-
-                    //check 3.1.2 station URL (if playlist then extract first station URL
-                    if (isPlaylist(itemCnt)) {
-                        // download and parse station data from playlist file
-                        String itemPlaylistFileContent = downloadPlaylistFile(new URL(stationItem.StreamURI));
-                        // parse result of downloadPlaylistFile and fill streamUrl and Title/subtitle
-                        if (parse(itemPlaylistFileContent, stationItem)) {
-                            //get content type after updating the streamUrl
-                            itemCnt = getContentType(Uri.parse(stationItem.StreamURI));
-                        }else{
-                            LogHelper.e(LOG_TAG, "\n[File probably does not contain a valid streaming URL." + stationItem.StreamURI + "]");
-                            continue; //continue and don't save this station to DB
-                        }
-                    }
-
-                    //update content type of station and override the provided one if available
-                    if(itemCnt!=null && itemCnt.type!=null && !itemCnt.type.isEmpty()) {
-                        stationItem.CONTENT_TYPE = itemCnt.type;
-                    }
+    /* Resolves imported catalog stations - their catalog fingerprints (by unique ID, may be null) are stored together with them */
+    public static List<Station> resolveImportedStations(List<Station> entries, Map<String, String> catalogFingerprints, Context context) {
+        List<Station> storedStations = new ArrayList<>();
+        if (entries.isEmpty()) {
+            return storedStations;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(IMPORT_THREADS, entries.size()));
+        CompletionService<Station> completionService = new ExecutorCompletionService<>(executor);
+        for (final Station stationItem : entries) {
+            completionService.submit(new Callable<Station>() {
+                @Override
+                public Station call() {
+                    return stationItem.resolveImport() ? stationItem : null;
+                }
+            });
+        }
 
-                    //add default Image URL
-                    if (stationItem.IMAGE_PATH == null || stationItem.IMAGE_PATH.isEmpty()) {
-                        IMAGE_PATH = getFavIconUrlString(stationItem.StreamURI); //default to fav icon
-                    }
-                    if (stationItem.SMALL_IMAGE_PATH == null || stationItem.SMALL_IMAGE_PATH.isEmpty()) {
-                        SMALL_IMAGE_PATH = IMAGE_PATH; //default AS IMAGE_PATH
+        StationBatchWriter writer = new StationBatchWriter(context);
+        List<Station> batch = new ArrayList<>();
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                try {
+                    Station stationItem = completionService.take().get();
+                    if (stationItem != null) {
+                        batch.add(stationItem);
                     }
-                    //add station to db
-                    AddStationItemToDb(stationItem, mActivity);
+                } catch (ExecutionException e) {
+                    LogHelper.e(LOG_TAG, "Unable to resolve station: " + e.getCause());
+                }
+                if (batch.size() >= IMPORT_BATCH_SIZE || (i == entries.size() - 1 && !batch.isEmpty())) {
+                    writer.write(batch, catalogFingerprints);
+                    storedStations.addAll(batch);
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            LogHelper.e(LOG_TAG, "XML import interrupted.");
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        LogHelper.v(LOG_TAG, "XML import finished. Inserted: " + writer.getInsertedCount() + " / updated: "
+                + writer.getUpdatedCount() + " / unchanged: " + writer.getUnchangedCount());
+        return storedStations;
+    }
 
-                    //for reference and to inform the adaptor we need the list of mInsertedStations
-                    mInsertedStations.add(stationItem);
+    /* Resolves stream of an imported station - follows a playlist and detects the content type. Returns false if there is no stream */
+    private boolean resolveImport() {
+        try {
+            //get content type of station streamUrl - the response is kept for reading a playlist
+            StreamFormatSniffer.Result sniffResult = sniff(new URL(StreamURI));
+            ContentType contentType = getContentType(sniffResult);
+
+            //check 3.1.2 station URL (if playlist then extract first station URL
+            if (isPlaylist(contentType)) {
+                // parse station data from playlist file and fill streamUrl and Title/subtitle
+                boolean parsed;
+                try {
+                    parsed = parse(sniffResult.getInputStream(), sniffResult.getFormat(), sniffResult.getFinalUrl(), this);
+                } finally {
+                    sniffResult.close();
                 }
-            } else {
-                skipXmlTagParse(parser);
+                if (!parsed) {
+                    LogHelper.e(LOG_TAG, "\n[File probably does not contain a valid streaming URL." + StreamURI + "]");
+                    return false; //don't save this station to DB
+                }
+                //get content type after updating the streamUrl
+                contentType = getContentType(Uri.parse(StreamURI));
+            } else if (sniffResult != null) {
+                sniffResult.close();
+            }
+
+            //update content type of station and override the provided one if available
+            if (contentType != null && contentType.type != null && !contentType.type.isEmpty()) {
+                CONTENT_TYPE = contentType.type;
+            }
+
+            //add default Image URL
+            if (IMAGE_PATH == null || IMAGE_PATH.isEmpty()) {
+                IMAGE_PATH = getFavIconUrlString(StreamURI); //default to fav icon
+            }
+            if (SMALL_IMAGE_PATH == null || SMALL_IMAGE_PATH.isEmpty()) {
+                SMALL_IMAGE_PATH = IMAGE_PATH; //default AS IMAGE_PATH
             }
+            return true;
+        } catch (MalformedURLException e) {
+            LogHelper.e(LOG_TAG, "Invalid stream URL: " + StreamURI);
+            return false;
         }
     }
 
@@ -482,6 +548,18 @@ public final class Station implements Comparable<Station>, Parcelable {
         }
     }
 
+    /* Parses bitrate in kbit/s - returns 0 if missing or malformed */
+    private static int parseBitrate(String str) {
+        if (str == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(str.trim()));
+        } catch (NumberFormatException nfe) {
+            return 0;
+        }
+    }
+
     //v2
     private void skipXmlTagParse(XmlPullParser parser) throws XmlPullParserException, IOException {
         if (parser.getEventType() != XmlPullParser.START_TAG) {
@@ -515,14 +593,8 @@ public final class Station implements Comparable<Station>, Parcelable {
 
     //v2 - check the content type of file is XML
     private boolean isXMLFile(ContentType contentType) {
-        if (contentType != null) {
-            for (String[] array : new String[][]{CONTENT_TYPES_IMPORT_XML}) {
-                if (Arrays.asList(array).contains(contentType.type)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return contentType != null
+                && StreamFormatSniffer.FORMAT_XML.equals(StreamFormatSniffer.getFormatFromContentType(contentType.type));
     }
 
     /* Constructor used by CREATOR */
@@ -547,6 +619,12 @@ public final class Station implements Comparable<Station>, Parcelable {
         SMALL_IMAGE_PATH = in.readString();
         IS_FAVOURITE = in.readInt();
         THUMP_UP_STATUS = in.readString();
+        MIRROR_URIS = in.readString();
+        HEALTH_CONNECT_TIME = in.readInt();
+        HEALTH_FIRST_BYTE_TIME = in.readInt();
+        HEALTH_BITRATE = in.readInt();
+        HEALTH_SUCCESS_RATIO = in.readFloat();
+        VARIANT_URIS = in.readString();
 
         LogHelper.v(LOG_TAG, "Station re-created from parcel. State of playback is: " + mPlayback);
     }
@@ -572,6 +650,12 @@ public final class Station implements Comparable<Station>, Parcelable {
         dest.writeString(SMALL_IMAGE_PATH);
         dest.writeInt(IS_FAVOURITE);
         dest.writeString(THUMP_UP_STATUS);
+        dest.writeString(MIRROR_URIS);
+        dest.writeInt(HEALTH_CONNECT_TIME);
+        dest.writeInt(HEALTH_FIRST_BYTE_TIME);
+        dest.writeInt(HEALTH_BITRATE);
+        dest.writeFloat(HEALTH_SUCCESS_RATIO);
+        dest.writeString(VARIANT_URIS);
     }
 
 
@@ -588,41 +672,20 @@ public final class Station implements Comparable<Station>, Parcelable {
         }
     };
 
-    /* Downloads remote playlist file */
-    private String downloadPlaylistFile(URL fileLocation) {
-
-        LogHelper.v(LOG_TAG, "Downloading... " + fileLocation.toString());
-
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(
-                fileLocation.openStream()))) {
-
-            String line;
-            int counter = 0;
-            StringBuilder sb = new StringBuilder("");
-
-            // read until last last reached or until line five
-            while ((line = br.readLine()) != null && counter < 5) {
-                sb.append(line);
-                sb.append("\n");
-                counter++;
-            }
-
-            if (sb.length() == 0) {
-                LogHelper.e(LOG_TAG, "Input stream was empty: " + fileLocation.toString());
-            }
-
-            // set mPlaylistFileContent and return String
-            mPlaylistFileContent = sb.toString();
-            return sb.toString();
-
-        } catch (IOException e) {
-            LogHelper.e(LOG_TAG, "Unable to get playlist file from server: " + fileLocation.toString());
-            // set mPlaylistFileContent and return null
-            mPlaylistFileContent = "[HTTP error. Unable to get playlist file from server: " + fileLocation.toString() + "]";
-            return null;
+    /* Executes a GET request using the shared HTTP client - the caller has to close the response */
+    private static Response executeGet(URL fileLocation) throws IOException {
+        Request request = new Request.Builder()
+                .url(fileLocation)
+                .build();
+        Response response = TransistorCustomApplication.getHttpClient().newCall(request).execute();
+        if (!response.isSuccessful()) {
+            response.close();
+            throw new IOException("HTTP " + response.code() + ": " + fileLocation.toString());
         }
+        return response;
     }
 
+
     /* Returns content type for given Uri */
     private ContentType getContentType(Uri streamUri) {
         if (streamUri == null) {
@@ -640,59 +703,65 @@ public final class Station implements Comparable<Station>, Parcelable {
     }
 
 
-    /* Returns content type for given URL */
+    /* Returns content type for given URL - from the first bytes of the file, not only from the header */
     private ContentType getContentType(URL fileLocation) {
-        try {
-            HttpURLConnection connection = (HttpURLConnection) fileLocation.openConnection();
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-            String contentTypeHeader = connection.getContentType();
-
-            if (contentTypeHeader != null) {
-                Matcher matcher = CONTENT_TYPE_PATTERN.matcher(contentTypeHeader.trim().toLowerCase(Locale.ENGLISH));
-                if (matcher.matches()) {
-                    ContentType contentType = new ContentType();
-                    String contentTypeString = matcher.group(1);
-                    String charsetString = matcher.group(3);
-                    if (contentTypeString != null) {
-                        contentType.type = contentTypeString.trim();
-                    }
-                    if (charsetString != null) {
-                        contentType.charset = charsetString.trim();
-                    }
-                    return contentType;
-                }
+        StreamFormatSniffer.Result sniffResult = sniff(fileLocation);
+        if (sniffResult == null) {
+            return null;
+        }
+        sniffResult.close();
+        return getContentType(sniffResult);
+    }
+
+
+    /* Returns content type for sniffed file - detected format, or the header if the format is unknown */
+    private ContentType getContentType(StreamFormatSniffer.Result sniffResult) {
+        if (sniffResult == null) {
+            return null;
+        }
+        ContentType contentType = new ContentType();
+        contentType.charset = sniffResult.getCharset();
+        if (!StreamFormatSniffer.FORMAT_UNKNOWN.equals(sniffResult.getFormat())) {
+            contentType.type = sniffResult.getFormat();
+            return contentType;
+        }
+        String contentTypeHeader = sniffResult.getDeclaredType();
+        if (contentTypeHeader != null) {
+            Matcher matcher = CONTENT_TYPE_PATTERN.matcher(contentTypeHeader.trim().toLowerCase(Locale.ENGLISH));
+            if (matcher.matches() && matcher.group(1) != null) {
+                contentType.type = matcher.group(1).trim();
+                return contentType;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
         return null;
     }
 
 
+    /* Opens remote file and classifies it by its first bytes - returns null on failure */
+    private StreamFormatSniffer.Result sniff(URL fileLocation) {
+        if (fileLocation == null) {
+            return null;
+        }
+        try {
+            return StreamFormatSniffer.sniff(fileLocation.toString(), false);
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+
     /* Determines if given content type is a playlist */
     private boolean isPlaylist(ContentType contentType) {
-        if (contentType != null) {
-            for (String[] array : new String[][]{CONTENT_TYPES_PLS, CONTENT_TYPES_M3U}) {
-                if (Arrays.asList(array).contains(contentType.type)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return contentType != null
+                && StreamFormatSniffer.isPlaylist(StreamFormatSniffer.getFormatFromContentType(contentType.type));
     }
 
 
-    /* Determines if given content type is an audio file */
+    /* Determines if given content type is an audio file or stream */
     private boolean isAudioFile(ContentType contentType) {
-        if (contentType != null) {
-            for (String[] array : new String[][]{CONTENT_TYPES_MPEG, CONTENT_TYPES_OGG, CONTENT_TYPES_AAC}) {
-                if (Arrays.asList(array).contains(contentType.type)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return contentType != null
+                && StreamFormatSniffer.isStream(StreamFormatSniffer.getFormatFromContentType(contentType.type));
     }
 
 
@@ -722,8 +791,8 @@ public final class Station implements Comparable<Station>, Parcelable {
             fileLocation = new URL(theImageExternalUrl);
             // download favicon
             LogHelper.v(LOG_TAG, "Downloading channelimage: " + fileLocation.toString());
-            try (InputStream in = fileLocation.openStream()) {
-                return BitmapFactory.decodeStream(in);
+            try (Response response = executeGet(fileLocation)) {
+                return BitmapFactory.decodeStream(response.body().byteStream());
             } catch (IOException e) {
                 LogHelper.e(LOG_TAG, "Error downloading: " + fileLocation.toString());
             }
@@ -734,8 +803,8 @@ public final class Station implements Comparable<Station>, Parcelable {
         String faviconLocation = getFavIconUrlString(StreamURI);
         //try download favicon
         LogHelper.v(LOG_TAG, "Downloading favicon: " + faviconLocation);
-        try (InputStream in = new URL(faviconLocation).openStream()) {
-            return BitmapFactory.decodeStream(in);
+        try (Response response = executeGet(new URL(faviconLocation))) {
+            return BitmapFactory.decodeStream(response.body().byteStream());
         } catch (IOException e) {
             LogHelper.e(LOG_TAG, "Error downloading: " + faviconLocation);
         }
@@ -762,57 +831,60 @@ public final class Station implements Comparable<Station>, Parcelable {
     }
 
 
-    /* Parses string representation of mStationPlaylistFile */
-    private boolean parse(String fileContent, Station theStation) {
-
-        theStation.mPlaylistFileContent = fileContent;
-
-        // check for null
-        if (fileContent == null) {
-            return false;
-        }
+    /* Parses playlist file from stream - format may be null to detect it, base URL may be null for local files */
+    private boolean parse(InputStream inputStream, String format, String baseUrl, final Station theStation) {
 
-        // prepare scanner
-        Scanner in = new Scanner(fileContent);
-        String line;
-
-        while (in.hasNextLine()) {
-
-            // get a line from file content
-            line = in.nextLine();
-
-            // M3U: found station name
-            if (line.contains("#EXTINF:-1,")) {
-                if (theStation.TITLE == null || theStation.TITLE.isEmpty()) {
-                    theStation.TITLE = line.substring(11).trim();
-                }
-                if (theStation.SUBTITLE == null || theStation.SUBTITLE.isEmpty()) {
-                    theStation.SUBTITLE = line.substring(11).trim();
+        // collect stream URLs while parsing - the playlist itself is never held in memory
+        final List<PlaylistParser.Entry> entries = new ArrayList<>();
+        PlaylistParser parser = new PlaylistParser(inputStream, format, baseUrl);
+        try {
+            parser.parse(new PlaylistParser.Listener() {
+                @Override
+                public boolean onEntry(PlaylistParser.Entry entry) {
+                    if (!containsUri(entries, entry.uri)) {
+                        entries.add(entry);
+                    }
+                    // further entries would only be mirrors nobody ever reaches
+                    return entries.size() < MAX_PLAYLIST_STREAM_URIS;
                 }
-                // M3U: found stream URL
-            } else if (line.startsWith("http")) {
-                theStation.StreamURI = line.trim();
+            });
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to read playlist: " + e);
+        }
+        theStation.mPlaylistFileContent = parser.getPreview();
+
+        // first stream URL plays, the others are mirrors - ahead of mirrors listed elsewhere (e.g. in xml import)
+        if (!entries.isEmpty()) {
+            PlaylistParser.Entry firstEntry = entries.get(0);
+            String otherMirrorUris = theStation.MIRROR_URIS;
+            theStation.StreamURI = firstEntry.uri;
+            theStation.MIRROR_URIS = null;
+            for (PlaylistParser.Entry entry : entries.subList(1, entries.size())) {
+                theStation.addMirrorUri(entry.uri);
             }
+            theStation.addMirrorUri(otherMirrorUris);
 
-            // PLS: found station name
-            else if (line.startsWith("Title1=")) {
+            // station name and extended M3U attributes of first entry
+            if (firstEntry.title != null) {
                 if (theStation.TITLE == null || theStation.TITLE.isEmpty()) {
-                    theStation.TITLE = line.substring(7).trim();
+                    theStation.TITLE = firstEntry.title;
                 }
                 if (theStation.SUBTITLE == null || theStation.SUBTITLE.isEmpty()) {
-                    theStation.SUBTITLE = line.substring(7).trim();
+                    theStation.SUBTITLE = firstEntry.title;
                 }
-                // PLS: found stream URL
-            } else if (line.startsWith("File1=http")) {
-                theStation.StreamURI = line.substring(6).trim();
             }
-
+            String logo = firstEntry.attributes.containsKey("tvg-logo") ? firstEntry.attributes.get("tvg-logo") : firstEntry.attributes.get("image");
+            if (logo != null && (theStation.IMAGE_PATH == null || theStation.IMAGE_PATH.isEmpty())) {
+                theStation.IMAGE_PATH = logo;
+            }
+            String group = firstEntry.attributes.get("group-title");
+            if (group != null && (theStation.CATEGORY == null || theStation.CATEGORY.isEmpty())) {
+                theStation.CATEGORY = group;
+            }
         }
 
-        in.close();
-
         if (theStation.StreamURI == null || theStation.StreamURI == "") {
-            LogHelper.e(LOG_TAG, "Unable to parse: " + fileContent);
+            LogHelper.e(LOG_TAG, "Unable to parse: " + theStation.mPlaylistFileContent);
             return false;
         }
 
@@ -822,18 +894,29 @@ public final class Station implements Comparable<Station>, Parcelable {
                 theStation.TITLE = detactStationName(new URL(theStation.StreamURI));
             } catch (MalformedURLException e) {
                 e.printStackTrace();
-                LogHelper.e(LOG_TAG, "Unable to parse: " + fileContent);
+                LogHelper.e(LOG_TAG, "Unable to parse: " + theStation.mPlaylistFileContent);
                 return false;
             }
         } else if (theStation.TITLE == null || theStation.TITLE.isEmpty()) {
             theStation.TITLE = "New Station";
         }
 
-        // file content string parsed successfully
+        // playlist parsed successfully
         return true;
 
     }
 
+
+    /* Checks if list of playlist entries contains given stream URL */
+    private static boolean containsUri(List<PlaylistParser.Entry> entries, String uri) {
+        for (PlaylistParser.Entry entry : entries) {
+            if (entry.uri.equals(uri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /* Writes station image as png to storage */
     public void writeImageFile(File folder, Bitmap downloadedImage, String imgFileName) {
         String fileLocation = folder.toString() + "/" + imgFileName;
@@ -873,6 +956,68 @@ public final class Station implements Comparable<Station>, Parcelable {
     }
 
 
+    /* Getter for stream URIs - main stream URI first, then mirrors */
+    public List<String> getStreamUris() {
+        List<String> streamUris = new ArrayList<>();
+        streamUris.add(StreamURI);
+        if (MIRROR_URIS != null) {
+            for (String mirrorUri : MIRROR_URIS.split("\n")) {
+                mirrorUri = mirrorUri.trim();
+                if (!mirrorUri.isEmpty() && !streamUris.contains(mirrorUri)) {
+                    streamUris.add(mirrorUri);
+                }
+            }
+        }
+        return streamUris;
+    }
+
+
+    /* Getter for quality variants - bitrate in kbit/s -> stream URI, lowest bitrate first. Main stream URI is the best variant */
+    public SortedMap<Integer, String> getVariantUris() {
+        SortedMap<Integer, String> variantUris = new TreeMap<>();
+        if (VARIANT_URIS != null) {
+            for (String line : VARIANT_URIS.split("\n")) {
+                String[] parts = line.trim().split("\\s+", 2);
+                int bitrate = parseBitrate(parts[0]);
+                if (parts.length == 2 && bitrate > 0) {
+                    variantUris.put(bitrate, parts[1]);
+                }
+            }
+        }
+        if (!variantUris.containsValue(StreamURI)) {
+            // bitrate of main stream is unknown unless probed - it is assumed to be the best one
+            int bitrate = (HEALTH_BITRATE > 0 && !variantUris.containsKey(HEALTH_BITRATE)) ? HEALTH_BITRATE : Integer.MAX_VALUE;
+            variantUris.put(bitrate, StreamURI);
+        }
+        return variantUris;
+    }
+
+
+    /* Appends a quality variant */
+    public void addVariantUri(int bitrate, String variantUri) {
+        if (bitrate <= 0 || variantUri == null || variantUri.trim().isEmpty()) {
+            return;
+        }
+        String line = bitrate + " " + variantUri.trim();
+        VARIANT_URIS = (VARIANT_URIS == null || VARIANT_URIS.isEmpty()) ? line : VARIANT_URIS + "\n" + line;
+    }
+
+
+    /* Checks if recent background probes of station mostly failed */
+    public boolean isUnhealthy() {
+        return HEALTH_SUCCESS_RATIO >= 0 && HEALTH_SUCCESS_RATIO < UNHEALTHY_SUCCESS_RATIO;
+    }
+
+
+    /* Appends a mirror stream URI */
+    public void addMirrorUri(String mirrorUri) {
+        if (mirrorUri == null || mirrorUri.trim().isEmpty()) {
+            return;
+        }
+        MIRROR_URIS = (MIRROR_URIS == null || MIRROR_URIS.isEmpty()) ? mirrorUri.trim() : MIRROR_URIS + "\n" + mirrorUri.trim();
+    }
+
+
     /* Setter for image file object of station */
     public File getStationImageFileReference(File folder) {
         if (IMAGE_FILE_NAME != null && IMAGE_FILE_NAME != "") {
@@ -951,6 +1096,10 @@ public final class Station implements Comparable<Station>, Parcelable {
     Download image from URL to desk to be cached for next time use
      */
     private void AsyncSaveDownloadToDesk(final Context cntxt, final File folder, final String sImagePath, final String sImageFileName) {
+        if (!DataSaver.isImagePrefetchAllowed(cntxt)) {
+            // data saver on a metered network - image gets cached once on Wi-Fi
+            return;
+        }
         Thread prepareThread = new Thread() {
             @Override
             public void run() {
@@ -1085,57 +1234,7 @@ public final class Station implements Comparable<Station>, Parcelable {
 
     /* add station data to DB SQLite */
     public static void AddStationItemToDb(Station stationItem, Activity mActivity) {
-        //db test
-        StationsDbHelper mDbHelper = new StationsDbHelper(mActivity);
-        // Gets the data repository in write mode
-        SQLiteDatabase db = mDbHelper.getWritableDatabase();
-
-        // Filter results WHERE "title" = 'My Title'
-        String selection = StationsDbContract.StationEntry.COLUMN_UNIQUE_ID + " = ?";
-        String[] selectionArgs = {stationItem.UNIQUE_ID};
-
-        String[] projection = {
-                StationsDbContract.StationEntry._ID,
-                StationsDbContract.StationEntry.COLUMN_UNIQUE_ID
-        };
-        String sortOrder =
-                StationsDbContract.StationEntry.COLUMN_UNIQUE_ID + " DESC";
-        Cursor cursor = db.query(
-                StationsDbContract.StationEntry.TABLE_NAME, // The table to query
-                projection,                               // The columns to return
-                selection,                                // The columns for the WHERE clause
-                selectionArgs,                            // The values for the WHERE clause
-                null,                                     // don't group the rows
-                null,                                     // don't filter by row groups
-                sortOrder
-        );
-        if (cursor.getCount() == 0) {
-            //record not found
-            // Create a new map of values, where column names are the keys
-            ContentValues values = new ContentValues();
-            values.put(StationsDbContract.StationEntry.COLUMN_NAME_TITLE, stationItem.TITLE);
-            values.put(StationsDbContract.StationEntry.COLUMN_UNIQUE_ID, stationItem.UNIQUE_ID);
-            values.put(StationsDbContract.StationEntry.COLUMN_NAME_SUBTITLE, stationItem.SUBTITLE);
-            values.put(StationsDbContract.StationEntry.COLUMN_DESCRIPTION, stationItem.DESCRIPTION);
-            values.put(StationsDbContract.StationEntry.COLUMN_IMAGE_PATH, stationItem.IMAGE_PATH);
-            values.put(StationsDbContract.StationEntry.COLUMN_IMAGE_FILE_NAME, stationItem.IMAGE_FILE_NAME);
-            values.put(StationsDbContract.StationEntry.COLUMN_SMALL_IMAGE_FILE_NAME, stationItem.SMALL_IMAGE_FILE_NAME);
-            values.put(StationsDbContract.StationEntry.COLUMN_URI, stationItem.StreamURI);
-            values.put(StationsDbContract.StationEntry.COLUMN_CONTENT_TYPE, stationItem.CONTENT_TYPE);
-            values.put(StationsDbContract.StationEntry.COLUMN_RATING, stationItem.RATING);
-            values.put(StationsDbContract.StationEntry.COLUMN_IS_FAVOURITE, 0); //default
-            values.put(StationsDbContract.StationEntry.COLUMN_COMMA_SEPARATED_TAGS, stationItem.COMMA_SEPARATED_TAGS);
-            values.put(StationsDbContract.StationEntry.COLUMN_CATEGORY, stationItem.CATEGORY);
-            values.put(StationsDbContract.StationEntry.COLUMN_MARKDOWN_DESCRIPTION, stationItem.MarkdownDescription);
-            values.put(StationsDbContract.StationEntry.COLUMN_SMALL_IMAGE_URL, stationItem.SMALL_IMAGE_PATH);
-
-            // Insert the new row, returning the primary key value of the new row
-            long newRowId = db.insert(StationsDbContract.StationEntry.TABLE_NAME, null, values);
-            stationItem._ID = newRowId;
-        } //todo: , else then update the existing with new data
-
-        db.close();
-
+        new StationBatchWriter(mActivity).write(Collections.singletonList(stationItem));
     }
 
     public ArrayList<Station> getInsertedStations() {
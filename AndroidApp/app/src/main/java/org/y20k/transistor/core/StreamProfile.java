@@ -0,0 +1,105 @@
+/**
+ * StreamProfile.java
+ * Implements the StreamProfile class
+ * A StreamProfile remembers what was learned about a station's stream the last time it was played
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.core;
+
+
+/**
+ * StreamProfile class
+ */
+public final class StreamProfile {
+
+    /**
+     * Stream URI as stored with the station - the key of the profile
+     */
+    public String STREAM_URI;
+    /**
+     * Stream URL after following redirects
+     */
+    public String FINAL_URL;
+    /**
+     * True if stream is HTTP Live Streaming (HLS)
+     */
+    public boolean IS_HLS;
+    /**
+     * Shoutcast metadata interval (icy-metaint), 0 if stream has no metadata
+     */
+    public int ICY_METAINT;
+    /**
+     * Shoutcast bitrate (icy-br) in kbit/s, 0 if unknown
+     */
+    public int ICY_BR;
+    /**
+     * Codec of the stream, e.g. mp3 or aac
+     */
+    public String CODEC;
+    /**
+     * Time of last successful check (ms since epoch)
+     */
+    public long LAST_VERIFIED;
+
+
+    /* Constructor (default) */
+    public StreamProfile() {
+    }
+
+
+    /* Constructor */
+    public StreamProfile(String streamUri, String finalUrl, String contentType, int icyMetaint, int icyBr) {
+        STREAM_URI = streamUri;
+        FINAL_URL = (finalUrl != null && !finalUrl.isEmpty()) ? finalUrl : streamUri;
+        IS_HLS = isHlsContentType(contentType);
+        ICY_METAINT = icyMetaint;
+        ICY_BR = icyBr;
+        CODEC = getCodecFromContentType(contentType);
+        LAST_VERIFIED = System.currentTimeMillis();
+    }
+
+
+    /* Checks if content type denotes a HLS playlist */
+    public static boolean isHlsContentType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        contentType = contentType.toLowerCase();
+        return contentType.contains("application/vnd.apple.mpegurl") || contentType.contains("application/x-mpegurl");
+    }
+
+
+    /* Maps content type of stream to a short codec name */
+    public static String getCodecFromContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        contentType = contentType.toLowerCase();
+        if (isHlsContentType(contentType)) {
+            return "hls";
+        } else if (contentType.contains("mpeg") || contentType.contains("mp3")) {
+            return "mp3";
+        } else if (contentType.contains("aac") || contentType.contains("mp4")) {
+            return "aac";
+        } else if (contentType.contains("ogg") || contentType.contains("opus") || contentType.contains("vorbis")) {
+            return "ogg";
+        } else {
+            return contentType;
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "StreamProfile: " + STREAM_URI + " -> " + FINAL_URL + " (hls " + IS_HLS + ", icy-metaint " + ICY_METAINT + ", icy-br " + ICY_BR + ", codec " + CODEC + ")";
+    }
+
+}
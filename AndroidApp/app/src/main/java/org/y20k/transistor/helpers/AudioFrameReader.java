@@ -0,0 +1,252 @@
+/**
+ * AudioFrameReader.java
+ * Implements the AudioFrameReader class
+ * An AudioFrameReader splits an MP3 or ADTS (AAC) byte stream into frames that can be fed to MediaCodec
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * AudioFrameReader class
+ * Garbage that does not parse as a frame header is skipped, so the reader can start anywhere in a stream.
+ */
+public final class AudioFrameReader {
+
+    /* Define log tag */
+    private static final String LOG_TAG = AudioFrameReader.class.getSimpleName();
+
+
+    /* Keys */
+    public static final int FORMAT_UNSUPPORTED = 0;
+    public static final int FORMAT_MP3 = 1;
+    public static final int FORMAT_ADTS = 2;
+
+
+    /* Main class variables */
+    private static final int[] MP3_BITRATES_V1 = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 0};
+    private static final int[] MP3_BITRATES_V2 = {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160, 0};
+    private static final int[] MP3_SAMPLE_RATES_V1 = {44100, 48000, 32000, 0};
+    private static final int[] ADTS_SAMPLE_RATES = {96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350, 0, 0, 0};
+    private final InputStream mInputStream;
+    private final int mFormat;
+    private final byte[] mBuffer;
+    private int mStart = 0;
+    private int mEnd = 0;
+    private int mFrameOffset = 0;
+    private int mFrameLength = 0;
+    private int mSampleRate = 0;
+    private int mChannelCount = 0;
+    private int mSamplesPerFrame = 0;
+    private long mSkippedBytes = 0;
+    private boolean mSynced = false;
+
+
+    /* Constructor - buffer must hold the largest frame (8 KB for ADTS) */
+    public AudioFrameReader(InputStream inputStream, int format, byte[] buffer) {
+        mInputStream = inputStream;
+        mFormat = format;
+        mBuffer = buffer;
+    }
+
+
+    /* Maps content type to frame format */
+    public static int getFormat(String contentType) {
+        if (contentType == null) {
+            return FORMAT_UNSUPPORTED;
+        }
+        contentType = contentType.toLowerCase();
+        if (contentType.contains("mpegurl")) {
+            // playlist, not audio
+            return FORMAT_UNSUPPORTED;
+        } else if (contentType.contains("audio/mpeg") || contentType.contains("audio/mp3")) {
+            return FORMAT_MP3;
+        } else if (contentType.contains("aac")) {
+            return FORMAT_ADTS;
+        } else {
+            return FORMAT_UNSUPPORTED;
+        }
+    }
+
+
+    /* Reads next frame - returns false at end of stream. Frame stays valid until the next call */
+    public boolean nextFrame() throws IOException {
+        int headerSize = (mFormat == FORMAT_ADTS) ? 7 : 4;
+        while (true) {
+            if (!fill(headerSize)) {
+                return false;
+            }
+            int frameLength = parseHeader(mStart);
+            if (frameLength <= 0 || frameLength + headerSize > mBuffer.length) {
+                // no frame here - resync byte by byte
+                mSynced = false;
+                mStart++;
+                mSkippedBytes++;
+                continue;
+            }
+            if (!fill(mSynced ? frameLength : frameLength + headerSize)) {
+                return false;
+            }
+            if (!mSynced) {
+                // sync words occur in audio data too - accept a header only if the next frame follows right after it
+                int sampleRate = mSampleRate;
+                int channelCount = mChannelCount;
+                int samplesPerFrame = mSamplesPerFrame;
+                boolean confirmed = parseHeader(mStart + frameLength) > 0 && mSampleRate == sampleRate && mChannelCount == channelCount;
+                mSampleRate = sampleRate;
+                mChannelCount = channelCount;
+                mSamplesPerFrame = samplesPerFrame;
+                if (!confirmed) {
+                    mStart++;
+                    mSkippedBytes++;
+                    continue;
+                }
+                mSynced = true;
+            }
+            if (mSkippedBytes > 0) {
+                LogHelper.v(LOG_TAG, "Skipped " + mSkippedBytes + " bytes to find frame.");
+                mSkippedBytes = 0;
+            }
+            mFrameOffset = mStart;
+            mFrameLength = frameLength;
+            mStart += frameLength;
+            return true;
+        }
+    }
+
+
+    /* Getter for buffer holding the current frame */
+    public byte[] getBuffer() {
+        return mBuffer;
+    }
+
+
+    /* Getter for offset of current frame in buffer */
+    public int getFrameOffset() {
+        return mFrameOffset;
+    }
+
+
+    /* Getter for length of current frame */
+    public int getFrameLength() {
+        return mFrameLength;
+    }
+
+
+    /* Getter for sample rate of current frame */
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+
+    /* Getter for number of channels of current frame */
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+
+    /* Getter for number of samples (per channel) in current frame */
+    public int getSamplesPerFrame() {
+        return mSamplesPerFrame;
+    }
+
+
+    /* Parses frame header at offset - returns frame length, or 0 if there is no valid header */
+    private int parseHeader(int offset) {
+        return (mFormat == FORMAT_ADTS) ? parseAdtsHeader(offset) : parseMp3Header(offset);
+    }
+
+
+    /* Makes sure count bytes are available from mStart - returns false at end of stream */
+    private boolean fill(int count) throws IOException {
+        if (mEnd - mStart >= count) {
+            return true;
+        }
+        if (mStart > 0) {
+            // move remaining bytes to front
+            System.arraycopy(mBuffer, mStart, mBuffer, 0, mEnd - mStart);
+            mEnd -= mStart;
+            mStart = 0;
+        }
+        while (mEnd < count) {
+            int read = mInputStream.read(mBuffer, mEnd, mBuffer.length - mEnd);
+            if (read < 0) {
+                return false;
+            }
+            mEnd += read;
+        }
+        return true;
+    }
+
+
+    /* Parses MPEG audio layer III header - returns frame length, or 0 if there is no valid header */
+    private int parseMp3Header(int offset) {
+        int header = ((mBuffer[offset] & 0xFF) << 24) | ((mBuffer[offset + 1] & 0xFF) << 16)
+                | ((mBuffer[offset + 2] & 0xFF) << 8) | (mBuffer[offset + 3] & 0xFF);
+        if ((header & 0xFFE00000) != 0xFFE00000) {
+            return 0;
+        }
+        int version = (header >>> 19) & 3; // 0 = MPEG 2.5, 2 = MPEG 2, 3 = MPEG 1
+        int layer = (header >>> 17) & 3; // 1 = layer III
+        int bitrateIndex = (header >>> 12) & 0xF;
+        int sampleRateIndex = (header >>> 10) & 3;
+        int padding = (header >>> 9) & 1;
+        int channelMode = (header >>> 6) & 3;
+        if (version == 1 || layer != 1 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+            return 0;
+        }
+
+        boolean mpeg1 = version == 3;
+        int bitrate = (mpeg1 ? MP3_BITRATES_V1[bitrateIndex] : MP3_BITRATES_V2[bitrateIndex]) * 1000;
+        int sampleRate = MP3_SAMPLE_RATES_V1[sampleRateIndex];
+        if (version == 2) {
+            sampleRate /= 2;
+        } else if (version == 0) {
+            sampleRate /= 4;
+        }
+
+        mSampleRate = sampleRate;
+        mChannelCount = (channelMode == 3) ? 1 : 2;
+        mSamplesPerFrame = mpeg1 ? 1152 : 576;
+        return (mpeg1 ? 144 : 72) * bitrate / sampleRate + padding;
+    }
+
+
+    /* Parses ADTS header - returns frame length including header, or 0 if there is no valid header */
+    private int parseAdtsHeader(int offset) {
+        int b0 = mBuffer[offset] & 0xFF;
+        int b1 = mBuffer[offset + 1] & 0xFF;
+        int b2 = mBuffer[offset + 2] & 0xFF;
+        int b3 = mBuffer[offset + 3] & 0xFF;
+        int b4 = mBuffer[offset + 4] & 0xFF;
+        int b5 = mBuffer[offset + 5] & 0xFF;
+        if (b0 != 0xFF || (b1 & 0xF6) != 0xF0) {
+            // sync word missing or layer not 0
+            return 0;
+        }
+        int sampleRateIndex = (b2 >>> 2) & 0xF;
+        int channelConfig = ((b2 & 1) << 2) | (b3 >>> 6);
+        int frameLength = ((b3 & 3) << 11) | (b4 << 3) | (b5 >>> 5);
+        int headerLength = ((b1 & 1) == 1) ? 7 : 9;
+        if (ADTS_SAMPLE_RATES[sampleRateIndex] == 0 || channelConfig == 0 || frameLength <= headerLength) {
+            return 0;
+        }
+
+        mSampleRate = ADTS_SAMPLE_RATES[sampleRateIndex];
+        mChannelCount = channelConfig == 7 ? 8 : channelConfig;
+        mSamplesPerFrame = 1024;
+        return frameLength;
+    }
+
+}
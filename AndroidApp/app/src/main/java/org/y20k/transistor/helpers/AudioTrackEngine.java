@@ -0,0 +1,385 @@
+/**
+ * AudioTrackEngine.java
+ * Implements the AudioTrackEngine class
+ * An AudioTrackEngine fetches a stream with the app's HTTP client, decodes it with MediaCodec and plays it with AudioTrack
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+
+import org.y20k.transistor.TransistorCustomApplication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+
+
+/**
+ * AudioTrackEngine class
+ * Plays MP3 and ADTS (AAC) streams. Playback may start as soon as the start threshold worth of audio is decoded,
+ * and memory is bounded by the AudioTrack buffer (twice the start threshold) plus one frame buffer.
+ * A decoder thread owns codec and track - other threads only request state changes.
+ */
+public final class AudioTrackEngine implements PlaybackEngine, Runnable {
+
+    /* Define log tag */
+    private static final String LOG_TAG = AudioTrackEngine.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final long DEQUEUE_TIMEOUT = 10000; // microseconds
+    private static final int FRAME_BUFFER_SIZE = 16384; // one second of 128kbit stream - holds the largest frame
+    private final Listener mListener;
+    private final Handler mHandler;
+    private final PowerManager.WakeLock mWakeLock;
+    private final int mStartThreshold; // ms
+    private final Object mLock = new Object();
+    private String mDataSource = null;
+    private AudioTrack mAudioTrack = null; // guarded by mLock
+    private int mSampleRate = 0;
+    private int mBytesPerFrame = 0;
+    private long mBytesWritten = 0;
+    private boolean mPrepared = false;
+    private float mLeftVolume = 1.0f;
+    private float mRightVolume = 1.0f;
+    private volatile boolean mRunning = false;
+    private volatile boolean mPlaying = false;
+    private volatile boolean mReleased = false;
+    private volatile Call mCall = null;
+
+
+    /* Constructor */
+    public AudioTrackEngine(Context context, Listener listener, int startThreshold) {
+        mListener = listener;
+        mHandler = new Handler(Looper.getMainLooper());
+        mStartThreshold = startThreshold;
+        PowerManager powerManager = (PowerManager) context.getApplicationContext().getSystemService(Context.POWER_SERVICE);
+        mWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, LOG_TAG);
+        mWakeLock.setReferenceCounted(false);
+    }
+
+
+    /* Checks if engine can play given stream */
+    public static boolean isSupported(String contentType) {
+        return AudioFrameReader.getFormat(contentType) != AudioFrameReader.FORMAT_UNSUPPORTED;
+    }
+
+
+    @Override
+    public void setDataSource(String url) throws IOException {
+        mDataSource = url;
+    }
+
+
+    @Override
+    public void prepareAsync() {
+        mRunning = true;
+        new Thread(this, LOG_TAG).start();
+    }
+
+
+    @Override
+    public void start() {
+        synchronized (mLock) {
+            if (mAudioTrack != null) {
+                mAudioTrack.play();
+                mPlaying = true;
+                mWakeLock.acquire();
+            }
+        }
+    }
+
+
+    @Override
+    public void pause() {
+        synchronized (mLock) {
+            if (mAudioTrack != null) {
+                mAudioTrack.pause();
+            }
+            mPlaying = false;
+            mWakeLock.release();
+        }
+    }
+
+
+    @Override
+    public boolean isPlaying() {
+        return mPlaying;
+    }
+
+
+    @Override
+    public void setVolume(float leftVolume, float rightVolume) {
+        synchronized (mLock) {
+            mLeftVolume = leftVolume;
+            mRightVolume = rightVolume;
+            if (mAudioTrack != null) {
+                mAudioTrack.setStereoVolume(leftVolume, rightVolume);
+            }
+        }
+    }
+
+
+    @Override
+    public int getCurrentPosition() {
+        synchronized (mLock) {
+            if (mAudioTrack == null || mSampleRate == 0) {
+                return 0;
+            }
+            long frames = mAudioTrack.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+            return (int) (frames * 1000 / mSampleRate);
+        }
+    }
+
+
+    @Override
+    public void release() {
+        mReleased = true;
+        mRunning = false;
+        mPlaying = false;
+        Call call = mCall;
+        if (call != null) {
+            call.cancel(); // unblocks network read
+        }
+        synchronized (mLock) {
+            if (mAudioTrack != null) {
+                // unblocks a write waiting for buffer space
+                mAudioTrack.pause();
+                mAudioTrack.flush();
+            }
+            mWakeLock.release();
+        }
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+
+    /* Decoder loop */
+    @Override
+    public void run() {
+        Response response = null;
+        MediaCodec codec = null;
+        byte[] frameBuffer = new byte[FRAME_BUFFER_SIZE];
+        try {
+            Request request = new Request.Builder().url(mDataSource).build();
+            Call call = TransistorCustomApplication.getHttpClient().newCall(request);
+            mCall = call;
+            if (!mRunning) {
+                return;
+            }
+            response = call.execute();
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP " + response.code());
+            }
+            int format = AudioFrameReader.getFormat(response.header("Content-Type"));
+            if (format == AudioFrameReader.FORMAT_UNSUPPORTED) {
+                throw new IOException("Unsupported content type: " + response.header("Content-Type"));
+            }
+
+            AudioFrameReader reader = new AudioFrameReader(response.body().byteStream(), format, frameBuffer);
+            if (!reader.nextFrame()) {
+                postCompletion();
+                return;
+            }
+
+            // set up decoder from first frame
+            String mimeType = (format == AudioFrameReader.FORMAT_ADTS) ? "audio/mp4a-latm" : "audio/mpeg";
+            MediaFormat mediaFormat = MediaFormat.createAudioFormat(mimeType, reader.getSampleRate(), reader.getChannelCount());
+            if (format == AudioFrameReader.FORMAT_ADTS) {
+                mediaFormat.setInteger(MediaFormat.KEY_IS_ADTS, 1);
+            }
+            codec = MediaCodec.createDecoderByType(mimeType);
+            codec.configure(mediaFormat, null, null, 0);
+            codec.start();
+            LogHelper.v(LOG_TAG, "Decoding " + mimeType + " " + reader.getSampleRate() + " Hz, " + reader.getChannelCount() + " channels.");
+
+            decode(codec, reader, mediaFormat);
+
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            // MediaCodec.CodecException is an IllegalStateException
+            if (mRunning) {
+                LogHelper.e(LOG_TAG, "Playback failed: " + e);
+                postError(MediaPlayer.MEDIA_ERROR_UNKNOWN, MediaPlayer.MEDIA_ERROR_IO);
+            }
+        } finally {
+            mRunning = false;
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException e) {
+                    LogHelper.e(LOG_TAG, "Unable to stop decoder: " + e);
+                }
+                codec.release();
+            }
+            synchronized (mLock) {
+                if (mAudioTrack != null) {
+                    mAudioTrack.release();
+                    mAudioTrack = null;
+                }
+            }
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+
+    /* Feeds frames into the decoder and decoded audio into the track - returns at end of stream or when released */
+    @SuppressWarnings("deprecation") // buffer arrays are the only way on API 19 and 20
+    private void decode(MediaCodec codec, AudioFrameReader reader, MediaFormat inputFormat) throws IOException {
+        ByteBuffer[] inputBuffers = codec.getInputBuffers();
+        ByteBuffer[] outputBuffers = codec.getOutputBuffers();
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        MediaFormat outputFormat = inputFormat; // until the decoder reports its output format
+        byte[] pcm = new byte[0];
+        boolean haveFrame = true;
+        boolean inputDone = false;
+        long presentationTime = 0;
+
+        while (mRunning) {
+            // input: one frame per buffer
+            if (!inputDone) {
+                int inputIndex = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT);
+                if (inputIndex >= 0) {
+                    if (haveFrame) {
+                        ByteBuffer input = inputBuffers[inputIndex];
+                        input.clear();
+                        input.put(reader.getBuffer(), reader.getFrameOffset(), reader.getFrameLength());
+                        codec.queueInputBuffer(inputIndex, 0, reader.getFrameLength(), presentationTime, 0);
+                        presentationTime += reader.getSamplesPerFrame() * 1000000L / reader.getSampleRate();
+                        haveFrame = reader.nextFrame();
+                    } else {
+                        codec.queueInputBuffer(inputIndex, 0, 0, presentationTime, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    }
+                }
+            }
+
+            // output: decoded PCM into track
+            int outputIndex = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT);
+            if (outputIndex >= 0) {
+                if (info.size > 0) {
+                    if (pcm.length < info.size) {
+                        pcm = new byte[info.size];
+                    }
+                    ByteBuffer output = outputBuffers[outputIndex];
+                    output.position(info.offset);
+                    output.limit(info.offset + info.size);
+                    output.get(pcm, 0, info.size);
+                    writePcm(outputFormat, pcm, info.size);
+                }
+                codec.releaseOutputBuffer(outputIndex, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    LogHelper.v(LOG_TAG, "End of stream.");
+                    postCompletion();
+                    return;
+                }
+            } else if (outputIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                outputBuffers = codec.getOutputBuffers();
+            } else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                // real format - e.g. HE-AAC decodes to twice the sample rate of its header
+                outputFormat = codec.getOutputFormat();
+            }
+        }
+    }
+
+
+    /* Writes decoded audio to track - blocks while the track buffer is full */
+    private void writePcm(MediaFormat outputFormat, byte[] pcm, int size) {
+        AudioTrack audioTrack;
+        synchronized (mLock) {
+            if (!mRunning) {
+                return;
+            }
+            if (mAudioTrack == null) {
+                createAudioTrack(outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE), outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+            }
+            audioTrack = mAudioTrack;
+        }
+
+        int offset = 0;
+        while (offset < size && mRunning) {
+            int written = audioTrack.write(pcm, offset, size - offset);
+            if (written < 0) {
+                throw new IllegalStateException("AudioTrack write failed: " + written);
+            }
+            offset += written;
+        }
+        mBytesWritten += offset;
+
+        // enough audio queued - playback can start
+        if (!mPrepared && mBytesWritten * 1000 / ((long) mSampleRate * mBytesPerFrame) >= mStartThreshold) {
+            mPrepared = true;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mReleased) {
+                        mListener.onPrepared(AudioTrackEngine.this);
+                    }
+                }
+            });
+        }
+    }
+
+
+    /* Creates track with room for twice the start threshold - called with mLock held */
+    private void createAudioTrack(int sampleRate, int channelCount) {
+        int channelConfig = (channelCount == 1) ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+        mSampleRate = sampleRate;
+        mBytesPerFrame = 2 * ((channelCount == 1) ? 1 : 2);
+        int minBufferSize = AudioTrack.getMinBufferSize(sampleRate, channelConfig, AudioFormat.ENCODING_PCM_16BIT);
+        int thresholdSize = (int) ((long) sampleRate * mBytesPerFrame * mStartThreshold / 1000);
+        int bufferSize = Math.max(minBufferSize, thresholdSize * 2);
+        bufferSize -= bufferSize % mBytesPerFrame;
+        mAudioTrack = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate, channelConfig, AudioFormat.ENCODING_PCM_16BIT, bufferSize, AudioTrack.MODE_STREAM);
+        mAudioTrack.setStereoVolume(mLeftVolume, mRightVolume);
+        LogHelper.v(LOG_TAG, "AudioTrack created: " + sampleRate + " Hz, " + channelCount + " channels, buffer " + bufferSize / 1024 + " KB.");
+    }
+
+
+    /* Reports end of stream on main thread */
+    private void postCompletion() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mReleased) {
+                    mListener.onCompletion(AudioTrackEngine.this);
+                }
+            }
+        });
+    }
+
+
+    /* Reports error on main thread */
+    private void postError(final int what, final int extra) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mReleased) {
+                    mListener.onError(AudioTrackEngine.this, what, extra);
+                }
+            }
+        });
+    }
+
+}
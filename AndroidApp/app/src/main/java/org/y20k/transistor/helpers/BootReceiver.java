@@ -0,0 +1,42 @@
+/**
+ * BootReceiver.java
+ * Implements the BootReceiver class
+ * The BootReceiver re-arms alarms after a reboot or a change of the system clock
+ *
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ *
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+
+/**
+ * BootReceiver class
+ * Alarms are lost on reboot, and scheduled starts are wall clock times that move when clock or time zone change
+ */
+public final class BootReceiver extends BroadcastReceiver {
+
+    /* Define log tag */
+    private static final String LOG_TAG = BootReceiver.class.getSimpleName();
+
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        LogHelper.v(LOG_TAG, "Re-arming alarms: " + intent.getAction());
+        PlaybackScheduler.schedule(context);
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            StationHealthService.schedule(context);
+            CatalogSyncService.schedule(context);
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * CachingDns.java
+ * Implements the CachingDns class
+ * A CachingDns keeps resolved host names for a while, so repeated calls to a station skip the lookup
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.os.SystemClock;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Dns;
+
+
+/**
+ * CachingDns class
+ */
+public final class CachingDns implements Dns {
+
+    /* Define log tag */
+    private static final String LOG_TAG = CachingDns.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final long CACHE_DURATION = 10 * 60 * 1000; // 10 minutes
+    private final Map<String, Entry> mCache = new HashMap<>();
+
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (mCache) {
+            Entry entry = mCache.get(hostname);
+            if (entry != null && now - entry.resolved < CACHE_DURATION) {
+                return entry.addresses;
+            }
+        }
+
+        List<InetAddress> addresses = Dns.SYSTEM.lookup(hostname);
+        synchronized (mCache) {
+            mCache.put(hostname, new Entry(addresses, now));
+        }
+        LogHelper.v(LOG_TAG, "Resolved " + hostname + ": " + addresses);
+        return addresses;
+    }
+
+
+    /* Removes host from cache - e.g. after a failed connect */
+    public void invalidate(String hostname) {
+        synchronized (mCache) {
+            mCache.remove(hostname);
+        }
+    }
+
+
+    /**
+     * Inner class: A cached lookup result
+     */
+    private static final class Entry {
+        final List<InetAddress> addresses;
+        final long resolved;
+
+        Entry(List<InetAddress> addresses, long resolved) {
+            this.addresses = addresses;
+            this.resolved = resolved;
+        }
+    }
+    /**
+     * End of inner class
+     */
+
+}
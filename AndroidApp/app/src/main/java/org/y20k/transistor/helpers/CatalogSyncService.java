@@ -0,0 +1,258 @@
+/**
+ * CatalogSyncService.java
+ * Implements the CatalogSyncService class
+ * The CatalogSyncService keeps the stations of the remote catalog up to date
+ *
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ *
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v4.content.LocalBroadcastManager;
+
+import org.xmlpull.v1.XmlPullParserException;
+import org.y20k.transistor.TransistorCustomApplication;
+import org.y20k.transistor.core.Station;
+import org.y20k.transistor.sqlcore.StationsDbHelper;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+
+/**
+ * CatalogSyncService class
+ * The catalog is requested with the validators of the last download, so an unchanged catalog costs one 304.
+ * Otherwise every entry is compared by unique ID with a fingerprint of the entry stored last time: only new and
+ * changed entries are resolved and written, entries gone from the catalog are deleted. An entry that cannot be
+ * resolved gets a marked fingerprint, so that the next download retries only such entries. Only stations that
+ * came with the catalog are ever deleted, and a catalog station the user deleted is not added again. Favourite
+ * and rating are kept, see StationBatchWriter. Fingerprints are stored in the same transaction as the stations,
+ * here as well as by the first-run import, so a starter station the user deleted stays deleted too.
+ */
+public class CatalogSyncService extends IntentService {
+
+    /* Define log tag */
+    private static final String LOG_TAG = CatalogSyncService.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final String CATALOG_URL = "https://open-quran-radio.firebaseapp.com/q.xml";
+    private static final long SYNC_INTERVAL = AlarmManager.INTERVAL_HALF_DAY;
+    private static final long FIRST_SYNC_DELAY = AlarmManager.INTERVAL_FIFTEEN_MINUTES;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String FAILED_MARKER = "failed:"; // prefix of fingerprint of an entry that could not be resolved
+
+
+    /* Constructor (default) */
+    public CatalogSyncService() {
+        super(LOG_TAG);
+    }
+
+
+    /* Sets up the repeating alarm - does nothing if it is already set */
+    public static void schedule(Context context) {
+        Intent intent = new Intent(context, CatalogSyncService.class);
+        if (PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_NO_CREATE) != null) {
+            return;
+        }
+        PendingIntent pendingIntent = PendingIntent.getService(context, 0, intent, 0);
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        // not a wakeup alarm - the catalog can wait until the device is awake anyway
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + FIRST_SYNC_DELAY, SYNC_INTERVAL, pendingIntent);
+        LogHelper.v(LOG_TAG, "Catalog sync scheduled.");
+    }
+
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (!isConnected()) {
+            LogHelper.v(LOG_TAG, "No network. Skipping catalog sync.");
+            return;
+        }
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(this);
+        Request.Builder requestBuilder = new Request.Builder().url(CATALOG_URL);
+        String eTag = settings.getString(TransistorKeys.PREF_CATALOG_ETAG, null);
+        String lastModified = settings.getString(TransistorKeys.PREF_CATALOG_LAST_MODIFIED, null);
+        if (eTag != null) {
+            requestBuilder.header("If-None-Match", eTag);
+        }
+        if (lastModified != null) {
+            requestBuilder.header("If-Modified-Since", lastModified);
+        }
+
+        List<Station> entries;
+        try (Response response = TransistorCustomApplication.getHttpClient().newCall(requestBuilder.build()).execute()) {
+            if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                LogHelper.v(LOG_TAG, "Catalog not modified.");
+                return;
+            } else if (!response.isSuccessful()) {
+                LogHelper.e(LOG_TAG, "Unable to fetch catalog: HTTP " + response.code());
+                return;
+            }
+            eTag = response.header("ETag");
+            lastModified = response.header("Last-Modified");
+            entries = new Station().readXmlEntries(response.body().byteStream());
+        } catch (IOException | XmlPullParserException e) {
+            LogHelper.e(LOG_TAG, "Unable to fetch catalog: " + e);
+            return;
+        }
+
+        applyCatalog(entries);
+        // entries that failed to resolve are marked - they are retried with the next full download
+        settings.edit()
+                .putString(TransistorKeys.PREF_CATALOG_ETAG, eTag)
+                .putString(TransistorKeys.PREF_CATALOG_LAST_MODIFIED, lastModified)
+                .apply();
+    }
+
+
+    /* Applies differences between catalog and collection */
+    private void applyCatalog(List<Station> entries) {
+        StationsDbHelper dbHelper = new StationsDbHelper(this);
+        Map<String, String> storedFingerprints = dbHelper.GetCatalogFingerprints();
+        ArrayList<Station> stations = new ArrayList<>();
+        dbHelper.FillListOfAllStations(stations);
+        Set<String> stationIds = new HashSet<>();
+        for (Station station : stations) {
+            stationIds.add(station.UNIQUE_ID);
+        }
+
+        // diff by unique ID - fingerprints are taken before resolving changes the entries
+        Map<String, String> fingerprints = new HashMap<>();
+        List<Station> changedEntries = new ArrayList<>();
+        Set<String> removedIds = new HashSet<>(storedFingerprints.keySet());
+        int addedCount = 0;
+        for (Station entry : entries) {
+            String fingerprint = getFingerprint(entry);
+            String storedFingerprint = storedFingerprints.get(entry.UNIQUE_ID);
+            removedIds.remove(entry.UNIQUE_ID);
+            if (!stationIds.contains(entry.UNIQUE_ID)) {
+                if (storedFingerprint == null || storedFingerprint.startsWith(FAILED_MARKER)) {
+                    addedCount++;
+                    changedEntries.add(entry);
+                    fingerprints.put(entry.UNIQUE_ID, fingerprint);
+                }
+                // else: deleted by the user
+            } else if (!fingerprint.equals(storedFingerprint)) {
+                changedEntries.add(entry);
+                fingerprints.put(entry.UNIQUE_ID, fingerprint);
+            }
+        }
+        LogHelper.v(LOG_TAG, "Catalog changes. Added: " + addedCount + " / changed: " + (changedEntries.size() - addedCount) + " / removed: " + removedIds.size());
+        if (changedEntries.isEmpty() && removedIds.isEmpty()) {
+            return;
+        }
+
+        // apply diff - fingerprints of stored entries are written along with them
+        List<Station> storedEntries = Station.resolveImportedStations(changedEntries, fingerprints, this);
+        Map<String, String> storedEntryFingerprints = new HashMap<>();
+        for (Station entry : storedEntries) {
+            storedEntryFingerprints.put(entry.UNIQUE_ID, fingerprints.get(entry.UNIQUE_ID));
+        }
+        Map<String, String> failedFingerprints = new HashMap<>();
+        for (Station entry : changedEntries) {
+            if (!storedEntryFingerprints.containsKey(entry.UNIQUE_ID)) {
+                failedFingerprints.put(entry.UNIQUE_ID, FAILED_MARKER + fingerprints.get(entry.UNIQUE_ID));
+            }
+        }
+        if (!failedFingerprints.isEmpty()) {
+            LogHelper.v(LOG_TAG, "Unable to resolve " + failedFingerprints.size() + " catalog entries.");
+            dbHelper.SaveCatalogFingerprints(failedFingerprints);
+        }
+        ArrayList<Long> deletedStationIds = dbHelper.DeleteCatalogStations(removedIds);
+
+        // stations as stored - with favourite, rating and health
+        ArrayList<Station> updatedStations = new ArrayList<>();
+        stations.clear();
+        dbHelper.FillListOfAllStations(stations);
+        for (Station station : stations) {
+            if (storedEntryFingerprints.containsKey(station.UNIQUE_ID)) {
+                updatedStations.add(station);
+            }
+        }
+        long[] removedStationIds = new long[deletedStationIds.size()];
+        for (int i = 0; i < removedStationIds.length; i++) {
+            removedStationIds[i] = deletedStationIds.get(i);
+        }
+
+        // send local broadcast (needed by MainActivityFragment)
+        Intent i = new Intent();
+        i.setAction(TransistorKeys.ACTION_COLLECTION_CHANGED);
+        i.putExtra(TransistorKeys.EXTRA_COLLECTION_CHANGE, TransistorKeys.STATION_CATALOG_SYNCED);
+        i.putParcelableArrayListExtra(TransistorKeys.EXTRA_STATIONS, updatedStations);
+        i.putExtra(TransistorKeys.EXTRA_REMOVED_STATION_IDS, removedStationIds);
+        LocalBroadcastManager.getInstance(getApplication()).sendBroadcast(i);
+    }
+
+
+    /* Returns fingerprints of catalog entries by unique ID - entries as parsed, before resolving */
+    public static Map<String, String> getFingerprints(List<Station> entries) {
+        Map<String, String> fingerprints = new HashMap<>();
+        for (Station entry : entries) {
+            fingerprints.put(entry.UNIQUE_ID, getFingerprint(entry));
+        }
+        return fingerprints;
+    }
+
+
+    /* Returns fingerprint of a catalog entry - changes whenever one of its fields changes */
+    public static String getFingerprint(Station entry) {
+        String[] fields = {entry.UNIQUE_ID, entry.TITLE, entry.SUBTITLE, entry.DESCRIPTION, entry.MarkdownDescription,
+                entry.IMAGE_PATH, entry.SMALL_IMAGE_PATH, entry.StreamURI, entry.MIRROR_URIS, entry.VARIANT_URIS,
+                entry.CONTENT_TYPE, String.valueOf(entry.RATING), entry.COMMA_SEPARATED_TAGS, entry.CATEGORY};
+        StringBuilder content = new StringBuilder();
+        for (String field : fields) {
+            // separator cannot occur in XML text
+            content.append(field).append('\u0000');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(content.toString().getBytes(UTF_8));
+            StringBuilder fingerprint = new StringBuilder();
+            for (byte b : digest) {
+                fingerprint.append(String.format(Locale.US, "%02x", b));
+            }
+            return fingerprint.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return String.valueOf(content.toString().hashCode());
+        }
+    }
+
+
+    /* Checks if device is connected to a network */
+    private boolean isConnected() {
+        ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+}
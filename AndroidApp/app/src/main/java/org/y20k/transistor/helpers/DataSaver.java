@@ -0,0 +1,147 @@
+/**
+ * DataSaver.java
+ * Implements the DataSaver class
+ * The DataSaver picks the stream quality for the current network and guards data use on metered connections
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.preference.PreferenceManager;
+import android.telephony.TelephonyManager;
+
+import org.y20k.transistor.core.Station;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
+
+
+/**
+ * DataSaver class
+ * Unmetered networks get the best variant of a station. Metered networks get a capped bitrate - a lower one if the
+ * user enabled the data saver, the lowest one on 2G. Stations without variants always play their main stream.
+ */
+public final class DataSaver {
+
+    /* Define log tag */
+    private static final String LOG_TAG = DataSaver.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final int MAX_BITRATE_METERED = 128; // kbit/s
+    private static final int MAX_BITRATE_DATA_SAVER = 64; // kbit/s
+    private static final int MAX_BITRATE_SLOW_NETWORK = 32; // kbit/s
+    private static final String DAY_FORMAT = "yyyy-MM-dd";
+
+
+    /* Checks if user enabled the data saver */
+    public static boolean isEnabled(Context context) {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
+        return settings.getBoolean(TransistorKeys.PREF_DATA_SAVER, false);
+    }
+
+
+    /* Enables or disables the data saver */
+    public static void setEnabled(Context context, boolean enabled) {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
+        settings.edit().putBoolean(TransistorKeys.PREF_DATA_SAVER, enabled).apply();
+        LogHelper.v(LOG_TAG, "Data saver enabled: " + enabled);
+    }
+
+
+    /* Checks if active network is metered - e.g. mobile data or a tethered hotspot */
+    public static boolean isMeteredNetwork(Context context) {
+        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return connectivityManager.isActiveNetworkMetered();
+    }
+
+
+    /* Returns highest bitrate in kbit/s worth streaming on the active network */
+    public static int getMaxBitrate(Context context) {
+        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected() || !connectivityManager.isActiveNetworkMetered()) {
+            return Integer.MAX_VALUE;
+        }
+        int maxBitrate = isEnabled(context) ? MAX_BITRATE_DATA_SAVER : MAX_BITRATE_METERED;
+        if (networkInfo.getType() == ConnectivityManager.TYPE_MOBILE && isSlowMobileNetwork(networkInfo.getSubtype())) {
+            maxBitrate = Math.min(maxBitrate, MAX_BITRATE_SLOW_NETWORK);
+        }
+        return maxBitrate;
+    }
+
+
+    /* Returns stream URI of the best variant for the active network - stepDown selects a variant that many steps lower */
+    public static String selectVariant(Context context, Station station, int stepDown) {
+        SortedMap<Integer, String> variantUris = station.getVariantUris();
+        if (variantUris.size() == 1) {
+            return station.StreamURI;
+        }
+        List<Integer> bitrates = new ArrayList<>(variantUris.keySet());
+        int maxBitrate = getMaxBitrate(context);
+        int index = 0;
+        for (int i = 0; i < bitrates.size(); i++) {
+            if (bitrates.get(i) <= maxBitrate) {
+                index = i;
+            }
+        }
+        index = Math.max(0, index - stepDown);
+        String variantUri = variantUris.get(bitrates.get(index));
+        LogHelper.v(LOG_TAG, "Selected variant " + (index + 1) + " of " + bitrates.size() + " (max " + maxBitrate + " kbit/s): " + variantUri);
+        return variantUri;
+    }
+
+
+    /* Checks if station images may be downloaded ahead of time */
+    public static boolean isImagePrefetchAllowed(Context context) {
+        return !isEnabled(context) || !isMeteredNetwork(context);
+    }
+
+
+    /* Checks if the daily data cap of the data saver has been used up - only enforced on metered networks */
+    public static boolean isDailyCapReached(Context context, long bytesToday) {
+        if (!isEnabled(context) || !isMeteredNetwork(context)) {
+            return false;
+        }
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
+        long capBytes = settings.getInt(TransistorKeys.PREF_DATA_CAP_MB, TransistorKeys.DATA_CAP_MB_DEFAULT) * 1024L * 1024L;
+        return capBytes > 0 && bytesToday >= capBytes;
+    }
+
+
+    /* Returns key of current day used in data usage table */
+    public static String getDay(long time) {
+        return new SimpleDateFormat(DAY_FORMAT, Locale.US).format(new Date(time));
+    }
+
+
+    /* Checks if mobile network type is 2G */
+    private static boolean isSlowMobileNetwork(int networkType) {
+        switch (networkType) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
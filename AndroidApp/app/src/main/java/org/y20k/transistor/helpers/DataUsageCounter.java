@@ -0,0 +1,91 @@
+/**
+ * DataUsageCounter.java
+ * Implements the DataUsageCounter class
+ * A DataUsageCounter adds up the bytes streamed from a station and stores them per day
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.content.Context;
+
+import org.y20k.transistor.sqlcore.StationsDbHelper;
+
+
+/**
+ * DataUsageCounter class
+ * Bytes are collected in memory and written in chunks - called from the proxy thread for every read,
+ * so the database is only touched every few hundred kilobytes.
+ */
+public final class DataUsageCounter {
+
+    /* Define log tag */
+    private static final String LOG_TAG = DataUsageCounter.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final long FLUSH_BYTES = 256 * 1024;
+    private static final long USAGE_MEMORY = 31 * 24 * 60 * 60 * 1000L; // 31 days
+    private static String sLastPruneDay = null;
+    private final Context mContext;
+    private final long mStationId;
+    private long mPendingBytes;
+
+
+    /* Constructor */
+    public DataUsageCounter(Context context, long stationId) {
+        mContext = context.getApplicationContext();
+        mStationId = stationId;
+        mPendingBytes = 0;
+    }
+
+
+    /* Counts streamed bytes - returns true if the daily cap of the data saver has been reached */
+    public synchronized boolean count(int byteCount) {
+        mPendingBytes += byteCount;
+        if (mPendingBytes < FLUSH_BYTES) {
+            return false;
+        }
+        long bytesToday = flush();
+        return DataSaver.isDailyCapReached(mContext, bytesToday);
+    }
+
+
+    /* Writes counted bytes to database - returns bytes used today by all stations */
+    public synchronized long flush() {
+        StationsDbHelper dbHelper = new StationsDbHelper(mContext);
+        String today = DataSaver.getDay(System.currentTimeMillis());
+        if (mPendingBytes > 0) {
+            dbHelper.AddDataUsage(mStationId, today, mPendingBytes);
+            mPendingBytes = 0;
+        }
+        pruneOnce(dbHelper, today);
+        return dbHelper.GetDataUsage(-1, today);
+    }
+
+
+    /* Returns bytes used today by all stations - runs in background */
+    public static long getUsageToday(Context context) {
+        StationsDbHelper dbHelper = new StationsDbHelper(context.getApplicationContext());
+        return dbHelper.GetDataUsage(-1, DataSaver.getDay(System.currentTimeMillis()));
+    }
+
+
+    /* Deletes old usage once a day */
+    private static synchronized void pruneOnce(StationsDbHelper dbHelper, String today) {
+        if (today.equals(sLastPruneDay)) {
+            return;
+        }
+        sLastPruneDay = today;
+        int deleted = dbHelper.DeleteDataUsageBefore(DataSaver.getDay(System.currentTimeMillis() - USAGE_MEMORY));
+        LogHelper.v(LOG_TAG, "Deleted " + deleted + " old data usage entries.");
+    }
+
+}
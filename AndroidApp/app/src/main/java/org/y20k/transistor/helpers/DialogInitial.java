@@ -15,16 +15,16 @@
 package org.y20k.transistor.helpers;
 
 import android.app.Activity;
-import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.preference.PreferenceManager;
 import android.support.v4.content.LocalBroadcastManager;
 import android.widget.Toast;
 
 import org.xmlpull.v1.XmlPullParserException;
-import org.y20k.transistor.BuildConfig;
 import org.y20k.transistor.R;
 import org.y20k.transistor.core.Station;
 
@@ -32,6 +32,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -45,7 +46,7 @@ public final class DialogInitial {
     /* Main class variables */
     private final Activity mActivity;
     private final File mFolder;
-    private ProgressDialog progress;
+
 
     /* Constructor */
     public DialogInitial(Activity activity, File folder) {
@@ -54,111 +55,89 @@ public final class DialogInitial {
     }
 
 
-    /* Construct and show dialog */
+    /* Loads initial data - stations are listed right away, images follow in the background */
     public void show() {
-        // Note: declare ProgressDialog progress as a field in your class.
-        progress = ProgressDialog.show(mActivity, "Download initial data", "Downloading initial data..Please wait", true);
-
-        //open new thread to download XML
+        //open new thread to load initial data
         Thread prepareThread = new Thread() {
             @Override
             //@AddTrace(name = "runMethodInsideshowDialogInitData", enabled = true/*Optional*/)
             public void run() {
-                InputStream istream = mActivity.getResources().openRawResource(R.raw.starter_stations);
+                final ArrayList<Station> insertedStations;
                 try {
-                    Station station = new Station();
-                    station.readXmlElementsFromInputStream(mActivity, istream);
-
-                    // send local broadcast - adapter will save station
-                    Station mStationTemp = null;
-                    final ArrayList<Station> insertedStations = station.getInsertedStations();
-                    Intent i = new Intent();
-                    i.setAction(TransistorKeys.ACTION_COLLECTION_CHANGED);
-                    i.putExtra(TransistorKeys.EXTRA_COLLECTION_CHANGE, TransistorKeys.STATION_ADDED);
-                    i.putExtra(TransistorKeys.EXTRA_STATION, mStationTemp);
-                    i.putExtra(TransistorKeys.EXTRA_STATIONS, station.getInsertedStations()); //station sent with null values, to refresh the whole adabtor
-                    LocalBroadcastManager.getInstance(mActivity.getApplication()).sendBroadcast(i);
-
-                    //start download images
-                    mActivity.runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            progress.setMessage("Downloading images (0 of " + insertedStations.size() + ")");
-                        }
-                    });
-
-
-                    for (int j = 0; j < insertedStations.size(); j++) {
-                        //for test only
-                        try {
-                            if (BuildConfig.DEBUG) {
-                                //Thread.sleep(500);
-                            }
-                        } catch (Exception e) {
-                            LogHelper.e(LOG_TAG, "Error: Unable to Thread.sleep. (" + e + ")");
-                        }
-
-                        Station stItem = insertedStations.get(j);
-
-                        //download large image
-                        final String sIMAGE_PATH = stItem.IMAGE_PATH;
-                        final String sIMAGE_FILE_NAME = stItem.IMAGE_FILE_NAME;
-                        stItem.syncSaveDownloadToDesk(mActivity, sIMAGE_PATH, mFolder, sIMAGE_FILE_NAME);
-
-                        //download small image
-                        final String sSMALL_IMAGE_PATH = stItem.SMALL_IMAGE_PATH;
-                        final String sSMALL_IMAGE_FILE_NAME = stItem.SMALL_IMAGE_FILE_NAME;
-                        stItem.syncSaveDownloadToDesk(mActivity, sSMALL_IMAGE_PATH, mFolder, sSMALL_IMAGE_FILE_NAME);
-
-                        final int countDone = j + 1;
-                        //update progress
-                        mActivity.runOnUiThread(new Runnable() {
-                            @Override
-                            public void run() {
-                                progress.setMessage("Downloading images (" + countDone + " of " + insertedStations.size() + ")");
-                            }
-                        });
-                    }
+                    insertedStations = loadStations();
                 } catch (XmlPullParserException e) {
-                    e.printStackTrace();
                     LogHelper.e(LOG_TAG, "Error: XmlPullParserException. (" + e + ")");
-                    Toast.makeText(mActivity, "Something went wrong while initialize App, please try again after check onternet connectivity :(", Toast.LENGTH_LONG).show();
+                    showErrorToast();
+                    return;
                 } catch (IOException e) {
-                    e.printStackTrace();
                     LogHelper.e(LOG_TAG, "Error: IOException. (" + e + ")");
-                    Toast.makeText(mActivity, "Something went wrong while initialize App, please try again after check onternet connectivity :(", Toast.LENGTH_LONG).show();
-                } finally {
-                    // close InputStream after the app is
-                    // finished using it.
-                    if (istream != null) {
-                        try {
-                            istream.close();
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                    }
-
-                    //remove progress
-                    mActivity.runOnUiThread(new Runnable() {
-                        @Override
-                        public void run()
-                        {
-                            progress.dismiss();
-                        }
-                    });
-
-                    save_PREF_INITIAL_DATA_LOADED_State(mActivity);
+                    showErrorToast();
+                    return;
                 }
-            }
 
-            @Override
-            public State getState() {
-                return super.getState();
+                // send local broadcast - adapter will show stations
+                Station mStationTemp = null;
+                Intent i = new Intent();
+                i.setAction(TransistorKeys.ACTION_COLLECTION_CHANGED);
+                i.putExtra(TransistorKeys.EXTRA_COLLECTION_CHANGE, TransistorKeys.STATION_ADDED);
+                i.putExtra(TransistorKeys.EXTRA_STATION, mStationTemp);
+                i.putExtra(TransistorKeys.EXTRA_STATIONS, insertedStations); //station sent with null values, to refresh the whole adabtor
+                LocalBroadcastManager.getInstance(mActivity.getApplication()).sendBroadcast(i);
+                save_PREF_INITIAL_DATA_LOADED_State(mActivity);
+
+                // download images - the list shows image URLs until they are cached
+                // data saver on a metered network - images get cached later on Wi-Fi
+                if (!DataSaver.isImagePrefetchAllowed(mActivity) || !isConnected()) {
+                    return;
+                }
+                for (Station stItem : insertedStations) {
+                    //download large image
+                    stItem.syncSaveDownloadToDesk(mActivity, stItem.IMAGE_PATH, mFolder, stItem.IMAGE_FILE_NAME);
+                    //download small image
+                    stItem.syncSaveDownloadToDesk(mActivity, stItem.SMALL_IMAGE_PATH, mFolder, stItem.SMALL_IMAGE_FILE_NAME);
+                }
+                LogHelper.v(LOG_TAG, "Images of " + insertedStations.size() + " initial stations downloaded.");
             }
         };
         prepareThread.start();
     }
 
+
+    /* Stores initial stations - from the precompiled starter catalog, or by importing the XML if the build has none */
+    private ArrayList<Station> loadStations() throws IOException, XmlPullParserException {
+        ArrayList<Station> stations = StarterCatalog.load(mActivity);
+        if (stations != null) {
+            return stations;
+        }
+        InputStream istream = mActivity.getResources().openRawResource(R.raw.starter_stations);
+        try {
+            // catalog fingerprints are stored along, so that the catalog sync knows these stations - and which ones the user deleted
+            List<Station> entries = new Station().readXmlEntries(istream);
+            return new ArrayList<>(Station.resolveImportedStations(entries, CatalogSyncService.getFingerprints(entries), mActivity));
+        } finally {
+            istream.close();
+        }
+    }
+
+
+    /* Shows error toast on UI thread */
+    private void showErrorToast() {
+        mActivity.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(mActivity, "Something went wrong while initialize App, please try again :(", Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+
+    /* Checks if device is connected to a network */
+    private boolean isConnected() {
+        ConnectivityManager connectivityManager = (ConnectivityManager) mActivity.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
     /* Saves app state to save_PREF_INITIAL_DATA_LOADED_State */
     private void save_PREF_INITIAL_DATA_LOADED_State(Context context) {
         SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
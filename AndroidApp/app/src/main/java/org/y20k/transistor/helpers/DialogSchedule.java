@@ -0,0 +1,118 @@
+/**
+ * DialogSchedule.java
+ * Implements the DialogSchedule class
+ * A DialogSchedule lists, adds and removes the daily start times of a station
+ *
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ *
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.app.TimePickerDialog;
+import android.content.DialogInterface;
+import android.text.format.DateFormat;
+import android.widget.TimePicker;
+import android.widget.Toast;
+
+import org.y20k.transistor.R;
+import org.y20k.transistor.core.PlaybackSchedule;
+import org.y20k.transistor.core.Station;
+import org.y20k.transistor.sqlcore.StationsDbHelper;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+
+
+/**
+ * DialogSchedule class
+ */
+public final class DialogSchedule {
+
+    /* Define log tag */
+    private static final String LOG_TAG = DialogSchedule.class.getSimpleName();
+
+
+    /* Main class variables */
+    private final Activity mActivity;
+    private final Station mStation;
+
+
+    /* Constructor */
+    public DialogSchedule(Activity activity, Station station) {
+        mActivity = activity;
+        mStation = station;
+    }
+
+
+    /* Construct and show dialog */
+    public void show() {
+        final StationsDbHelper dbHelper = new StationsDbHelper(mActivity);
+        final ArrayList<PlaybackSchedule> schedules = dbHelper.GetSchedules(mStation._ID);
+
+        AlertDialog.Builder scheduleDialog = new AlertDialog.Builder(mActivity);
+        scheduleDialog.setTitle(mActivity.getString(R.string.dialog_schedule_title, mStation.TITLE));
+
+        // list start times - tap removes one
+        if (schedules.isEmpty()) {
+            scheduleDialog.setMessage(R.string.dialog_schedule_empty);
+        } else {
+            String[] times = new String[schedules.size()];
+            for (int i = 0; i < schedules.size(); i++) {
+                times[i] = schedules.get(i).getTimeString(mActivity);
+            }
+            scheduleDialog.setItems(times, new DialogInterface.OnClickListener() {
+                // listen for click on start time
+                public void onClick(DialogInterface dialog, int which) {
+                    dbHelper.DeleteSchedule(schedules.get(which)._ID);
+                    PlaybackScheduler.schedule(mActivity);
+                    Toast.makeText(mActivity, R.string.toastmessage_schedule_removed, Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+
+        // add button for new start time
+        scheduleDialog.setPositiveButton(R.string.dialog_schedule_button_add, new DialogInterface.OnClickListener() {
+            // listen for click on add button
+            public void onClick(DialogInterface arg0, int arg1) {
+                showTimePicker(dbHelper);
+            }
+        });
+
+        // add cancel button
+        scheduleDialog.setNegativeButton(R.string.dialog_generic_button_cancel, new DialogInterface.OnClickListener() {
+            // listen for click on cancel button
+            public void onClick(DialogInterface arg0, int arg1) {
+                // do nothing
+            }
+        });
+
+        // display schedule dialog
+        scheduleDialog.show();
+    }
+
+
+    /* Asks for a time of day and saves it as daily start time */
+    private void showTimePicker(final StationsDbHelper dbHelper) {
+        Calendar now = Calendar.getInstance();
+        TimePickerDialog timePickerDialog = new TimePickerDialog(mActivity, new TimePickerDialog.OnTimeSetListener() {
+            @Override
+            public void onTimeSet(TimePicker view, int hourOfDay, int minute) {
+                PlaybackSchedule schedule = new PlaybackSchedule(mStation._ID, hourOfDay, minute, PlaybackSchedule.EVERY_DAY);
+                dbHelper.AddSchedule(schedule);
+                PlaybackScheduler.schedule(mActivity);
+                LogHelper.v(LOG_TAG, "Daily start of " + mStation.TITLE + " at " + schedule.getTimeString(mActivity));
+                Toast.makeText(mActivity, mActivity.getString(R.string.toastmessage_schedule_added, schedule.getTimeString(mActivity)), Toast.LENGTH_SHORT).show();
+            }
+        }, now.get(Calendar.HOUR_OF_DAY), now.get(Calendar.MINUTE), DateFormat.is24HourFormat(mActivity));
+        timePickerDialog.show();
+    }
+
+}
@@ -0,0 +1,188 @@
+/**
+ * HttpMetricsListener.java
+ * Implements the HttpMetricsListener class
+ * A HttpMetricsListener records where the time of a HTTP call goes: DNS, connect, TLS and first byte
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+
+/**
+ * HttpMetricsListener class
+ * One instance per call. Totals of all calls are kept in static counters, see getSummary.
+ */
+public final class HttpMetricsListener extends EventListener {
+
+    /* Define log tag */
+    private static final String LOG_TAG = HttpMetricsListener.class.getSimpleName();
+
+
+    /* Factory to be handed to the OkHttpClient */
+    public static final EventListener.Factory FACTORY = new EventListener.Factory() {
+        @Override
+        public EventListener create(Call call) {
+            return new HttpMetricsListener();
+        }
+    };
+
+
+    /* Totals of all calls */
+    private static final Object sLock = new Object();
+    private static int sCalls = 0;
+    private static int sReusedConnections = 0;
+    private static int sFailedCalls = 0;
+    private static long sDnsTotal = 0;
+    private static int sDnsCount = 0;
+    private static long sConnectTotal = 0;
+    private static int sConnectCount = 0;
+    private static long sTlsTotal = 0;
+    private static int sTlsCount = 0;
+    private static long sFirstByteTotal = 0;
+    private static int sFirstByteCount = 0;
+
+
+    /* Main class variables */
+    private long mCallStart;
+    private long mDnsStart;
+    private long mDnsDuration = -1;
+    private long mConnectStart;
+    private long mConnectDuration = -1;
+    private long mTlsStart;
+    private long mTlsDuration = -1;
+    private long mFirstByteDuration = -1;
+    private boolean mNewConnection = false; // connection has been reused if connectStart was not called
+    private boolean mRecorded = false; // a call following redirects sees several responses
+
+
+    @Override
+    public void callStart(Call call) {
+        mCallStart = SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        mDnsStart = SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        mDnsDuration = SystemClock.elapsedRealtime() - mDnsStart;
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        mConnectStart = SystemClock.elapsedRealtime();
+        mNewConnection = true;
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        mTlsStart = SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        mTlsDuration = SystemClock.elapsedRealtime() - mTlsStart;
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        mConnectDuration = SystemClock.elapsedRealtime() - mConnectStart;
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        mFirstByteDuration = SystemClock.elapsedRealtime() - mCallStart;
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        // streams never end - record metrics as soon as the headers are in
+        record(call, true);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        if (mFirstByteDuration < 0) {
+            record(call, false);
+        }
+    }
+
+
+    /* Adds metrics of this call to the totals */
+    private void record(Call call, boolean success) {
+        if (mRecorded) {
+            return;
+        }
+        mRecorded = true;
+        synchronized (sLock) {
+            sCalls++;
+            if (!success) {
+                sFailedCalls++;
+            }
+            if (!mNewConnection) {
+                sReusedConnections++;
+            }
+            if (mDnsDuration >= 0) {
+                sDnsTotal += mDnsDuration;
+                sDnsCount++;
+            }
+            if (mConnectDuration >= 0) {
+                sConnectTotal += mConnectDuration;
+                sConnectCount++;
+            }
+            if (mTlsDuration >= 0) {
+                sTlsTotal += mTlsDuration;
+                sTlsCount++;
+            }
+            if (mFirstByteDuration >= 0) {
+                sFirstByteTotal += mFirstByteDuration;
+                sFirstByteCount++;
+            }
+        }
+        LogHelper.v(LOG_TAG, call.request().url().host() + (success ? "" : " (failed)")
+                + ": dns " + mDnsDuration + " ms, connect " + mConnectDuration + " ms, tls " + mTlsDuration
+                + " ms, first byte " + mFirstByteDuration + " ms, reused " + !mNewConnection);
+    }
+
+
+    /* Returns averages of all calls since app start */
+    public static String getSummary() {
+        synchronized (sLock) {
+            return "calls " + sCalls + " (failed " + sFailedCalls + ", reused connection " + sReusedConnections + ")"
+                    + ", avg dns " + average(sDnsTotal, sDnsCount) + " ms"
+                    + ", avg connect " + average(sConnectTotal, sConnectCount) + " ms"
+                    + ", avg tls " + average(sTlsTotal, sTlsCount) + " ms"
+                    + ", avg first byte " + average(sFirstByteTotal, sFirstByteCount) + " ms";
+        }
+    }
+
+
+    /* Calculates average - returns -1 if there are no values */
+    private static long average(long total, int count) {
+        return count > 0 ? total / count : -1;
+    }
+
+}
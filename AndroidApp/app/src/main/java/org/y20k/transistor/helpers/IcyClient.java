@@ -0,0 +1,394 @@
+/**
+ * IcyClient.java
+ * Implements the IcyClient class
+ * An IcyClient requests a Shoutcast or Icecast stream over a plain socket channel
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import org.y20k.transistor.TransistorCustomApplication;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+
+
+/**
+ * IcyClient class
+ * Shoutcast v1 servers answer with "ICY 200 OK" and sometimes end their header lines with a bare newline.
+ * The client accepts both that and HTTP/1.x, and the body is read straight from the socket into the caller's
+ * buffer. Only plain HTTP is spoken - a redirect to HTTPS stops with getRedirectLocation() set.
+ * Connect and read timeouts are the ones of the shared OkHttp client. Closing from another thread aborts
+ * a blocked connect or read.
+ */
+public final class IcyClient implements ReadableByteChannel {
+
+    /* Define log tag */
+    private static final String LOG_TAG = IcyClient.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final int MAX_HEADER_SIZE = 16384;
+    private static final int MAX_REDIRECTS = 5;
+    private static final String USER_AGENT = "Transistor";
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private final Object mLock = new Object();
+    private final int mConnectTimeout;
+    private final int mReadTimeout;
+    private String mUrl;
+    private SocketChannel mChannel = null;
+    private Selector mSelector = null;
+    private boolean mClosed = false;
+    private ByteBuffer mBody = null;
+    private int mStatusCode = 0;
+    private IcyHeaders mHeaders = null;
+    private String mRedirectLocation = null;
+
+
+    /* Constructor */
+    public IcyClient(String url) {
+        OkHttpClient httpClient = TransistorCustomApplication.getHttpClient();
+        mUrl = url;
+        mConnectTimeout = httpClient.connectTimeoutMillis();
+        mReadTimeout = httpClient.readTimeoutMillis();
+    }
+
+
+    /* Checks if URL can be requested by this client - plain HTTP only */
+    public static boolean isSupported(String url) {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        return httpUrl != null && !httpUrl.isHttps();
+    }
+
+
+    /* Connects and reads the response header - follows redirects as long as they stay on plain HTTP */
+    public void connect() throws IOException {
+        for (int redirects = 0; ; redirects++) {
+            HttpUrl url = HttpUrl.parse(mUrl);
+            if (url == null) {
+                throw new IOException("Invalid URL: " + mUrl);
+            }
+            open(url);
+            sendRequest(url);
+            readHeader();
+            if (mStatusCode < 300 || mStatusCode >= 400) {
+                return;
+            }
+
+            String location = mHeaders.header("location");
+            HttpUrl target = (location != null) ? url.resolve(location) : null;
+            if (target == null) {
+                return;
+            } else if (redirects >= MAX_REDIRECTS) {
+                throw new IOException("Too many redirects: " + mUrl);
+            }
+            closeChannel();
+            mUrl = target.toString();
+            LogHelper.v(LOG_TAG, "Redirected to " + mUrl);
+            if (target.isHttps()) {
+                mRedirectLocation = mUrl;
+                return;
+            }
+        }
+    }
+
+
+    /* Getter for status code of the response - e.g. 200 for "ICY 200 OK" */
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+
+    /* Getter for response headers */
+    public IcyHeaders getHeaders() {
+        return mHeaders;
+    }
+
+
+    /* Getter for URL after redirects */
+    public String getFinalUrl() {
+        return mUrl;
+    }
+
+
+    /* Getter for location of a redirect this client cannot follow - null unless redirected to HTTPS */
+    public String getRedirectLocation() {
+        return mRedirectLocation;
+    }
+
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        // hand out body bytes that arrived together with the header first
+        if (mBody != null) {
+            int count = Math.min(mBody.remaining(), dst.remaining());
+            int limit = mBody.limit();
+            mBody.limit(mBody.position() + count);
+            dst.put(mBody);
+            mBody.limit(limit);
+            if (!mBody.hasRemaining()) {
+                mBody = null;
+            }
+            return count;
+        }
+        return readChannel(dst);
+    }
+
+
+    @Override
+    public boolean isOpen() {
+        synchronized (mLock) {
+            return !mClosed && mChannel != null;
+        }
+    }
+
+
+    @Override
+    public void close() {
+        synchronized (mLock) {
+            mClosed = true;
+        }
+        closeChannel();
+    }
+
+
+    /* Opens socket to first reachable address of host - DNS answers are shared with the OkHttp client */
+    private void open(HttpUrl url) throws IOException {
+        List<InetAddress> addresses = TransistorCustomApplication.getHttpClient().dns().lookup(url.host());
+        IOException lastException = null;
+        for (InetAddress address : addresses) {
+            SocketChannel channel = SocketChannel.open();
+            synchronized (mLock) {
+                if (mClosed) {
+                    channel.close();
+                    throw new IOException("Canceled");
+                }
+                mChannel = channel;
+            }
+            try {
+                channel.socket().connect(new InetSocketAddress(address, url.port()), mConnectTimeout);
+                channel.configureBlocking(false);
+                Selector selector = Selector.open();
+                synchronized (mLock) {
+                    mSelector = selector;
+                    if (mClosed) {
+                        throw new IOException("Canceled");
+                    }
+                }
+                channel.register(selector, SelectionKey.OP_READ);
+                return;
+            } catch (IOException e) {
+                lastException = e;
+                closeChannel();
+                synchronized (mLock) {
+                    if (mClosed) {
+                        throw e;
+                    }
+                }
+                LogHelper.v(LOG_TAG, "Unable to connect to " + address + ": " + e);
+            }
+        }
+        throw (lastException != null) ? lastException : new UnknownHostException(url.host());
+    }
+
+
+    /* Sends GET request - HTTP/1.0 keeps Shoutcast v1 servers from answering in chunks */
+    private void sendRequest(HttpUrl url) throws IOException {
+        String path = url.encodedPath();
+        if (url.encodedQuery() != null) {
+            path += "?" + url.encodedQuery();
+        }
+        String host = url.host().contains(":") ? "[" + url.host() + "]" : url.host();
+        if (url.port() != HttpUrl.defaultPort(url.scheme())) {
+            host += ":" + url.port();
+        }
+        String request = "GET " + path + " HTTP/1.0\r\n" +
+                "Host: " + host + "\r\n" +
+                "User-Agent: " + USER_AGENT + "\r\n" +
+                "Accept: */*\r\n" +
+                "Icy-MetaData: 1\r\n" +
+                "Connection: close\r\n" +
+                "\r\n";
+
+        ByteBuffer buffer = ByteBuffer.wrap(request.getBytes(ISO_8859_1));
+        SocketChannel channel = getChannel();
+        while (buffer.hasRemaining()) {
+            if (channel.write(buffer) == 0) {
+                await(SelectionKey.OP_WRITE, mConnectTimeout);
+            }
+        }
+    }
+
+
+    /* Reads status line and headers - keeps body bytes received along with them */
+    private void readHeader() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_HEADER_SIZE);
+        int headerEnd = -1;
+        int scanned = 0;
+        while (headerEnd < 0) {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Response header too large");
+            } else if (readChannel(buffer) < 0) {
+                throw new EOFException("Connection closed before end of response header");
+            }
+            headerEnd = findHeaderEnd(buffer.array(), scanned, buffer.position());
+            scanned = Math.max(0, buffer.position() - 2);
+        }
+
+        String[] lines = new String(buffer.array(), 0, headerEnd, ISO_8859_1).split("\n");
+        mStatusCode = parseStatusLine(lines[0].trim());
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int separator = lines[i].indexOf(':');
+            if (separator <= 0) {
+                continue;
+            }
+            String name = lines[i].substring(0, separator).trim().toLowerCase(Locale.ENGLISH);
+            if (!headers.containsKey(name)) {
+                headers.put(name, lines[i].substring(separator + 1).trim());
+            }
+        }
+        mHeaders = new IcyHeaders(headers);
+
+        buffer.flip();
+        buffer.position(headerEnd);
+        mBody = buffer.hasRemaining() ? buffer : null;
+        LogHelper.v(LOG_TAG, lines[0].trim() + " from " + mUrl + ": " + mHeaders);
+    }
+
+
+    /* Reads from socket - waits at most the read timeout for data */
+    private int readChannel(ByteBuffer dst) throws IOException {
+        SocketChannel channel = getChannel();
+        while (true) {
+            int count = channel.read(dst);
+            if (count != 0 || !dst.hasRemaining()) {
+                return count;
+            }
+            await(SelectionKey.OP_READ, mReadTimeout);
+        }
+    }
+
+
+    /* Waits until socket is ready - throws if it is closed meanwhile or the timeout elapses */
+    private void await(int operations, int timeout) throws IOException {
+        SocketChannel channel;
+        Selector selector;
+        synchronized (mLock) {
+            channel = mChannel;
+            selector = mSelector;
+        }
+        if (channel == null || selector == null) {
+            throw new AsynchronousCloseException();
+        }
+        try {
+            SelectionKey key = channel.keyFor(selector);
+            if (key == null) {
+                throw new AsynchronousCloseException();
+            }
+            key.interestOps(operations);
+            int ready = selector.select(timeout);
+            selector.selectedKeys().clear();
+            if (!channel.isOpen()) {
+                throw new AsynchronousCloseException();
+            } else if (ready == 0) {
+                throw new SocketTimeoutException("No data from " + mUrl + " within " + timeout + " ms");
+            }
+        } catch (ClosedSelectorException | CancelledKeyException e) {
+            throw new AsynchronousCloseException();
+        }
+    }
+
+
+    /* Getter for the open socket */
+    private SocketChannel getChannel() throws IOException {
+        synchronized (mLock) {
+            if (mChannel == null) {
+                throw new ClosedChannelException();
+            }
+            return mChannel;
+        }
+    }
+
+
+    /* Closes socket and selector - wakes up a thread blocked in connect or read */
+    private void closeChannel() {
+        SocketChannel channel;
+        Selector selector;
+        synchronized (mLock) {
+            channel = mChannel;
+            selector = mSelector;
+            mChannel = null;
+            mSelector = null;
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to close connection: " + e);
+        }
+    }
+
+
+    /* Parses "ICY 200 OK" or "HTTP/1.1 200 OK" - returns status code */
+    private static int parseStatusLine(String statusLine) throws IOException {
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2 || !(parts[0].startsWith("HTTP/") || parts[0].equals("ICY"))) {
+            throw new IOException("Unexpected status line: " + statusLine);
+        }
+        int statusCode = IcyHeaders.parseInt(parts[1]);
+        if (statusCode < 100) {
+            throw new IOException("Unexpected status line: " + statusLine);
+        }
+        return statusCode;
+    }
+
+
+    /* Finds end of header - returns index after the empty line, or -1. Lines may end with CRLF or LF */
+    private static int findHeaderEnd(byte[] bytes, int from, int to) {
+        for (int i = from; i < to - 1; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            if (bytes[i + 1] == '\n') {
+                return i + 2;
+            } else if (bytes[i + 1] == '\r' && i + 2 < to && bytes[i + 2] == '\n') {
+                return i + 3;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * IcyHeaders.java
+ * Implements the IcyHeaders class
+ * IcyHeaders hold the response headers of a Shoutcast or Icecast stream in typed form
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import okhttp3.Headers;
+
+
+/**
+ * IcyHeaders class
+ * Values that are missing or malformed are null, or 0 for numbers. Header names are matched case-insensitive.
+ */
+public final class IcyHeaders {
+
+    /**
+     * Content-Type header, null if missing
+     */
+    public final String CONTENT_TYPE;
+    /**
+     * Station name (icy-name)
+     */
+    public final String NAME;
+    /**
+     * Station genre (icy-genre)
+     */
+    public final String GENRE;
+    /**
+     * Station website (icy-url)
+     */
+    public final String URL;
+    /**
+     * Station description (icy-description)
+     */
+    public final String DESCRIPTION;
+    /**
+     * Bitrate in kbit/s (icy-br), 0 if unknown
+     */
+    public final int BITRATE;
+    /**
+     * Metadata interval in bytes (icy-metaint), 0 if stream has no metadata
+     */
+    public final int METAINT;
+    /**
+     * Sample rate in Hz (icy-audio-info), 0 if unknown
+     */
+    public final int SAMPLE_RATE;
+    /**
+     * Number of channels (icy-audio-info), 0 if unknown
+     */
+    public final int CHANNELS;
+    /**
+     * True if station is listed in the public directory (icy-pub)
+     */
+    public final boolean PUBLIC;
+
+    private final Map<String, String> mHeaders;
+
+
+    /* Constructor - header names in lower case */
+    public IcyHeaders(Map<String, String> headers) {
+        mHeaders = Collections.unmodifiableMap(headers);
+        CONTENT_TYPE = header("content-type");
+        NAME = header("icy-name");
+        GENRE = header("icy-genre");
+        URL = header("icy-url");
+        DESCRIPTION = header("icy-description");
+        BITRATE = parseInt(header("icy-br"));
+        METAINT = parseInt(header("icy-metaint"));
+        PUBLIC = "1".equals(header("icy-pub"));
+
+        // Icecast sends e.g. "ice-samplerate=44100;ice-bitrate=128;ice-channels=2"
+        String audioInfo = header("icy-audio-info");
+        if (audioInfo == null) {
+            audioInfo = header("ice-audio-info");
+        }
+        Map<String, String> audioValues = parseAudioInfo(audioInfo);
+        SAMPLE_RATE = parseInt(audioValues.get("samplerate"));
+        CHANNELS = parseInt(audioValues.get("channels"));
+    }
+
+
+    /* Creates headers from an OkHttp response */
+    public static IcyHeaders from(Headers headers) {
+        Map<String, String> map = new HashMap<>();
+        for (String name : headers.names()) {
+            map.put(name.toLowerCase(Locale.ENGLISH), headers.get(name));
+        }
+        return new IcyHeaders(map);
+    }
+
+
+    /* Getter for a raw header value - null if missing */
+    public String header(String name) {
+        return mHeaders.get(name.toLowerCase(Locale.ENGLISH));
+    }
+
+
+    /* Parses numeric header value - returns 0 if missing or malformed. Some servers repeat values, e.g. "128,128" */
+    public static int parseInt(String value) {
+        if (value == null) {
+            return 0;
+        }
+        value = value.trim();
+        int end = 0;
+        while (end < value.length() && Character.isDigit(value.charAt(end))) {
+            end++;
+        }
+        if (end == 0 || end > 9) {
+            return 0;
+        }
+        return Integer.parseInt(value.substring(0, end));
+    }
+
+
+    /* Parses key-value pairs of icy-audio-info - keys without "ice-" prefix */
+    private static Map<String, String> parseAudioInfo(String audioInfo) {
+        Map<String, String> values = new HashMap<>();
+        if (audioInfo == null) {
+            return values;
+        }
+        for (String pair : audioInfo.split(";")) {
+            int separator = pair.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            String key = pair.substring(0, separator).trim().toLowerCase(Locale.ENGLISH);
+            if (key.startsWith("ice-")) {
+                key = key.substring(4);
+            }
+            values.put(key, pair.substring(separator + 1).trim());
+        }
+        return values;
+    }
+
+
+    @Override
+    public String toString() {
+        return "IcyHeaders{name=" + NAME + ", br=" + BITRATE + ", metaint=" + METAINT + ", content-type=" + CONTENT_TYPE + "}";
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * IcyMetadataParser.java
+ * Implements the IcyMetadataParser class
+ * An IcyMetadataParser extracts the stream title from raw Shoutcast metadata blocks
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * IcyMetadataParser class
+ * Works directly on the bytes of a metadata block: the title is only decoded into a String
+ * if it differs from the previously seen title. One instance per stream connection.
+ */
+public final class IcyMetadataParser {
+
+    /* Main class variables */
+    private static final byte[] STREAM_TITLE_HEADER = TransistorKeys.SHOUTCAST_STREAM_TITLE_HEADER.getBytes(StandardCharsets.UTF_8);
+    private static final int MAX_METADATA_LENGTH = 255 * 16; // length byte times 16
+    private final byte[] mLastTitle = new byte[MAX_METADATA_LENGTH];
+    private int mLastTitleLength = -1;
+    private String mTitle = null;
+
+
+    /* Parses a metadata block - returns the new title, or null if the block holds no title or the title did not change */
+    public String parse(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+
+        // metadata blocks are padded with zeros
+        while (end > offset && buffer[end - 1] == 0) {
+            end--;
+        }
+
+        int titleStart = indexOf(buffer, offset, end, STREAM_TITLE_HEADER);
+        if (titleStart < 0) {
+            return null;
+        }
+        titleStart += STREAM_TITLE_HEADER.length;
+
+        int titleEnd = findTitleEnd(buffer, titleStart, end);
+        int titleLength = titleEnd - titleStart;
+        if (titleLength <= 0) {
+            return null;
+        }
+
+        // compare with previous title before allocating anything
+        if (titleLength == mLastTitleLength && regionEquals(buffer, titleStart, mLastTitle, titleLength)) {
+            return null;
+        }
+
+        System.arraycopy(buffer, titleStart, mLastTitle, 0, titleLength);
+        mLastTitleLength = titleLength;
+        mTitle = new String(buffer, titleStart, titleLength, StandardCharsets.UTF_8);
+        return mTitle;
+    }
+
+
+    /* Getter for the most recently parsed title */
+    public String getTitle() {
+        return mTitle;
+    }
+
+
+    /* Forgets the previous title - the next block containing a title will be reported again */
+    public void reset() {
+        mLastTitleLength = -1;
+        mTitle = null;
+    }
+
+
+    /* Finds end of title: the terminating "';", or the last quote in the block for malformed blocks */
+    private static int findTitleEnd(byte[] buffer, int from, int end) {
+        int lastQuote = -1;
+        for (int i = from; i < end; i++) {
+            if (buffer[i] == '\'') {
+                if (i + 1 < end && buffer[i + 1] == ';') {
+                    return i;
+                }
+                lastQuote = i;
+            }
+        }
+        return lastQuote >= 0 ? lastQuote : end;
+    }
+
+
+    /* Finds first occurrence of pattern in given buffer region */
+    private static int indexOf(byte[] buffer, int from, int end, byte[] pattern) {
+        int last = end - pattern.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buffer[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+
+    /* Compares a buffer region with the start of another buffer */
+    private static boolean regionEquals(byte[] buffer, int offset, byte[] other, int length) {
+        for (int i = 0; i < length; i++) {
+            if (buffer[offset + i] != other[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * IcyStreamDemuxer.java
+ * Implements the IcyStreamDemuxer class
+ * An IcyStreamDemuxer splits a Shoutcast stream into audio data and metadata blocks
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * IcyStreamDemuxer class
+ * State machine that accepts the stream in chunks of any size.
+ * Shoutcast metadata described here: http://www.smackfu.com/stuff/programming/shoutcast.html
+ */
+public final class IcyStreamDemuxer {
+
+    /* Interface for the consumer of the demuxed stream */
+    public interface Listener {
+        /* Called with a buffer holding audio data only - must be consumed before returning */
+        void onAudio(ByteBuffer audio);
+        /* Called with a complete metadata block */
+        void onMetadata(byte[] metadata, int length);
+    }
+
+
+    /* Main class variables */
+    private static final int STATE_AUDIO = 0;
+    private static final int STATE_METADATA_LENGTH = 1;
+    private static final int STATE_METADATA = 2;
+    private final int mMetadataInterval;
+    private final Listener mListener;
+    private final byte[] mMetadata = new byte[255 * 16];
+    private int mState;
+    private int mAudioRemaining;
+    private int mMetadataLength;
+    private int mMetadataRead;
+
+
+    /* Constructor - a metadata interval of 0 means the stream carries no metadata */
+    public IcyStreamDemuxer(int metadataInterval, Listener listener) {
+        mMetadataInterval = metadataInterval;
+        mListener = listener;
+        mState = STATE_AUDIO;
+        mAudioRemaining = metadataInterval;
+    }
+
+
+    /* Consumes all remaining bytes of given buffer */
+    public void process(ByteBuffer input) {
+        if (mMetadataInterval <= 0) {
+            mListener.onAudio(input);
+            input.position(input.limit());
+            return;
+        }
+
+        while (input.hasRemaining()) {
+            switch (mState) {
+                case STATE_AUDIO: {
+                    int count = Math.min(mAudioRemaining, input.remaining());
+                    int limit = input.limit();
+                    int end = input.position() + count;
+                    input.limit(end);
+                    mListener.onAudio(input);
+                    input.limit(limit);
+                    input.position(end);
+                    mAudioRemaining -= count;
+                    if (mAudioRemaining == 0) {
+                        mState = STATE_METADATA_LENGTH;
+                    }
+                    break;
+                }
+                case STATE_METADATA_LENGTH: {
+                    mMetadataLength = (input.get() & 0xFF) * 16;
+                    mMetadataRead = 0;
+                    if (mMetadataLength == 0) {
+                        startAudio();
+                    } else {
+                        mState = STATE_METADATA;
+                    }
+                    break;
+                }
+                case STATE_METADATA: {
+                    int count = Math.min(mMetadataLength - mMetadataRead, input.remaining());
+                    input.get(mMetadata, mMetadataRead, count);
+                    mMetadataRead += count;
+                    if (mMetadataRead == mMetadataLength) {
+                        mListener.onMetadata(mMetadata, mMetadataLength);
+                        startAudio();
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+
+    /* Switches back to audio data */
+    private void startAudio() {
+        mState = STATE_AUDIO;
+        mAudioRemaining = mMetadataInterval;
+    }
+
+}
@@ -0,0 +1,136 @@
+/**
+ * MediaPlayerEngine.java
+ * Implements the MediaPlayerEngine class
+ * A MediaPlayerEngine plays a stream with the system MediaPlayer
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.os.PowerManager;
+
+import java.io.IOException;
+
+
+/**
+ * MediaPlayerEngine class
+ * Plays everything MediaPlayer supports, including HLS
+ */
+public final class MediaPlayerEngine implements PlaybackEngine,
+        MediaPlayer.OnBufferingUpdateListener,
+        MediaPlayer.OnCompletionListener,
+        MediaPlayer.OnPreparedListener,
+        MediaPlayer.OnErrorListener,
+        MediaPlayer.OnInfoListener {
+
+    /* Main class variables */
+    private final MediaPlayer mMediaPlayer;
+    private final Listener mListener;
+
+
+    /* Constructor */
+    public MediaPlayerEngine(Context context, Listener listener) {
+        mListener = listener;
+        mMediaPlayer = new MediaPlayer();
+        mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        mMediaPlayer.setOnCompletionListener(this);
+        mMediaPlayer.setOnPreparedListener(this);
+        mMediaPlayer.setOnErrorListener(this);
+        mMediaPlayer.setOnInfoListener(this);
+        mMediaPlayer.setOnBufferingUpdateListener(this);
+        mMediaPlayer.setWakeMode(context.getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK); // needs android.permission.WAKE_LOCK
+    }
+
+
+    @Override
+    public void setDataSource(String url) throws IOException {
+        mMediaPlayer.setDataSource(url);
+    }
+
+
+    @Override
+    public void prepareAsync() {
+        mMediaPlayer.prepareAsync();
+    }
+
+
+    @Override
+    public void start() {
+        mMediaPlayer.start();
+    }
+
+
+    @Override
+    public void pause() {
+        mMediaPlayer.pause();
+    }
+
+
+    @Override
+    public boolean isPlaying() {
+        return mMediaPlayer.isPlaying();
+    }
+
+
+    @Override
+    public void setVolume(float leftVolume, float rightVolume) {
+        mMediaPlayer.setVolume(leftVolume, rightVolume);
+    }
+
+
+    @Override
+    public int getCurrentPosition() {
+        return mMediaPlayer.getCurrentPosition();
+    }
+
+
+    @Override
+    public void release() {
+        if (mMediaPlayer.isPlaying()) {
+            mMediaPlayer.stop();
+        }
+        mMediaPlayer.reset();
+        mMediaPlayer.release();
+    }
+
+
+    @Override
+    public void onPrepared(MediaPlayer mp) {
+        mListener.onPrepared(this);
+    }
+
+
+    @Override
+    public void onCompletion(MediaPlayer mp) {
+        mListener.onCompletion(this);
+    }
+
+
+    @Override
+    public boolean onError(MediaPlayer mp, int what, int extra) {
+        return mListener.onError(this, what, extra);
+    }
+
+
+    @Override
+    public boolean onInfo(MediaPlayer mp, int what, int extra) {
+        return mListener.onInfo(this, what, extra);
+    }
+
+
+    @Override
+    public void onBufferingUpdate(MediaPlayer mp, int percent) {
+        mListener.onBufferingUpdate(this, percent);
+    }
+
+}
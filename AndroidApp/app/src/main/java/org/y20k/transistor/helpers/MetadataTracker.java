@@ -0,0 +1,128 @@
+/**
+ * MetadataTracker.java
+ * Implements the MetadataTracker class
+ * A MetadataTracker collects stream titles during a playback session and publishes real changes only
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.support.v4.content.LocalBroadcastManager;
+
+
+/**
+ * MetadataTracker class
+ * Lives from startPlayback to stopPlayback. Titles may be reported from any thread;
+ * changes are debounced on the main thread, so a title that flaps back and forth is not published.
+ */
+public final class MetadataTracker {
+
+    /* Define log tag */
+    private static final String LOG_TAG = MetadataTracker.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final long DEBOUNCE_DELAY = 2000; // ms
+    private final Context mContext;
+    private final Handler mHandler;
+    private String mPublishedTitle = null;
+    private String mPendingTitle = null;
+    private volatile boolean mStopped = false;
+
+
+    /* Constructor */
+    public MetadataTracker(Context context) {
+        mContext = context.getApplicationContext();
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+
+    /* Reports a title read from the stream - may be called from any thread */
+    public void onTitle(final String title) {
+        if (mStopped || title == null || title.length() == 0) {
+            return;
+        }
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                handleTitle(title);
+            }
+        });
+    }
+
+
+    /* Ends the session - no further titles are published */
+    public void stop() {
+        mStopped = true;
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+
+    /* Getter for the last published title */
+    public String getTitle() {
+        return mPublishedTitle;
+    }
+
+
+    /* Schedules publication of a changed title - runs on main thread */
+    private void handleTitle(String title) {
+        if (mStopped || title.equals(mPendingTitle)) {
+            return;
+        }
+        mHandler.removeCallbacks(mPublishRunnable);
+
+        if (title.equals(mPublishedTitle)) {
+            // title flapped back before the pending one got published
+            mPendingTitle = null;
+            return;
+        }
+
+        mPendingTitle = title;
+        if (mPublishedTitle == null) {
+            // first title of this session - publish right away
+            mPublishRunnable.run();
+        } else {
+            mHandler.postDelayed(mPublishRunnable, DEBOUNCE_DELAY);
+        }
+    }
+
+
+    /* Publishes pending title: one local broadcast and one preference write per change */
+    private final Runnable mPublishRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mStopped || mPendingTitle == null) {
+                return;
+            }
+            mPublishedTitle = mPendingTitle;
+            mPendingTitle = null;
+            LogHelper.v(LOG_TAG, "Metadata: «" + mPublishedTitle + "»");
+
+            // send local broadcast
+            Intent i = new Intent();
+            i.setAction(TransistorKeys.ACTION_METADATA_CHANGED);
+            i.putExtra(TransistorKeys.EXTRA_METADATA, mPublishedTitle);
+            LocalBroadcastManager.getInstance(mContext).sendBroadcast(i);
+
+            // save metadata to shared preferences
+            SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(mContext);
+            SharedPreferences.Editor editor = settings.edit();
+            editor.putString(TransistorKeys.PREF_STATION_METADATA, mPublishedTitle);
+            editor.apply();
+        }
+    };
+
+}
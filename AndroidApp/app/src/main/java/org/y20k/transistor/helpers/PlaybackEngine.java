@@ -0,0 +1,60 @@
+/**
+ * PlaybackEngine.java
+ * Implements the PlaybackEngine interface
+ * A PlaybackEngine plays one audio stream - PlayerService programs against this instead of MediaPlayer
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import java.io.IOException;
+
+
+/**
+ * PlaybackEngine interface
+ * Life cycle and callback semantics follow MediaPlayer: setDataSource, prepareAsync, onPrepared, start.
+ * Error and info codes are the MediaPlayer constants. Callbacks arrive on the main thread.
+ */
+public interface PlaybackEngine {
+
+    /* Interface for the owner of the engine */
+    interface Listener {
+        void onPrepared(PlaybackEngine engine);
+        void onCompletion(PlaybackEngine engine);
+        boolean onError(PlaybackEngine engine, int what, int extra);
+        boolean onInfo(PlaybackEngine engine, int what, int extra);
+        void onBufferingUpdate(PlaybackEngine engine, int percent);
+    }
+
+    /* Sets the URL to play */
+    void setDataSource(String url) throws IOException;
+
+    /* Starts connecting and buffering - calls onPrepared when playback can start */
+    void prepareAsync();
+
+    /* Starts or resumes playback */
+    void start();
+
+    /* Pauses playback */
+    void pause();
+
+    /* Checks if engine is playing */
+    boolean isPlaying();
+
+    /* Sets volume - 0.0 to 1.0 */
+    void setVolume(float leftVolume, float rightVolume);
+
+    /* Returns played time in milliseconds */
+    int getCurrentPosition();
+
+    /* Stops playback and frees all resources - the engine cannot be used afterwards */
+    void release();
+
+}
@@ -0,0 +1,172 @@
+/**
+ * PlaybackMetrics.java
+ * Implements the PlaybackMetrics class
+ * PlaybackMetrics record startup times, stalls and traffic of one play session and add them to the station's histograms
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+
+import org.y20k.transistor.core.QoeHistogram;
+import org.y20k.transistor.sqlcore.StationsDbHelper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * PlaybackMetrics class
+ * Startup times count from the moment the user pressed play. Rebuffers and stall time count only after the first
+ * audio - waiting for the first audio is startup, not a stall. A reconnect counts as a stall that lasts until the
+ * new player is prepared. Called on the main thread, except onConnected and onBytesReceived.
+ */
+public final class PlaybackMetrics {
+
+    /* Define log tag */
+    private static final String LOG_TAG = PlaybackMetrics.class.getSimpleName();
+
+
+    /* Main class variables */
+    private final Context mContext;
+    private final long mStationId;
+    private final long mStartTime;
+    private long mConnectTime = -1;
+    private long mPreparedTime = -1;
+    private long mFirstAudioTime = -1;
+    private long mStallStartTime = -1;
+    private long mStallDuration = 0;
+    private int mRebufferCount = 0;
+    private int mReconnectCount = 0;
+    private final AtomicLong mBytesReceived = new AtomicLong(0);
+    private boolean mFinished = false;
+
+
+    /* Constructor - starts the session clock */
+    public PlaybackMetrics(Context context, long stationId) {
+        mContext = context.getApplicationContext();
+        mStationId = stationId;
+        mStartTime = SystemClock.elapsedRealtime();
+    }
+
+
+    /* Records that the stream answered - runs on an upstream thread */
+    public synchronized void onConnected() {
+        if (mConnectTime < 0) {
+            mConnectTime = SystemClock.elapsedRealtime() - mStartTime;
+        }
+    }
+
+
+    /* Records that the player is prepared - ends a stall caused by a reconnect */
+    public synchronized void onPrepared() {
+        if (mPreparedTime < 0) {
+            mPreparedTime = SystemClock.elapsedRealtime() - mStartTime;
+        }
+        endStall();
+    }
+
+
+    /* Records that the playback position advanced for the first time */
+    public synchronized void onFirstAudio() {
+        if (mFirstAudioTime < 0) {
+            mFirstAudioTime = SystemClock.elapsedRealtime() - mStartTime;
+        }
+    }
+
+
+    /* Checks if first audio has been recorded */
+    public synchronized boolean hasFirstAudio() {
+        return mFirstAudioTime >= 0;
+    }
+
+
+    /* Records start of buffering */
+    public synchronized void onBufferingStarted() {
+        startStall();
+    }
+
+
+    /* Records end of buffering */
+    public synchronized void onBufferingEnded() {
+        endStall();
+    }
+
+
+    /* Records a reconnect attempt */
+    public synchronized void onReconnect() {
+        mReconnectCount++;
+        startStall();
+    }
+
+
+    /* Counts received bytes - runs on an upstream thread */
+    public void onBytesReceived(int byteCount) {
+        mBytesReceived.addAndGet(byteCount);
+    }
+
+
+    /* Ends session and adds its values to the histograms of the station - stores in background */
+    public synchronized void finish() {
+        if (mFinished) {
+            return;
+        }
+        mFinished = true;
+        endStall();
+
+        final Map<String, Long> samples = new HashMap<>();
+        if (mConnectTime >= 0) {
+            samples.put(QoeHistogram.METRIC_CONNECT, mConnectTime);
+        }
+        if (mPreparedTime >= 0) {
+            samples.put(QoeHistogram.METRIC_PREPARED, mPreparedTime);
+        }
+        if (mFirstAudioTime >= 0) {
+            samples.put(QoeHistogram.METRIC_FIRST_AUDIO, mFirstAudioTime);
+            samples.put(QoeHistogram.METRIC_REBUFFERS, (long) mRebufferCount);
+            samples.put(QoeHistogram.METRIC_STALL, mStallDuration);
+            samples.put(QoeHistogram.METRIC_RECEIVED, mBytesReceived.get() / 1024);
+        }
+        samples.put(QoeHistogram.METRIC_RECONNECTS, (long) mReconnectCount);
+        LogHelper.v(LOG_TAG, "Play session of station " + mStationId + ": " + samples);
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                new StationsDbHelper(mContext).AddQoeSamples(mStationId, samples);
+            }
+        });
+    }
+
+
+    /* Starts counting stall time - only once audio has been heard */
+    private void startStall() {
+        if (mFirstAudioTime < 0 || mStallStartTime >= 0) {
+            return;
+        }
+        mStallStartTime = SystemClock.elapsedRealtime();
+        mRebufferCount++;
+    }
+
+
+    /* Stops counting stall time */
+    private void endStall() {
+        if (mStallStartTime < 0) {
+            return;
+        }
+        mStallDuration += SystemClock.elapsedRealtime() - mStallStartTime;
+        mStallStartTime = -1;
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * PlaybackScheduler.java
+ * Implements the PlaybackScheduler class
+ * The PlaybackScheduler sets the alarm for the next scheduled station start
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.AsyncTask;
+import android.os.Build;
+
+import org.y20k.transistor.PlayerService;
+import org.y20k.transistor.core.PlaybackSchedule;
+import org.y20k.transistor.sqlcore.StationsDbHelper;
+
+
+/**
+ * PlaybackScheduler class
+ * Only the earliest start is armed - when its alarm fires, PlayerService arms the one after it. The alarm
+ * fires PREBUFFER_LEAD before the start, so that the stream is resolved, connected and buffered in a paused
+ * standby player by the time audio has to go live. Alarms do not survive a reboot, see BootReceiver.
+ */
+public final class PlaybackScheduler {
+
+    /* Define log tag */
+    private static final String LOG_TAG = PlaybackScheduler.class.getSimpleName();
+
+
+    /* Main class variables */
+    public static final long PREBUFFER_LEAD = 45000; // ms - resolve, connect and buffer before the start
+
+
+    /* Arms alarm for the next start - reads schedules in background */
+    public static void schedule(Context context) {
+        final Context appContext = context.getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                scheduleAfter(appContext, System.currentTimeMillis());
+            }
+        });
+    }
+
+
+    /* Arms alarm for the first start at or after notBefore (ms since epoch) - cancels alarm if there is none. Must not run on main thread */
+    public static void scheduleAfter(Context context, long notBefore) {
+        PlaybackSchedule nextSchedule = null;
+        long nextStartTime = Long.MAX_VALUE;
+        for (PlaybackSchedule schedule : new StationsDbHelper(context).GetSchedules(-1)) {
+            long startTime = schedule.getNextStartTime(notBefore);
+            if (startTime >= 0 && startTime < nextStartTime) {
+                nextStartTime = startTime;
+                nextSchedule = schedule;
+            }
+        }
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (nextSchedule == null) {
+            alarmManager.cancel(getAlarmIntent(context, -1, 0));
+            LogHelper.v(LOG_TAG, "No scheduled start left.");
+            return;
+        }
+
+        // a start less than PREBUFFER_LEAD away is prepared right away
+        PendingIntent alarmIntent = getAlarmIntent(context, nextSchedule.STATION_ID, nextStartTime);
+        long alarmTime = nextStartTime - PREBUFFER_LEAD;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, alarmTime, alarmIntent);
+        } else {
+            alarmManager.setExact(AlarmManager.RTC_WAKEUP, alarmTime, alarmIntent);
+        }
+        LogHelper.v(LOG_TAG, "Next scheduled start: station " + nextSchedule.STATION_ID + " in " + (nextStartTime - System.currentTimeMillis()) + " ms");
+    }
+
+
+    /* Returns intent sent by the alarm - there is only one, so extras are replaced */
+    private static PendingIntent getAlarmIntent(Context context, long stationId, long startTime) {
+        Intent intent = new Intent(context, PlayerService.class);
+        intent.setAction(TransistorKeys.ACTION_PREPARE_SCHEDULED);
+        intent.putExtra(TransistorKeys.EXTRA_STATION_DB_ID, stationId);
+        intent.putExtra(TransistorKeys.EXTRA_SCHEDULED_TIME, startTime);
+        return PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+}
@@ -0,0 +1,419 @@
+/**
+ * PlaylistParser.java
+ * Implements the PlaylistParser class
+ * A PlaylistParser reads the entries of a M3U, PLS, XSPF or ASX playlist from a stream
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * PlaylistParser class
+ * Entries are handed to a listener as soon as they are complete - the playlist is never held in memory as a whole,
+ * so the size of a playlist does not matter. Relative locations are resolved against the URL of the playlist.
+ */
+public final class PlaylistParser {
+
+    /* Define log tag */
+    private static final String LOG_TAG = PlaylistParser.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final int PREVIEW_LENGTH = 4096;
+    private static final int PREVIEW_LINES = 5;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Pattern EXTINF_ATTRIBUTE_PATTERN = Pattern.compile("([\\w-]+)=\"([^\"]*)\"");
+    private static final Pattern PLS_KEY_PATTERN = Pattern.compile("(file|title|length)(\\d+)", Pattern.CASE_INSENSITIVE);
+    private final BufferedInputStream mInputStream;
+    private final String mBaseUrl;
+    private String mFormat;
+    private String mPreview;
+
+
+    /* Interface for receiving playlist entries */
+    public interface Listener {
+        /* Called for every entry - return false to stop parsing */
+        boolean onEntry(Entry entry);
+    }
+
+
+    /* Constructor - format is one of the StreamFormatSniffer keys, base URL may be null */
+    public PlaylistParser(InputStream inputStream, String format, String baseUrl) {
+        mInputStream = new BufferedInputStream(inputStream, PREVIEW_LENGTH);
+        mFormat = format;
+        mBaseUrl = baseUrl;
+    }
+
+
+    /* Parses playlist - returns number of entries */
+    public int parse(Listener listener) throws IOException {
+        readPreview();
+        LogHelper.v(LOG_TAG, "Parsing playlist of format " + mFormat);
+        if (StreamFormatSniffer.FORMAT_PLS.equals(mFormat)) {
+            return parsePls(listener);
+        } else if (StreamFormatSniffer.FORMAT_XSPF.equals(mFormat) || StreamFormatSniffer.FORMAT_ASX.equals(mFormat)) {
+            try {
+                return parseXml(listener);
+            } catch (XmlPullParserException e) {
+                throw new IOException("Malformed playlist: " + e.getMessage());
+            }
+        } else {
+            // M3U is also the best guess for unknown text
+            return parseM3u(listener);
+        }
+    }
+
+
+    /* Getter for format of playlist - detected from content if it was not given */
+    public String getFormat() {
+        return mFormat;
+    }
+
+
+    /* Getter for the first lines of the playlist - for error messages */
+    public String getPreview() {
+        return mPreview;
+    }
+
+
+    /* Reads first bytes without consuming them - detects format if needed */
+    private void readPreview() throws IOException {
+        mInputStream.mark(PREVIEW_LENGTH);
+        byte[] bytes = new byte[PREVIEW_LENGTH];
+        int length = 0;
+        int read;
+        while (length < bytes.length && (read = mInputStream.read(bytes, length, bytes.length - length)) != -1) {
+            length += read;
+        }
+        mInputStream.reset();
+
+        if (mFormat == null || !StreamFormatSniffer.isPlaylist(mFormat)) {
+            mFormat = StreamFormatSniffer.detect(bytes, length, null);
+        }
+
+        StringBuilder preview = new StringBuilder();
+        String[] lines = new String(bytes, 0, length, UTF_8).split("\n", PREVIEW_LINES + 1);
+        for (int i = 0; i < Math.min(lines.length, PREVIEW_LINES); i++) {
+            preview.append(lines[i].trim()).append("\n");
+        }
+        mPreview = preview.toString();
+    }
+
+
+    /* Parses M3U and extended M3U - #EXTINF:<length> <attributes>,<title> */
+    private int parseM3u(Listener listener) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(mInputStream, UTF_8));
+        int count = 0;
+        String title = null;
+        int length = -1;
+        Map<String, String> attributes = Collections.emptyMap();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("#EXTINF:")) {
+                String info = line.substring(8);
+                int comma = findTitleSeparator(info);
+                title = (comma >= 0) ? info.substring(comma + 1).trim() : null;
+                String duration = (comma >= 0) ? info.substring(0, comma) : info;
+                attributes = parseExtinfAttributes(duration);
+                length = parseLength(duration.trim().split("\\s+", 2)[0]);
+            } else if (line.startsWith("#")) {
+                // other directives and comments
+                continue;
+            } else {
+                String uri = resolve(line);
+                if (uri != null) {
+                    count++;
+                    if (!listener.onEntry(new Entry(uri, title, length, attributes))) {
+                        return count;
+                    }
+                }
+                title = null;
+                length = -1;
+                attributes = Collections.emptyMap();
+            }
+        }
+        return count;
+    }
+
+
+    /* Parses PLS - entries are expected to be grouped by their number, as all common writers do */
+    private int parsePls(Listener listener) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(mInputStream, UTF_8));
+        int count = 0;
+        String currentNumber = null;
+        String uri = null;
+        String title = null;
+        int length = -1;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int separator = line.indexOf('=');
+            if (separator < 0) {
+                continue;
+            }
+            Matcher matcher = PLS_KEY_PATTERN.matcher(line.substring(0, separator).trim());
+            if (!matcher.matches()) {
+                continue;
+            }
+            String number = matcher.group(2);
+            if (!number.equals(currentNumber)) {
+                // next entry begins - hand over the previous one
+                if (uri != null) {
+                    count++;
+                    if (!listener.onEntry(new Entry(uri, title, length, Collections.<String, String>emptyMap()))) {
+                        return count;
+                    }
+                }
+                currentNumber = number;
+                uri = null;
+                title = null;
+                length = -1;
+            }
+            String key = matcher.group(1).toLowerCase(Locale.ENGLISH);
+            String value = line.substring(separator + 1).trim();
+            if (key.equals("file")) {
+                uri = resolve(value);
+            } else if (key.equals("title")) {
+                title = value;
+            } else {
+                length = parseLength(value);
+            }
+        }
+        if (uri != null) {
+            count++;
+            listener.onEntry(new Entry(uri, title, length, Collections.<String, String>emptyMap()));
+        }
+        return count;
+    }
+
+
+    /* Parses XSPF (track, location, title, duration in ms) and ASX (entry, ref href, title, duration hh:mm:ss) */
+    private int parseXml(Listener listener) throws XmlPullParserException, IOException {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        try {
+            // ASX files are often not well-formed
+            parser.setFeature("http://xmlpull.org/v1/doc/features.html#relaxed", true);
+        } catch (XmlPullParserException e) {
+            LogHelper.v(LOG_TAG, "Relaxed XML parsing not supported.");
+        }
+        parser.setInput(mInputStream, null);
+
+        boolean asx = StreamFormatSniffer.FORMAT_ASX.equals(mFormat);
+        String entryTag = asx ? "entry" : "track";
+        int count = 0;
+        boolean inEntry = false;
+        String title = null;
+        int length = -1;
+        String image = null;
+        String location = null;
+        List<String> refs = new ArrayList<>();
+
+        for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+            if (event == XmlPullParser.START_TAG) {
+                String tag = parser.getName().toLowerCase(Locale.ENGLISH);
+                if (tag.equals(entryTag)) {
+                    inEntry = true;
+                    title = null;
+                    length = -1;
+                    image = null;
+                    location = null;
+                    refs.clear();
+                } else if (inEntry && tag.equals("title")) {
+                    title = parser.nextText().trim();
+                } else if (inEntry && !asx && tag.equals("location") && location == null) {
+                    location = resolve(parser.nextText().trim());
+                } else if (inEntry && !asx && tag.equals("duration")) {
+                    int milliseconds = parseLength(parser.nextText().trim());
+                    length = (milliseconds > 0) ? milliseconds / 1000 : -1;
+                } else if (inEntry && !asx && tag.equals("image")) {
+                    image = resolve(parser.nextText().trim());
+                } else if (inEntry && asx && tag.equals("ref")) {
+                    String ref = resolve(getAttributeIgnoreCase(parser, "href"));
+                    if (ref != null) {
+                        refs.add(ref);
+                    }
+                } else if (inEntry && asx && tag.equals("duration")) {
+                    length = parseClockTime(getAttributeIgnoreCase(parser, "value"));
+                }
+            } else if (event == XmlPullParser.END_TAG && parser.getName().toLowerCase(Locale.ENGLISH).equals(entryTag)) {
+                inEntry = false;
+                Map<String, String> attributes = (image != null) ? Collections.singletonMap("image", image) : Collections.<String, String>emptyMap();
+                if (location != null) {
+                    refs.add(location);
+                }
+                // several refs of one ASX entry are alternatives of the same stream
+                for (String uri : refs) {
+                    count++;
+                    if (!listener.onEntry(new Entry(uri, title, length, attributes))) {
+                        return count;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+
+    /* Finds the comma that separates the title - commas inside quoted attribute values do not count */
+    private static int findTitleSeparator(String info) {
+        boolean quoted = false;
+        for (int i = 0; i < info.length(); i++) {
+            char c = info.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /* Parses key="value" attributes of extended M3U, e.g. tvg-logo or group-title */
+    private static Map<String, String> parseExtinfAttributes(String info) {
+        Matcher matcher = EXTINF_ATTRIBUTE_PATTERN.matcher(info);
+        Map<String, String> attributes = null;
+        while (matcher.find()) {
+            if (attributes == null) {
+                attributes = new HashMap<>();
+            }
+            attributes.put(matcher.group(1).toLowerCase(Locale.ENGLISH), matcher.group(2));
+        }
+        return (attributes != null) ? attributes : Collections.<String, String>emptyMap();
+    }
+
+
+    /* Parses length in seconds - returns -1 if unknown or infinite */
+    private static int parseLength(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            int length = (int) Double.parseDouble(value.trim());
+            return (length > 0) ? length : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+
+    /* Parses ASX clock time like 00:03:25.5 - returns seconds, or -1 if unknown */
+    private static int parseClockTime(String value) {
+        if (value == null) {
+            return -1;
+        }
+        double seconds = 0;
+        try {
+            for (String part : value.trim().split(":")) {
+                seconds = seconds * 60 + Double.parseDouble(part.trim());
+            }
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return (seconds >= 1) ? (int) seconds : -1;
+    }
+
+
+    /* Reads attribute regardless of case - ASX writers do not agree on it */
+    private static String getAttributeIgnoreCase(XmlPullParser parser, String name) {
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            if (name.equalsIgnoreCase(parser.getAttributeName(i))) {
+                return parser.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+
+    /* Resolves location against URL of playlist - returns null for anything but http(s) and mms */
+    private String resolve(String location) {
+        if (location == null || location.isEmpty()) {
+            return null;
+        }
+        try {
+            URI uri = new URI(location.replace(" ", "%20"));
+            if (!uri.isAbsolute() && mBaseUrl != null) {
+                uri = new URI(mBaseUrl).resolve(uri);
+            }
+            String scheme = uri.getScheme();
+            if (scheme == null) {
+                return null;
+            }
+            scheme = scheme.toLowerCase(Locale.ENGLISH);
+            if (scheme.equals("mms")) {
+                // Windows Media streams are served over HTTP as well
+                return "http" + uri.toString().substring(3);
+            }
+            return (scheme.equals("http") || scheme.equals("https")) ? uri.toString() : null;
+        } catch (URISyntaxException e) {
+            LogHelper.v(LOG_TAG, "Skipping malformed location: " + location);
+            return null;
+        }
+    }
+
+
+    /**
+     * Inner class: One entry of a playlist
+     */
+    public static final class Entry {
+
+        /* Absolute location of the stream or file */
+        public final String uri;
+        /* Title, null if none given */
+        public final String title;
+        /* Length in seconds, -1 for streams and unknown lengths */
+        public final int length;
+        /* Additional attributes, e.g. tvg-logo and group-title of extended M3U */
+        public final Map<String, String> attributes;
+
+        private Entry(String uri, String title, int length, Map<String, String> attributes) {
+            this.uri = uri;
+            this.title = (title != null && !title.isEmpty()) ? title : null;
+            this.length = length;
+            this.attributes = attributes;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry: " + uri + " (" + title + ", " + length + " s)";
+        }
+    }
+    /**
+     * End of inner class
+     */
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Preconnector.java
+ * Implements the Preconnector class
+ * A Preconnector warms up the network path to a station before the user presses play
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+
+import org.y20k.transistor.TransistorCustomApplication;
+import org.y20k.transistor.core.Station;
+import org.y20k.transistor.core.StreamProfile;
+import org.y20k.transistor.sqlcore.StationsDbHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+
+/**
+ * Preconnector class
+ * Resolves the host, stores the stream profile and leaves an idle connection in the shared connection pool -
+ * without downloading audio. Playback started shortly afterwards skips DNS, TCP/TLS handshake and probing.
+ */
+public final class Preconnector {
+
+    /* Define log tag */
+    private static final String LOG_TAG = Preconnector.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final long MIN_INTERVAL = 60 * 1000; // pooled connections stay idle for five minutes
+    private static final Map<String, Long> sLastPreconnects = new HashMap<>();
+
+
+    /* Warms up connection to station in background */
+    public static void preconnect(Context context, Station station) {
+        if (station == null || station.getStreamUri() == null) {
+            return;
+        }
+        final Context applicationContext = context.getApplicationContext();
+        // warm up the variant that will be played on this network
+        final String streamUri = DataSaver.selectVariant(applicationContext, station, 0);
+        if (!isDue(streamUri)) {
+            return;
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                warmUp(applicationContext, streamUri);
+            }
+        });
+    }
+
+
+    /* Warms up connection to station with given ID in background - e.g. last played station at app start */
+    public static void preconnect(Context context, final long stationId) {
+        if (stationId == -1) {
+            return;
+        }
+        final Context applicationContext = context.getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<Station> stations = new ArrayList<>();
+                StationsDbHelper dbHelper = new StationsDbHelper(applicationContext);
+                dbHelper.FillListOfAllStations(stations);
+                for (Station station : stations) {
+                    if (station._ID == stationId && station.getStreamUri() != null) {
+                        String streamUri = DataSaver.selectVariant(applicationContext, station, 0);
+                        if (isDue(streamUri)) {
+                            warmUp(applicationContext, streamUri);
+                        }
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+
+    /* Probes stream: follows redirects, reads Shoutcast headers and sniffs the format - returns null on failure */
+    public static StreamProfile probeStream(String streamUri) {
+        try {
+            StreamFormatSniffer.Result sniffResult = StreamFormatSniffer.sniff(streamUri, true);
+            // first bytes beat the header - Shoutcast servers often send a wrong content type
+            String contentType = StreamFormatSniffer.isStream(sniffResult.getFormat())
+                    ? sniffResult.getFormat() : sniffResult.header("Content-Type");
+            String finalUrl = sniffResult.getFinalUrl();
+            int icyMetaint = IcyHeaders.parseInt(sniffResult.header("icy-metaint"));
+            int icyBr = IcyHeaders.parseInt(sniffResult.header("icy-br"));
+            // only the first bytes are needed - do not keep downloading the stream
+            sniffResult.close();
+            LogHelper.v(LOG_TAG, "MIME type of stream: " + contentType + " (declared: " + sniffResult.getDeclaredType() + ")");
+            return new StreamProfile(streamUri, finalUrl, contentType != null ? contentType : "", icyMetaint, icyBr);
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+
+    /* Checks if stream has not been warmed up recently - and marks it as warmed up */
+    private static boolean isDue(String streamUri) {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (sLastPreconnects) {
+            Long last = sLastPreconnects.get(streamUri);
+            if (last != null && now - last < MIN_INTERVAL) {
+                return false;
+            }
+            sLastPreconnects.put(streamUri, now);
+            return true;
+        }
+    }
+
+
+    /* Stores stream profile and opens a reusable connection to the final stream URL - runs in background */
+    private static void warmUp(Context context, String streamUri) {
+        // probing costs a full request - only needed if no profile is stored yet
+        StationsDbHelper dbHelper = new StationsDbHelper(context);
+        StreamProfile profile = dbHelper.GetStreamProfile(streamUri);
+        if (profile == null) {
+            profile = probeStream(streamUri);
+            if (profile == null) {
+                return;
+            }
+            dbHelper.SaveStreamProfile(profile);
+        }
+
+        // a closed streaming response cannot be pooled - a HEAD request has no body, so its connection stays open
+        try {
+            Request request = new Request.Builder()
+                    .url(profile.FINAL_URL)
+                    .head()
+                    .build();
+            Response response = TransistorCustomApplication.getHttpClient().newCall(request).execute();
+            response.close();
+            LogHelper.v(LOG_TAG, "Preconnected to " + profile.FINAL_URL + " (" + response.code() + ")");
+        } catch (IOException | IllegalArgumentException e) {
+            // old Shoutcast servers do not speak HTTP for HEAD - DNS result is cached anyway
+            LogHelper.v(LOG_TAG, "Unable to preconnect to " + profile.FINAL_URL + ": " + e);
+        }
+    }
+
+}
@@ -0,0 +1,290 @@
+/**
+ * ReconnectManager.java
+ * Implements the ReconnectManager class
+ * A ReconnectManager decides when a broken or stalled stream gets reconnected
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.Random;
+
+
+/**
+ * ReconnectManager class
+ * Reconnects with exponential backoff and jitter, watches the byte flow of the stream for stalls,
+ * and waits for a network instead of retrying while the device is offline.
+ * All callbacks to the Listener run on the main thread.
+ */
+public final class ReconnectManager {
+
+    /* Interface for the component that owns the stream */
+    public interface Listener {
+        /* Called when the stream should be set up again */
+        void onReconnect();
+        /* Called when the watchdog found the stream stalled - before the reconnect is scheduled */
+        void onStalled();
+        /* Called when all attempts failed */
+        void onGiveUp();
+    }
+
+
+    /* Define log tag */
+    private static final String LOG_TAG = ReconnectManager.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final long BASE_DELAY = 500; // ms
+    private static final long MAX_DELAY = 60000; // ms
+    private static final int MAX_ATTEMPTS = 12;
+    private static final long STALL_TIMEOUT = 8000; // ms without a byte, or buffering that long
+    private static final long WATCHDOG_INTERVAL = 2000; // ms
+    private final Context mContext;
+    private final Listener mListener;
+    private final Handler mHandler;
+    private final Random mRandom = new Random();
+    private int mAttempt = 0;
+    private boolean mActive = false;
+    private boolean mWaitingForNetwork = false;
+    private boolean mReconnectPending = false;
+    private int mNetworkType = -1;
+    private BroadcastReceiver mConnectivityReceiver = null;
+    private volatile boolean mWatching = false;
+    private volatile long mLastProgress = 0;
+    private volatile boolean mByteFlowReported = false;
+    private long mBufferingStart = 0;
+
+
+    /* Constructor */
+    public ReconnectManager(Context context, Listener listener) {
+        mContext = context.getApplicationContext();
+        mListener = listener;
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+
+    /* Starts supervising a playback session */
+    public void start() {
+        mActive = true;
+        mAttempt = 0;
+        mWaitingForNetwork = false;
+        mReconnectPending = false;
+        stopWatchdog();
+        mHandler.removeCallbacks(mReconnectRunnable);
+        mNetworkType = getActiveNetworkType();
+        registerConnectivityReceiver();
+    }
+
+
+    /* Ends supervision - cancels pending reconnects */
+    public void stop() {
+        mActive = false;
+        mWaitingForNetwork = false;
+        mReconnectPending = false;
+        stopWatchdog();
+        mHandler.removeCallbacks(mReconnectRunnable);
+        unregisterConnectivityReceiver();
+    }
+
+
+    /* Stream is playing - resets backoff and arms stall watchdog */
+    public void onPlaybackStarted() {
+        mAttempt = 0;
+        mBufferingStart = 0;
+        mLastProgress = SystemClock.elapsedRealtime();
+        mWatching = true;
+        mHandler.removeCallbacks(mWatchdogRunnable);
+        mHandler.postDelayed(mWatchdogRunnable, WATCHDOG_INTERVAL);
+    }
+
+
+    /* Reports stream data - may be called from any thread, e.g. the proxy's upstream reader */
+    public void onBytesReceived(int count) {
+        if (count > 0) {
+            mByteFlowReported = true;
+            mLastProgress = SystemClock.elapsedRealtime();
+        }
+    }
+
+
+    /* Player ran out of data */
+    public void onBufferingStarted() {
+        mBufferingStart = SystemClock.elapsedRealtime();
+    }
+
+
+    /* Player has data again */
+    public void onBufferingEnded() {
+        mBufferingStart = 0;
+        mLastProgress = SystemClock.elapsedRealtime();
+    }
+
+
+    /* Stream failed - schedules a reconnect with backoff, returns false if attempts are exhausted */
+    public boolean onStreamFailed() {
+        if (!mActive) {
+            return false;
+        }
+        stopWatchdog();
+        if (mReconnectPending) {
+            return true;
+        }
+        if (mAttempt >= MAX_ATTEMPTS) {
+            LogHelper.e(LOG_TAG, "Giving up after " + mAttempt + " reconnect attempts.");
+            return false;
+        }
+        mReconnectPending = true;
+
+        // no network - wait for connectivity change instead of burning attempts
+        if (!isNetworkConnected()) {
+            LogHelper.w(LOG_TAG, "Network down. Waiting for connectivity to reconnect.");
+            mWaitingForNetwork = true;
+            return true;
+        }
+
+        long delay = getBackoffDelay(mAttempt);
+        mAttempt++;
+        LogHelper.w(LOG_TAG, "Reconnect attempt #" + mAttempt + " in " + delay + " ms.");
+        mHandler.postDelayed(mReconnectRunnable, delay);
+        return true;
+    }
+
+
+    /* Calculates delay: exponential growth, randomized between half and full value to spread out retries */
+    private long getBackoffDelay(int attempt) {
+        long delay = Math.min(MAX_DELAY, BASE_DELAY << Math.min(attempt, 16));
+        long half = delay / 2;
+        return half + (long) (mRandom.nextDouble() * half);
+    }
+
+
+    /* Stops stall watchdog */
+    private void stopWatchdog() {
+        mWatching = false;
+        mByteFlowReported = false;
+        mHandler.removeCallbacks(mWatchdogRunnable);
+    }
+
+
+    /* Runs reconnect */
+    private final Runnable mReconnectRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mReconnectPending = false;
+            mWaitingForNetwork = false;
+            if (mActive) {
+                mListener.onReconnect();
+            }
+        }
+    };
+
+
+    /* Checks for stalled stream periodically */
+    private final Runnable mWatchdogRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!mWatching || !mActive) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            boolean byteFlowStalled = mByteFlowReported && now - mLastProgress > STALL_TIMEOUT;
+            boolean bufferingStalled = mBufferingStart > 0 && now - mBufferingStart > STALL_TIMEOUT;
+            if (byteFlowStalled || bufferingStalled) {
+                LogHelper.w(LOG_TAG, "Stream stalled (" + (byteFlowStalled ? "no data" : "buffering") + "). Reconnecting.");
+                mListener.onStalled();
+                if (!onStreamFailed()) {
+                    mListener.onGiveUp();
+                }
+                return;
+            }
+            mHandler.postDelayed(this, WATCHDOG_INTERVAL);
+        }
+    };
+
+
+    /* Handles connectivity changes */
+    private void handleConnectivityChange() {
+        int networkType = getActiveNetworkType();
+        boolean connected = networkType != -1;
+        LogHelper.v(LOG_TAG, "Connectivity changed. Network type: " + networkType);
+
+        if (connected && mWaitingForNetwork) {
+            // network is back - reconnect right away
+            mHandler.removeCallbacks(mReconnectRunnable);
+            mReconnectRunnable.run();
+        } else if (connected && mWatching && mNetworkType != -1 && networkType != mNetworkType) {
+            // switched networks (e.g. Wi-Fi to mobile) - the old connection is dead, do not wait for the watchdog
+            LogHelper.w(LOG_TAG, "Network switched. Reconnecting.");
+            stopWatchdog();
+            mHandler.removeCallbacks(mReconnectRunnable);
+            mReconnectPending = false;
+            mListener.onReconnect();
+        }
+        mNetworkType = networkType;
+    }
+
+
+    /* Returns type of active network, or -1 if not connected */
+    private int getActiveNetworkType() {
+        ConnectivityManager cm = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = cm.getActiveNetworkInfo();
+        if (networkInfo != null && networkInfo.isConnected()) {
+            return networkInfo.getType();
+        }
+        return -1;
+    }
+
+
+    /* Checks if device is connected */
+    private boolean isNetworkConnected() {
+        return getActiveNetworkType() != -1;
+    }
+
+
+    /* Registers receiver for connectivity changes */
+    private void registerConnectivityReceiver() {
+        if (mConnectivityReceiver != null) {
+            return;
+        }
+        mConnectivityReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (mActive) {
+                    handleConnectivityChange();
+                }
+            }
+        };
+        mContext.registerReceiver(mConnectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+
+    /* Unregisters receiver for connectivity changes */
+    private void unregisterConnectivityReceiver() {
+        if (mConnectivityReceiver != null) {
+            try {
+                mContext.unregisterReceiver(mConnectivityReceiver);
+            } catch (IllegalArgumentException e) {
+                LogHelper.e(LOG_TAG, "Unable to unregister connectivity receiver: " + e);
+            }
+            mConnectivityReceiver = null;
+        }
+    }
+
+}
@@ -14,11 +14,13 @@
 
 package org.y20k.transistor.helpers;
 
+import android.app.AlarmManager;
+import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.os.CountDownTimer;
+import android.os.Build;
 import android.os.IBinder;
 import android.preference.PreferenceManager;
 import android.support.annotation.Nullable;
@@ -29,6 +31,9 @@ import org.y20k.transistor.PlayerService;
 
 /**
  * SleepTimerService class
+ * The timer is a deadline in the preferences plus one exact alarm - nothing runs while it counts down.
+ * The user interface computes the remaining time from the deadline. The service only lives for the
+ * duration of a command.
  */
 public class SleepTimerService  extends Service {
 
@@ -36,35 +41,17 @@ public class SleepTimerService  extends Service {
     private static final String LOG_TAG = SleepTimerService.class.getSimpleName();
 
 
-    /* Main class variables */
-    private CountDownTimer mSleepTimer;
-    private long mTimerRemaining;
-
-
     /* Constructor (default) */
     public SleepTimerService() {
     }
 
 
-    @Override
-    public void onCreate() {
-        super.onCreate();
-    }
-
-
-    @Override
-    public void onDestroy() {
-        super.onDestroy();
-    }
-
-
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
 
         // checking for empty intent
-        if (intent == null) {
+        if (intent == null || intent.getAction() == null) {
             LogHelper.v(LOG_TAG, "Null-Intent received. Stopping self.");
-            stopSelf();
         }
 
         // ACTION TIMER START
@@ -72,24 +59,15 @@ public class SleepTimerService  extends Service {
             LogHelper.v(LOG_TAG, "Service received command: START");
 
             if (intent.hasExtra(TransistorKeys.EXTRA_TIMER_DURATION)) {
-                // get duration from intent
+                // get duration from intent - a running timer is extended
                 long duration = intent.getLongExtra(TransistorKeys.EXTRA_TIMER_DURATION, 0);
+                long now = System.currentTimeMillis();
+                long deadline = Math.max(now, getDeadline(this)) + duration;
 
-                // set remaining time
-                if (mTimerRemaining > 0) {
-                    mTimerRemaining = mTimerRemaining + duration;
-                } else {
-                    mTimerRemaining = duration;
-                }
-
-                // set sleep timer
-                setSleepTimer(mTimerRemaining);
-
-                // start countdown
-                mSleepTimer.start();
-
-                // save timer state to preferences
-                saveTimerState(true);
+                // set alarm and save timer state to preferences
+                setAlarm(deadline);
+                saveTimerState(deadline);
+                LogHelper.v(LOG_TAG, "Sleep timer set. Remaining time: " + (deadline - now));
             }
 
         }
@@ -98,21 +76,36 @@ public class SleepTimerService  extends Service {
         else if (intent.getAction().equals(TransistorKeys.ACTION_TIMER_STOP)) {
             LogHelper.v(LOG_TAG, "Service received command: STOP");
 
-            // set remaining time
-            mTimerRemaining = 0;
+            // cancel alarm and save timer state to preferences
+            AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+            alarmManager.cancel(getAlarmIntent());
+            saveTimerState(0);
 
-            // cancel timer
-            if (mSleepTimer != null) {
-                mSleepTimer.cancel();
-            }
+        }
+
+        // ACTION TIMER EXPIRED - sent by the alarm
+        else if (intent.getAction().equals(TransistorKeys.ACTION_TIMER_EXPIRED)) {
+            saveTimerState(0);
 
-            // save timer state to preferences
-            saveTimerState(false);
+            // stop playback - after a short fade, unless disabled
+            SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(getApplication());
+            Intent stopIntent = new Intent(getApplication(), PlayerService.class);
+            stopIntent.setAction(TransistorKeys.ACTION_STOP);
+            stopIntent.putExtra(TransistorKeys.EXTRA_FADE_OUT, settings.getBoolean(TransistorKeys.PREF_TIMER_FADE_OUT, true));
+            startService(stopIntent);
 
+            // send local broadcast (needed by MainActivityFragment)
+            Intent i = new Intent();
+            i.setAction(TransistorKeys.ACTION_TIMER_RUNNING);
+            i.putExtra(TransistorKeys.EXTRA_TIMER_REMAINING, 0L);
+            LocalBroadcastManager.getInstance(getApplication()).sendBroadcast(i);
+
+            LogHelper.v(LOG_TAG, "Sleep timer finished. Sweet dreams, dear user.");
         }
 
-        // START_STICKY is used for services that are explicitly started and stopped as needed
-        return START_STICKY;
+        // nothing left to do until the alarm fires
+        stopSelf(startId);
+        return START_NOT_STICKY;
 
     }
 
@@ -147,61 +140,42 @@ public class SleepTimerService  extends Service {
     }
 
 
-    /* Set sleep timer */
-    private void setSleepTimer(long duration) {
-
-        if (mTimerRemaining > 0 && mSleepTimer != null) {
-            mSleepTimer.cancel();
-            mSleepTimer = null;
-        }
-
-        // prepare timer
-        mSleepTimer = new CountDownTimer(duration, 1000) {
-            @Override
-            public void onTick(long millisUntilFinished) {
-                mTimerRemaining = millisUntilFinished;
-
-                // send local broadcast (needed by PlayerActivityFragment)
-                Intent i = new Intent();
-                i.setAction(TransistorKeys.ACTION_TIMER_RUNNING);
-                i.putExtra(TransistorKeys.EXTRA_TIMER_REMAINING, mTimerRemaining);
-                LocalBroadcastManager.getInstance(getApplication()).sendBroadcast(i);
-
-                LogHelper.v(LOG_TAG, "Sleep timer. Remaining time: " + mTimerRemaining);
-            }
-
-            @Override
-            public void onFinish() {
-                mTimerRemaining = 0;
+    /* Returns time when running timer expires (ms since epoch) - 0 if no timer is running */
+    public static long getDeadline(Context context) {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
+        long deadline = settings.getLong(TransistorKeys.PREF_TIMER_DEADLINE, 0);
+        return (deadline > System.currentTimeMillis()) ? deadline : 0;
+    }
 
-                // stop playback
-                Intent intent = new Intent(getApplication(), PlayerService.class);
-                intent.setAction(TransistorKeys.ACTION_STOP);
-                startService(intent);
 
-                // send local broadcast (needed by PlayerActivityFragment)
-                Intent i = new Intent();
-                i.setAction(TransistorKeys.ACTION_TIMER_RUNNING);
-                i.putExtra(TransistorKeys.EXTRA_TIMER_REMAINING, mTimerRemaining);
-                LocalBroadcastManager.getInstance(getApplication()).sendBroadcast(i);
+    /* Sets the single wakeup at expiry - exact, even in doze */
+    private void setAlarm(long deadline) {
+        AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        PendingIntent alarmIntent = getAlarmIntent();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, deadline, alarmIntent);
+        } else {
+            alarmManager.setExact(AlarmManager.RTC_WAKEUP, deadline, alarmIntent);
+        }
+    }
 
-                LogHelper.v(LOG_TAG, "Sleep timer finished. Sweet dreams, dear user.");
-            }
-        };
 
+    /* Returns intent sent by the alarm */
+    private PendingIntent getAlarmIntent() {
+        Intent intent = new Intent(getApplication(), SleepTimerService.class);
+        intent.setAction(TransistorKeys.ACTION_TIMER_EXPIRED);
+        return PendingIntent.getService(getApplication(), 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
     }
 
 
-    /* save state of timer to shared preferences */
-    private void saveTimerState (boolean running) {
+    /* save state of timer to shared preferences - deadline 0 means no timer */
+    private void saveTimerState (long deadline) {
         SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(getApplication());
         SharedPreferences.Editor editor = settings.edit();
-        editor.putBoolean(TransistorKeys.PREF_TIMER_RUNNING, running);
+        editor.putBoolean(TransistorKeys.PREF_TIMER_RUNNING, deadline > 0);
+        editor.putLong(TransistorKeys.PREF_TIMER_DEADLINE, deadline);
         editor.apply();
         LogHelper.v(LOG_TAG, "Saving state.");
     }
 
-
-
-
 }
@@ -0,0 +1,168 @@
+/**
+ * StarterCatalog.java
+ * Implements the StarterCatalog class
+ * The StarterCatalog loads the precompiled starter stations on first launch
+ *
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ *
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.content.Context;
+
+import org.y20k.transistor.core.Station;
+import org.y20k.transistor.sqlcore.StationBatchWriter;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * StarterCatalog class
+ * The asset is compiled from res/raw/starter_stations.xml at build time by starter_catalog.gradle - see there for
+ * the format. Loading it needs no XML parsing and no network: stations come with content type and image URLs from
+ * the catalog, already sorted the way the list shows them, and are written in one transaction together with their
+ * catalog fingerprints. An entry still the same in the remote catalog is therefore not resolved again by the sync,
+ * and a starter station the user deleted is not added back.
+ */
+public final class StarterCatalog {
+
+    /* Define log tag */
+    private static final String LOG_TAG = StarterCatalog.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final String ASSET_NAME = "starter_catalog.bin";
+    private static final int MAGIC = 0x54534331; // "TSC1"
+    private static final int VERSION = 1;
+
+    // field order of a record
+    private static final int FIELD_UNIQUE_ID = 0;
+    private static final int FIELD_TITLE = 1;
+    private static final int FIELD_SUBTITLE = 2;
+    private static final int FIELD_DESCRIPTION = 3;
+    private static final int FIELD_MARKDOWN_DESCRIPTION = 4;
+    private static final int FIELD_IMAGE = 5;
+    private static final int FIELD_SMALL_IMAGE_URL = 6;
+    private static final int FIELD_URI = 7;
+    private static final int FIELD_MIRROR_URIS = 8;
+    private static final int FIELD_VARIANT_URIS = 9;
+    private static final int FIELD_CONTENT_TYPE = 10;
+    private static final int FIELD_CATEGORY = 11;
+    private static final int FIELD_COMMA_SEPARATED_TAGS = 12;
+    private static final int FIELD_RATING = 13;
+    private static final int FIELD_COUNT = 14;
+
+
+    /* Constructor (private) */
+    private StarterCatalog() {
+    }
+
+
+    /* Reads starter stations and stores them - returns stations in list order, null if the app has no starter catalog */
+    public static ArrayList<Station> load(Context context) throws IOException {
+        ArrayList<Station> stations;
+        Map<String, String> fingerprints = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(context.getAssets().open(ASSET_NAME)))) {
+            stations = read(in, fingerprints);
+        } catch (FileNotFoundException e) {
+            LogHelper.v(LOG_TAG, "No starter catalog in this build.");
+            return null;
+        }
+        new StationBatchWriter(context).write(stations, fingerprints);
+        LogHelper.v(LOG_TAG, "Starter catalog loaded: " + stations.size() + " stations.");
+        return stations;
+    }
+
+
+    /* Reads stations from catalog - puts their catalog fingerprints by unique ID into given map */
+    private static ArrayList<Station> read(DataInputStream in, Map<String, String> fingerprints) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a starter catalog.");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported starter catalog version: " + version);
+        }
+
+        // string table
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            strings[i] = new String(bytes, "UTF-8");
+        }
+
+        // records
+        int fieldCount = in.readInt();
+        if (fieldCount < FIELD_COUNT) {
+            throw new IOException("Starter catalog lacks fields: " + fieldCount);
+        }
+        int[][] records = new int[in.readInt()][fieldCount];
+        for (int[] record : records) {
+            for (int field = 0; field < fieldCount; field++) {
+                record[field] = in.readInt();
+            }
+        }
+
+        // stations in list order
+        int stationCount = in.readInt();
+        ArrayList<Station> stations = new ArrayList<>(stationCount);
+        for (int i = 0; i < stationCount; i++) {
+            Station station = createStation(records[in.readInt()], strings);
+            // fingerprint of the entry as the catalog sync parses it - before defaults are applied
+            fingerprints.put(station.UNIQUE_ID, CatalogSyncService.getFingerprint(station));
+            if (station.SMALL_IMAGE_PATH == null || station.SMALL_IMAGE_PATH.isEmpty()) {
+                station.SMALL_IMAGE_PATH = station.IMAGE_PATH;
+            }
+            stations.add(station);
+        }
+        return stations;
+    }
+
+
+    /* Creates station from record - with the same fields as the XML import */
+    private static Station createStation(int[] record, String[] strings) {
+        Station station = new Station();
+        station.UNIQUE_ID = getString(record, FIELD_UNIQUE_ID, strings);
+        station.TITLE = getString(record, FIELD_TITLE, strings);
+        station.SUBTITLE = getString(record, FIELD_SUBTITLE, strings);
+        station.DESCRIPTION = getString(record, FIELD_DESCRIPTION, strings);
+        station.MarkdownDescription = getString(record, FIELD_MARKDOWN_DESCRIPTION, strings);
+        if (station.MarkdownDescription == null) {
+            station.MarkdownDescription = "";
+        }
+        station.IMAGE_PATH = getString(record, FIELD_IMAGE, strings);
+        station.SMALL_IMAGE_PATH = getString(record, FIELD_SMALL_IMAGE_URL, strings);
+        station.IMAGE_FILE_NAME = station.UNIQUE_ID + ".png";
+        station.SMALL_IMAGE_FILE_NAME = station.UNIQUE_ID + "_small.png";
+        station.StreamURI = getString(record, FIELD_URI, strings);
+        station.MIRROR_URIS = getString(record, FIELD_MIRROR_URIS, strings);
+        station.VARIANT_URIS = getString(record, FIELD_VARIANT_URIS, strings);
+        station.CONTENT_TYPE = getString(record, FIELD_CONTENT_TYPE, strings);
+        station.CATEGORY = getString(record, FIELD_CATEGORY, strings);
+        station.COMMA_SEPARATED_TAGS = getString(record, FIELD_COMMA_SEPARATED_TAGS, strings);
+        station.RATING = record[FIELD_RATING];
+        return station;
+    }
+
+
+    /* Returns string of given field - null if missing */
+    private static String getString(int[] record, int field, String[] strings) {
+        int index = record[field];
+        return index < 0 ? null : strings[index];
+    }
+
+}
@@ -89,6 +89,13 @@ public final class StationContextMenu extends DialogFragment {
                         dialogDelete.show();
                         return true;
 
+                    // CASE SCHEDULE
+                    case R.id.menu_schedule:
+                        // construct and run schedule dialog
+                        DialogSchedule dialogSchedule = new DialogSchedule(mActivity, mStation);
+                        dialogSchedule.show();
+                        return true;
+
                     // CASE SHORTCUT
                     case R.id.menu_shortcut: {
                         // create shortcut
@@ -0,0 +1,169 @@
+/**
+ * StationHealthProber.java
+ * Implements the StationHealthProber class
+ * A StationHealthProber checks every station of the collection for availability, latency and bitrate
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import org.y20k.transistor.TransistorCustomApplication;
+import org.y20k.transistor.core.Station;
+import org.y20k.transistor.sqlcore.StationsDbHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+
+/**
+ * StationHealthProber class
+ * Only a few KB are read per station. Results go into the station table, see StationsDbHelper.SaveStationHealth.
+ */
+public final class StationHealthProber {
+
+    /* Define log tag */
+    private static final String LOG_TAG = StationHealthProber.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final int MAX_CONCURRENT_PROBES = 4;
+    private static final int PROBE_BYTES = 8 * 1024; // enough for a dozen MP3 frames
+    private static final int PROBE_TIMEOUT = 10; // seconds
+    private static final int MAX_DURATION = 30; // minutes for all stations
+    private final Context mContext;
+
+
+    /* Constructor */
+    public StationHealthProber(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+
+    /* Probes all stations - blocks until all probes are finished */
+    public void probeAll() {
+        ArrayList<Station> stations = new ArrayList<>();
+        final StationsDbHelper dbHelper = new StationsDbHelper(mContext); // one helper - probes write concurrently
+        dbHelper.FillListOfAllStations(stations);
+        LogHelper.v(LOG_TAG, "Probing " + stations.size() + " stations.");
+
+        // shares connection pool and DNS cache with playback, but gives up on slow stations sooner
+        final OkHttpClient client = TransistorCustomApplication.getHttpClient().newBuilder()
+                .connectTimeout(PROBE_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(PROBE_TIMEOUT, TimeUnit.SECONDS)
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_PROBES);
+        for (final Station station : stations) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    probeStation(client, dbHelper, station);
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(MAX_DURATION, TimeUnit.MINUTES)) {
+                LogHelper.w(LOG_TAG, "Probing takes too long. Cancelling.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /* Probes one station and stores the result */
+    private void probeStation(OkHttpClient client, StationsDbHelper dbHelper, Station station) {
+        long start = SystemClock.elapsedRealtime();
+        int connectTime = 0;
+        int firstByteTime = 0;
+        int bitrate = 0;
+        boolean success = false;
+        Response response = null;
+        try {
+            // no Icy-MetaData header - audio frames are not interrupted by metadata blocks
+            Request request = new Request.Builder()
+                    .url(station.StreamURI)
+                    .build();
+            response = client.newCall(request).execute();
+            connectTime = (int) (SystemClock.elapsedRealtime() - start);
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP " + response.code());
+            }
+
+            // read a few KB - time of the first read is the first-byte time
+            InputStream in = response.body().byteStream();
+            byte[] data = new byte[PROBE_BYTES];
+            int length = 0;
+            while (length < data.length) {
+                int count = in.read(data, length, data.length - length);
+                if (count < 0) {
+                    break;
+                }
+                if (length == 0) {
+                    firstByteTime = (int) (SystemClock.elapsedRealtime() - start);
+                }
+                length += count;
+            }
+            success = length > 0;
+
+            // prefer bitrate of actual frames over the announced one
+            bitrate = measureBitrate(response.header("Content-Type"), data, length);
+            if (bitrate == 0) {
+                bitrate = IcyHeaders.parseInt(response.header("icy-br"));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            LogHelper.v(LOG_TAG, "Probe failed: " + station.TITLE + ": " + e);
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+
+        LogHelper.v(LOG_TAG, station.TITLE + ": " + (success ? "ok" : "failed") + ", connect " + connectTime
+                + " ms, first byte " + firstByteTime + " ms, bitrate " + bitrate + " kbit/s");
+        dbHelper.SaveStationHealth(station._ID, success, connectTime, firstByteTime, bitrate);
+    }
+
+
+    /* Calculates average bitrate of the MP3 or ADTS frames in data - returns 0 if no frames are found */
+    private static int measureBitrate(String contentType, byte[] data, int length) throws IOException {
+        int format = AudioFrameReader.getFormat(contentType);
+        if (format == AudioFrameReader.FORMAT_UNSUPPORTED) {
+            return 0;
+        }
+        AudioFrameReader reader = new AudioFrameReader(new ByteArrayInputStream(data, 0, length), format, new byte[PROBE_BYTES]);
+        long frameBytes = 0;
+        double seconds = 0;
+        while (reader.nextFrame()) {
+            frameBytes += reader.getFrameLength();
+            seconds += (double) reader.getSamplesPerFrame() / reader.getSampleRate();
+        }
+        if (seconds <= 0) {
+            return 0;
+        }
+        return (int) Math.round(frameBytes * 8 / seconds / 1000);
+    }
+
+}
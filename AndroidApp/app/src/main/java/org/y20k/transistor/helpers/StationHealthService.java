@@ -0,0 +1,108 @@
+/**
+ * StationHealthService.java
+ * Implements the StationHealthService class
+ * The StationHealthService probes the station collection in background, while the device is charging on an unmetered network
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+
+import org.y20k.transistor.PlayerService;
+
+
+/**
+ * StationHealthService class
+ * An inexact alarm wakes the service every few hours. It only probes if the device is charging, the network is
+ * unmetered, nothing is playing and the last complete run is older than a day - otherwise it waits for the next alarm.
+ */
+public class StationHealthService extends IntentService {
+
+    /* Define log tag */
+    private static final String LOG_TAG = StationHealthService.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final long CHECK_INTERVAL = 3 * AlarmManager.INTERVAL_HOUR;
+    private static final long PROBE_INTERVAL = AlarmManager.INTERVAL_DAY;
+
+
+    /* Constructor (default) */
+    public StationHealthService() {
+        super(LOG_TAG);
+    }
+
+
+    /* Sets up the repeating alarm - does nothing if it is already set */
+    public static void schedule(Context context) {
+        Intent intent = new Intent(context, StationHealthService.class);
+        if (PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_NO_CREATE) != null) {
+            return;
+        }
+        PendingIntent pendingIntent = PendingIntent.getService(context, 0, intent, 0);
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        // not a wakeup alarm - probing never wakes a sleeping device
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + CHECK_INTERVAL, CHECK_INTERVAL, pendingIntent);
+        LogHelper.v(LOG_TAG, "Station health probes scheduled.");
+    }
+
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(this);
+        long lastProbe = settings.getLong(TransistorKeys.PREF_HEALTH_LAST_PROBE, 0);
+        if (System.currentTimeMillis() - lastProbe < PROBE_INTERVAL) {
+            return;
+        }
+        if (!isCharging() || !isUnmeteredNetwork()) {
+            LogHelper.v(LOG_TAG, "Not charging or network metered. Skipping station health probes.");
+            return;
+        }
+        if (PlayerService.getStation() != null && SingletonProperties.getInstance().getIsPlayback()) {
+            // do not compete with the stream that is playing
+            LogHelper.v(LOG_TAG, "Playback running. Skipping station health probes.");
+            return;
+        }
+
+        new StationHealthProber(this).probeAll();
+
+        settings.edit().putLong(TransistorKeys.PREF_HEALTH_LAST_PROBE, System.currentTimeMillis()).apply();
+        LogHelper.v(LOG_TAG, "Station health probes finished.");
+    }
+
+
+    /* Checks if device is connected to a charger */
+    private boolean isCharging() {
+        Intent batteryStatus = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return batteryStatus != null && batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+
+    /* Checks if device is connected to a network that is not metered (e.g. Wi-Fi) */
+    private boolean isUnmeteredNetwork() {
+        ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected() && !connectivityManager.isActiveNetworkMetered();
+    }
+
+}
@@ -0,0 +1,272 @@
+/**
+ * StreamFormatSniffer.java
+ * Implements the StreamFormatSniffer class
+ * The StreamFormatSniffer classifies a stream or playlist by its first bytes instead of trusting the Content-Type header
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import org.y20k.transistor.TransistorCustomApplication;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+
+
+/**
+ * StreamFormatSniffer class
+ * One GET request answers what a location is - playlist, HLS, station list or audio stream. Shoutcast servers
+ * often send wrong or no content types, so the first bytes decide and the header is only the fallback.
+ * The response stays open: the caller continues reading where sniffing stopped.
+ */
+public final class StreamFormatSniffer {
+
+    /* Define log tag */
+    private static final String LOG_TAG = StreamFormatSniffer.class.getSimpleName();
+
+
+    /* Keys */
+    public static final String FORMAT_UNKNOWN = "unknown";
+    public static final String FORMAT_MPEG = "audio/mpeg";
+    public static final String FORMAT_AAC = "audio/aac";
+    public static final String FORMAT_OGG = "audio/ogg";
+    public static final String FORMAT_HLS = "application/vnd.apple.mpegurl";
+    public static final String FORMAT_M3U = "audio/x-mpegurl";
+    public static final String FORMAT_PLS = "audio/x-scpls";
+    public static final String FORMAT_XSPF = "application/xspf+xml";
+    public static final String FORMAT_ASX = "video/x-ms-asf";
+    public static final String FORMAT_XML = "application/xml";
+
+
+    /* Main class variables */
+    private static final int SNIFF_LENGTH = 4096;
+    private static final int FRAME_BUFFER_SIZE = 8192; // largest ADTS frame
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+    /* Opens location and classifies it - the caller has to close the result */
+    public static Result sniff(String url, boolean requestIcyMetadata) throws IOException {
+        Request.Builder requestBuilder = new Request.Builder().url(url);
+        if (requestIcyMetadata) {
+            requestBuilder.header("Icy-MetaData", "1");
+        }
+        Response response = TransistorCustomApplication.getHttpClient().newCall(requestBuilder.build()).execute();
+        if (!response.isSuccessful()) {
+            response.close();
+            throw new IOException("HTTP " + response.code() + ": " + url);
+        }
+
+        // read first bytes - a playlist usually ends before, a stream delivers them right away
+        InputStream body = response.body().byteStream();
+        byte[] bytes = new byte[SNIFF_LENGTH];
+        int length = 0;
+        try {
+            int read;
+            while (length < bytes.length && (read = body.read(bytes, length, bytes.length - length)) != -1) {
+                length += read;
+            }
+        } catch (IOException e) {
+            response.close();
+            throw e;
+        }
+
+        String declaredType = response.header("Content-Type");
+        String format = detect(bytes, length, declaredType);
+        LogHelper.v(LOG_TAG, "Format of " + url + " is " + format + " (declared: " + declaredType + ")");
+        return new Result(response, format, declaredType, bytes, length);
+    }
+
+
+    /* Classifies first bytes of a response - falls back to declared content type if bytes are inconclusive */
+    public static String detect(byte[] bytes, int length, String declaredType) {
+        if (length >= 4 && bytes[0] == 'O' && bytes[1] == 'g' && bytes[2] == 'g' && bytes[3] == 'S') {
+            return FORMAT_OGG;
+        }
+
+        // text formats - skip byte order mark and leading whitespace
+        String text = getText(bytes, length).toLowerCase(Locale.ENGLISH);
+        if (text.startsWith("#extm3u")) {
+            return text.contains("#ext-x-") ? FORMAT_HLS : FORMAT_M3U;
+        } else if (text.startsWith("#ext-x-")) {
+            return FORMAT_HLS;
+        } else if (text.startsWith("[playlist]")) {
+            return FORMAT_PLS;
+        } else if (text.startsWith("<")) {
+            if (text.contains("<html") || text.startsWith("<!doctype html")) {
+                // error or landing page delivered with status 200
+                return getFormatFromContentType(declaredType);
+            } else if (text.contains("<asx")) {
+                return FORMAT_ASX;
+            } else if (text.contains("<playlist") && text.contains("xspf")) {
+                return FORMAT_XSPF;
+            }
+            return FORMAT_XML;
+        } else if (text.startsWith("http://") || text.startsWith("https://")) {
+            // plain list of stream URLs without #EXTM3U header
+            return FORMAT_M3U;
+        }
+
+        // audio - a sync word followed by another frame header
+        if (hasFrames(bytes, length, AudioFrameReader.FORMAT_ADTS)) {
+            return FORMAT_AAC;
+        } else if (hasFrames(bytes, length, AudioFrameReader.FORMAT_MP3)) {
+            return FORMAT_MPEG;
+        } else if (length >= 3 && bytes[0] == 'I' && bytes[1] == 'D' && bytes[2] == '3') {
+            // tag too large to reach the first frame - tagged streams are MP3 as a rule
+            return FORMAT_MPEG;
+        }
+
+        return getFormatFromContentType(declaredType);
+    }
+
+
+    /* Maps content type header to a format */
+    public static String getFormatFromContentType(String contentType) {
+        if (contentType == null) {
+            return FORMAT_UNKNOWN;
+        }
+        contentType = contentType.toLowerCase(Locale.ENGLISH);
+        if (contentType.contains("vnd.apple.mpegurl") || contentType.contains("application/x-mpegurl")) {
+            return FORMAT_HLS;
+        } else if (contentType.contains("mpegurl")) {
+            return FORMAT_M3U;
+        } else if (contentType.contains("scpls")) {
+            return FORMAT_PLS;
+        } else if (contentType.contains("xspf")) {
+            return FORMAT_XSPF;
+        } else if (contentType.contains("ms-asf") || contentType.contains("ms-wax")) {
+            return FORMAT_ASX;
+        } else if (contentType.contains("xml")) {
+            return FORMAT_XML;
+        } else if (contentType.contains("ogg") || contentType.contains("opus")) {
+            return FORMAT_OGG;
+        } else if (contentType.contains("aac")) {
+            return FORMAT_AAC;
+        } else if (contentType.contains("audio/mpeg") || contentType.contains("audio/mp3")) {
+            return FORMAT_MPEG;
+        }
+        return FORMAT_UNKNOWN;
+    }
+
+
+    /* Checks if format is a playlist that points to streams */
+    public static boolean isPlaylist(String format) {
+        return FORMAT_M3U.equals(format) || FORMAT_PLS.equals(format) || FORMAT_XSPF.equals(format) || FORMAT_ASX.equals(format);
+    }
+
+
+    /* Checks if format can be played directly - HLS is played by the media framework itself */
+    public static boolean isStream(String format) {
+        return FORMAT_MPEG.equals(format) || FORMAT_AAC.equals(format) || FORMAT_OGG.equals(format) || FORMAT_HLS.equals(format);
+    }
+
+
+    /* Decodes bytes as text - without byte order mark and leading whitespace */
+    private static String getText(byte[] bytes, int length) {
+        int start = 0;
+        if (length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            start = 3;
+        }
+        while (start < length && (bytes[start] == ' ' || bytes[start] == '\t' || bytes[start] == '\r' || bytes[start] == '\n')) {
+            start++;
+        }
+        // first line is enough to tell, except for XML
+        return new String(bytes, start, Math.min(length - start, 1024), UTF_8);
+    }
+
+
+    /* Checks if bytes contain consecutive frames of given format */
+    private static boolean hasFrames(byte[] bytes, int length, int format) {
+        AudioFrameReader reader = new AudioFrameReader(new ByteArrayInputStream(bytes, 0, length), format, new byte[FRAME_BUFFER_SIZE]);
+        try {
+            return reader.nextFrame();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Inner class: Result of sniffing - format plus the open response
+     */
+    public static final class Result implements Closeable {
+
+        private final Response mResponse;
+        private final String mFormat;
+        private final String mDeclaredType;
+        private final byte[] mBytes;
+        private final int mLength;
+
+        private Result(Response response, String format, String declaredType, byte[] bytes, int length) {
+            mResponse = response;
+            mFormat = format;
+            mDeclaredType = declaredType;
+            mBytes = bytes;
+            mLength = length;
+        }
+
+        /* Getter for detected format - one of the FORMAT keys */
+        public String getFormat() {
+            return mFormat;
+        }
+
+        /* Getter for the Content-Type header as sent by the server - may be null */
+        public String getDeclaredType() {
+            return mDeclaredType;
+        }
+
+        /* Getter for charset of the Content-Type header - may be null */
+        public String getCharset() {
+            MediaType mediaType = (mDeclaredType != null) ? MediaType.parse(mDeclaredType) : null;
+            Charset charset = (mediaType != null) ? mediaType.charset() : null;
+            return (charset != null) ? charset.name().toLowerCase(Locale.ENGLISH) : null;
+        }
+
+        /* Getter for URL after redirects */
+        public String getFinalUrl() {
+            return mResponse.request().url().toString();
+        }
+
+        /* Getter for a response header */
+        public String header(String name) {
+            return mResponse.header(name);
+        }
+
+        /* Getter for the bytes read while sniffing */
+        public byte[] getBytes() {
+            byte[] bytes = new byte[mLength];
+            System.arraycopy(mBytes, 0, bytes, 0, mLength);
+            return bytes;
+        }
+
+        /* Returns whole body - bytes read while sniffing followed by the rest of the response */
+        public InputStream getInputStream() {
+            return new SequenceInputStream(new ByteArrayInputStream(mBytes, 0, mLength), mResponse.body().byteStream());
+        }
+
+        @Override
+        public void close() {
+            mResponse.close();
+        }
+    }
+    /**
+     * End of inner class
+     */
+
+}
@@ -0,0 +1,96 @@
+/**
+ * StreamMirrors.java
+ * Implements the StreamMirrors class
+ * StreamMirrors remembers how the mirrors of a station performed and orders them for the next connect
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * StreamMirrors class
+ * Mirrors that failed recently go to the back, the mirror that won the last race goes to the front,
+ * all others keep the order of the station. Nothing is persisted - a new process starts with the station's order.
+ */
+public final class StreamMirrors {
+
+    /* Define log tag */
+    private static final String LOG_TAG = StreamMirrors.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final long FAILURE_MEMORY = 10 * 60 * 1000; // 10 minutes
+    private static final Map<String, Long> sLastFailures = new HashMap<>();
+    private static final Map<String, Long> sLastSuccesses = new HashMap<>();
+
+
+    /* Returns stream URIs ordered by how well they worked recently */
+    public static synchronized List<String> rank(List<String> streamUris) {
+        final long now = SystemClock.elapsedRealtime();
+        final List<String> stationOrder = new ArrayList<>(streamUris);
+        List<String> ranked = new ArrayList<>(streamUris);
+        Collections.sort(ranked, new Comparator<String>() {
+            @Override
+            public int compare(String uri1, String uri2) {
+                boolean failed1 = hasFailedRecently(uri1, now);
+                boolean failed2 = hasFailedRecently(uri2, now);
+                if (failed1 != failed2) {
+                    return failed1 ? 1 : -1;
+                }
+                long success1 = sLastSuccesses.containsKey(uri1) ? sLastSuccesses.get(uri1) : 0;
+                long success2 = sLastSuccesses.containsKey(uri2) ? sLastSuccesses.get(uri2) : 0;
+                if (success1 != success2) {
+                    return success1 > success2 ? -1 : 1;
+                }
+                return stationOrder.indexOf(uri1) - stationOrder.indexOf(uri2);
+            }
+        });
+        return ranked;
+    }
+
+
+    /* Remembers that stream URI won a race or played fine */
+    public static synchronized void reportSuccess(String streamUri) {
+        if (streamUri != null) {
+            sLastSuccesses.put(streamUri, SystemClock.elapsedRealtime());
+        }
+    }
+
+
+    /* Remembers that stream URI failed or stalled */
+    public static synchronized void reportFailure(String streamUri) {
+        if (streamUri != null) {
+            LogHelper.v(LOG_TAG, "Mirror failed: " + streamUri);
+            sLastFailures.put(streamUri, SystemClock.elapsedRealtime());
+        }
+    }
+
+
+    /* Checks if stream URI failed after its last success and not too long ago */
+    private static boolean hasFailedRecently(String streamUri, long now) {
+        Long failure = sLastFailures.get(streamUri);
+        if (failure == null || now - failure > FAILURE_MEMORY) {
+            return false;
+        }
+        Long success = sLastSuccesses.get(streamUri);
+        return success == null || success < failure;
+    }
+
+}
@@ -0,0 +1,803 @@
+/**
+ * StreamProxy.java
+ * Implements the StreamProxy class
+ * A StreamProxy relays a Shoutcast stream to local clients (e.g. the MediaPlayer) with metadata stripped
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import org.y20k.transistor.TransistorCustomApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+
+
+/**
+ * StreamProxy class
+ * One selector thread serves all local clients. The upstream stream is fetched once by a reader thread,
+ * handed over through a pipe, demuxed and kept in a ring buffer that every client reads from at its own pace.
+ * If a station has mirrors, the first two are requested at the same time - the first one delivering audio is relayed.
+ */
+public final class StreamProxy implements Runnable, IcyStreamDemuxer.Listener {
+
+    /* Interface for being notified about the upstream response */
+    public interface UpstreamListener {
+        /* Called on the upstream thread once the winning stream URL delivered its first bytes */
+        void onUpstreamConnected(String streamUrl, String finalUrl, String contentType, int icyMetaint, int icyBr);
+        /* Called on an upstream thread if a stream URL failed before delivering audio */
+        void onUpstreamFailed(String streamUrl);
+        /* Called on the upstream thread for every chunk read from the station - keep it cheap */
+        void onUpstreamData(int byteCount);
+    }
+
+
+    /* Define log tag */
+    private static final String LOG_TAG = StreamProxy.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final int RING_CAPACITY = 256 * 1024; // about 16 seconds of 128kbit stream
+    private static final int READ_BUFFER_SIZE = 16384;
+    private static final int MAX_REQUEST_SIZE = 4096;
+    public static final String TIME_SHIFT_FILE_PREFIX = "timeshift-";
+    private static final int CLIENT_REQUEST = 0;
+    private static final int CLIENT_WAITING = 1;
+    private static final int CLIENT_HEADER = 2;
+    private static final int CLIENT_STREAMING = 3;
+    private static final int RACE_WIDTH = 2; // number of stream URLs requested at once
+
+    private final List<String> mStreamUrls;
+    private volatile MetadataTracker mMetadataTracker;
+    private UpstreamListener mUpstreamListener = null;
+    private final IcyMetadataParser mMetadataParser = new IcyMetadataParser();
+    private final ByteBuffer mReadBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final ByteBuffer mDiscardBuffer = ByteBuffer.allocateDirect(512);
+    private final ByteBuffer mRing = ByteBuffer.allocateDirect(RING_CAPACITY);
+    private final List<Client> mClients = new ArrayList<>();
+    private long mWritten = 0;
+    private IcyStreamDemuxer mDemuxer = null;
+    private Selector mSelector;
+    private ServerSocketChannel mServerChannel;
+    private Pipe mPipe;
+    private String mProxyUri = "";
+    private boolean mUpstreamStarted = false;
+    private volatile boolean mRunning = false;
+    private volatile String mContentType = null;
+    private volatile int mMetadataInterval = 0;
+    private final List<Upstream> mUpstreams = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean mUpstreamWon = new AtomicBoolean(false);
+    private final AtomicInteger mPendingUpstreams = new AtomicInteger(0);
+    private File mTimeShiftDirectory = null;
+    private File mTimeShiftFile = null;
+    private int mTimeShiftMinutes = 0;
+    private volatile TimeShiftBuffer mTimeShift = null;
+    private volatile int mByteRate = 0; // bytes per second, 0 if unknown
+    private volatile long mClientStartPosition = 0;
+    private volatile long mClientReadPosition = 0;
+    private volatile long mResumePosition = -1;
+    private volatile StreamRecorder mRecorder = null;
+
+
+    /* Constructor */
+    public StreamProxy(String streamUri, MetadataTracker metadataTracker) {
+        this(Collections.singletonList(streamUri), metadataTracker);
+    }
+
+
+    /* Constructor for a stream with mirrors - stream URLs in order of preference */
+    public StreamProxy(List<String> streamUrls, MetadataTracker metadataTracker) {
+        mStreamUrls = new ArrayList<>(streamUrls);
+        mMetadataTracker = metadataTracker;
+    }
+
+
+    /* Binds the local port and starts the event loop - the proxy URI is available as soon as this returns */
+    public boolean start() {
+        try {
+            mSelector = Selector.open();
+            mPipe = Pipe.open();
+            mPipe.source().configureBlocking(false);
+            mPipe.source().register(mSelector, SelectionKey.OP_READ);
+
+            // bind to loopback only - the proxy must not be reachable from the network
+            mServerChannel = ServerSocketChannel.open();
+            mServerChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+            mServerChannel.configureBlocking(false);
+            mServerChannel.register(mSelector, SelectionKey.OP_ACCEPT);
+            mProxyUri = "http://127.0.0.1:" + mServerChannel.socket().getLocalPort() + "/";
+            if (mTimeShiftDirectory != null) {
+                // one file per proxy - a stopping proxy deletes its file asynchronously
+                mTimeShiftFile = new File(mTimeShiftDirectory, TIME_SHIFT_FILE_PREFIX + mServerChannel.socket().getLocalPort() + ".buf");
+            }
+            LogHelper.v(LOG_TAG, "Proxy listening: " + mProxyUri);
+
+            mRunning = true;
+            new Thread(this, LOG_TAG).start();
+            return true;
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to start proxy: " + e);
+            mRunning = false;
+            closeQuietly();
+            mProxyUri = "";
+            return false;
+        }
+    }
+
+
+    /* Stops event loop and upstream connection - may be called from any thread */
+    public void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        disconnectUpstream();
+        try {
+            mPipe.sink().close(); // unblocks the upstream reader
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to close pipe: " + e);
+        }
+        mSelector.wakeup();
+    }
+
+
+    /* Setter for upstream listener - must be set before start */
+    public void setUpstreamListener(UpstreamListener upstreamListener) {
+        mUpstreamListener = upstreamListener;
+    }
+
+
+    /* Enables the time-shift buffer - must be set before start, minutes of 0 disable it */
+    public void setTimeShift(File directory, int minutes) {
+        mTimeShiftDirectory = directory;
+        mTimeShiftMinutes = minutes;
+    }
+
+
+    /* Hands metadata over to another tracker, e.g. when a paused stream is resumed in a new session */
+    public void setMetadataTracker(MetadataTracker metadataTracker) {
+        mMetadataTracker = metadataTracker;
+        String title = mMetadataParser.getTitle();
+        if (title != null && metadataTracker != null) {
+            metadataTracker.onTitle(title);
+        }
+    }
+
+
+    /* Getter for proxy URI */
+    public String getProxyUri() {
+        return mProxyUri;
+    }
+
+
+    /* Tees relayed audio into recorder - may be called from any thread */
+    public void startRecording(StreamRecorder recorder) {
+        stopRecording();
+        String contentType = mContentType;
+        if (contentType != null) {
+            recorder.setContentType(contentType);
+        }
+        recorder.split(mMetadataParser.getTitle());
+        mRecorder = recorder;
+    }
+
+
+    /* Stops teeing audio into recorder - may be called from any thread */
+    public void stopRecording() {
+        StreamRecorder recorder = mRecorder;
+        mRecorder = null;
+        if (recorder != null) {
+            recorder.stop();
+        }
+    }
+
+
+    /* Checks if proxy is still relaying the stream */
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+
+    /* Checks if stream is being kept for resuming - false until the upstream connection is up */
+    public boolean isTimeShiftAvailable() {
+        return mRunning && mTimeShift != null;
+    }
+
+
+    /* Remembers where playback was paused - the next client continues there. May be called from any thread */
+    public void markPausePosition(long playedMillis) {
+        long position = mClientReadPosition;
+        int byteRate = mByteRate;
+        if (playedMillis > 0 && byteRate > 0) {
+            // the player reads ahead - estimate what has actually been played
+            position = Math.min(position, mClientStartPosition + playedMillis * byteRate / 1000);
+        }
+        mResumePosition = position;
+        LogHelper.v(LOG_TAG, "Pause position marked: " + position);
+    }
+
+
+    /* Event loop */
+    @Override
+    public void run() {
+        try {
+            while (mRunning) {
+                mSelector.select();
+                if (!mRunning) {
+                    break;
+                }
+                Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        acceptClient();
+                    } else if (key.channel() == mPipe.source()) {
+                        readUpstream();
+                    } else {
+                        Client client = (Client) key.attachment();
+                        if (key.isReadable()) {
+                            readClient(client);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            writeClient(client);
+                        }
+                    }
+                }
+                startWaitingClients();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            LogHelper.e(LOG_TAG, "Proxy event loop stopped: " + e);
+        } finally {
+            mRunning = false;
+            disconnectUpstream();
+            closeQuietly();
+            if (mTimeShift != null) {
+                mTimeShift.close();
+                mTimeShift = null;
+            }
+            stopRecording();
+            LogHelper.v(LOG_TAG, "Proxy stopped: " + mProxyUri);
+        }
+    }
+
+
+    /* Receives audio data from demuxer and appends it to the ring */
+    @Override
+    public void onAudio(ByteBuffer audio) {
+        if (mTimeShift != null) {
+            mTimeShift.write(audio);
+        }
+        StreamRecorder recorder = mRecorder;
+        if (recorder != null) {
+            recorder.write(audio);
+        }
+        while (audio.hasRemaining()) {
+            int position = (int) (mWritten % RING_CAPACITY);
+            int count = Math.min(RING_CAPACITY - position, audio.remaining());
+            int limit = audio.limit();
+            audio.limit(audio.position() + count);
+            ByteBuffer ring = mRing.duplicate();
+            ring.position(position);
+            ring.put(audio);
+            audio.limit(limit);
+            mWritten += count;
+        }
+    }
+
+
+    /* Receives metadata blocks from demuxer */
+    @Override
+    public void onMetadata(byte[] metadata, int length) {
+        String title = mMetadataParser.parse(metadata, 0, length);
+        MetadataTracker metadataTracker = mMetadataTracker;
+        if (title != null && metadataTracker != null) {
+            metadataTracker.onTitle(title);
+        }
+        StreamRecorder recorder = mRecorder;
+        if (title != null && recorder != null) {
+            // new program - start a new file exactly at the metadata boundary
+            recorder.split(title);
+        }
+    }
+
+
+    /* Accepts a new local client */
+    private void acceptClient() throws IOException {
+        SocketChannel channel = mServerChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Client client = new Client(channel);
+        client.key = channel.register(mSelector, SelectionKey.OP_READ, client);
+        mClients.add(client);
+        LogHelper.v(LOG_TAG, "Client connected. Clients: " + mClients.size());
+
+        // fetch stream only once somebody listens
+        if (!mUpstreamStarted) {
+            mUpstreamStarted = true;
+            startUpstream();
+        }
+    }
+
+
+    /* Reads request from client, or detects a closed client */
+    private void readClient(Client client) {
+        try {
+            if (client.state == CLIENT_REQUEST) {
+                int count = client.channel.read(client.request);
+                if (count < 0) {
+                    closeClient(client);
+                    return;
+                }
+                if (isRequestComplete(client.request)) {
+                    client.headOnly = client.request.get(0) == 'H';
+                    client.state = CLIENT_WAITING;
+                }
+            } else {
+                // discard anything else the client sends
+                mDiscardBuffer.clear();
+                if (client.channel.read(mDiscardBuffer) < 0) {
+                    closeClient(client);
+                }
+            }
+        } catch (IOException e) {
+            closeClient(client);
+        }
+    }
+
+
+    /* Writes pending header and audio data to client */
+    private void writeClient(Client client) {
+        try {
+            if (client.state == CLIENT_HEADER) {
+                client.channel.write(client.header);
+                if (client.header.hasRemaining()) {
+                    client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (client.headOnly) {
+                    closeClient(client);
+                    return;
+                }
+                client.header = null;
+                client.state = CLIENT_STREAMING;
+                client.readPosition = getStartPosition();
+                mClientStartPosition = client.readPosition;
+            }
+            if (client.state != CLIENT_STREAMING) {
+                return;
+            }
+
+            // a client that fell behind further than the stored stream reaches skips ahead
+            long oldestPosition = getOldestPosition();
+            if (client.readPosition < oldestPosition) {
+                LogHelper.w(LOG_TAG, "Client too slow. Skipping " + (oldestPosition - client.readPosition) + " bytes.");
+                client.readPosition = oldestPosition;
+            }
+
+            while (client.readPosition < mWritten) {
+                ByteBuffer source;
+                if (mWritten - client.readPosition <= RING_CAPACITY) {
+                    // recent data - serve from memory
+                    int position = (int) (client.readPosition % RING_CAPACITY);
+                    int count = (int) Math.min(RING_CAPACITY - position, mWritten - client.readPosition);
+                    source = mRing.duplicate();
+                    source.position(position);
+                    source.limit(position + count);
+                } else {
+                    // client is behind the ring - serve from time-shift buffer
+                    source = mTimeShift.getReadBuffer(client.readPosition, mWritten - RING_CAPACITY);
+                }
+                int count = source.remaining();
+                int written = client.channel.write(source);
+                client.readPosition += written;
+                mClientReadPosition = client.readPosition;
+                if (written < count) {
+                    // socket buffer full - continue when writable
+                    client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            client.key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            closeClient(client);
+        }
+    }
+
+
+    /* Returns the oldest stream position that is still stored */
+    private long getOldestPosition() {
+        long oldestPosition = Math.max(0, mWritten - RING_CAPACITY);
+        if (mTimeShift != null) {
+            oldestPosition = Math.min(oldestPosition, mTimeShift.getOldestPosition());
+        }
+        return oldestPosition;
+    }
+
+
+    /* Returns position a new client starts at: the pause position if one was marked, the live edge otherwise */
+    private long getStartPosition() {
+        long resumePosition = mResumePosition;
+        mResumePosition = -1;
+        if (resumePosition < 0) {
+            return mWritten;
+        }
+        long startPosition = Math.max(getOldestPosition(), Math.min(resumePosition, mWritten));
+        LogHelper.v(LOG_TAG, "Resuming " + (mWritten - startPosition) + " bytes behind live.");
+        return startPosition;
+    }
+
+
+    /* Sends response header to clients, as soon as the upstream content type is known */
+    private void startWaitingClients() {
+        if (mContentType == null) {
+            return;
+        }
+        for (int i = mClients.size() - 1; i >= 0; i--) {
+            Client client = mClients.get(i);
+            if (client.state == CLIENT_WAITING) {
+                client.header = ByteBuffer.wrap(("HTTP/1.0 200 OK\r\n" +
+                        "Pragma: no-cache\r\n" +
+                        "Content-Type: " + mContentType +
+                        "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                client.state = CLIENT_HEADER;
+                writeClient(client);
+            }
+        }
+    }
+
+
+    /* Reads upstream data from pipe, demuxes it and passes it on to the clients */
+    private void readUpstream() throws IOException {
+        mReadBuffer.clear();
+        int count = mPipe.source().read(mReadBuffer);
+        if (count < 0) {
+            LogHelper.v(LOG_TAG, "Upstream closed.");
+            mRunning = false;
+            return;
+        }
+        mReadBuffer.flip();
+        if (mDemuxer == null) {
+            mDemuxer = new IcyStreamDemuxer(mMetadataInterval, this);
+        }
+        mDemuxer.process(mReadBuffer);
+
+        for (int i = mClients.size() - 1; i >= 0; i--) {
+            writeClient(mClients.get(i));
+        }
+    }
+
+
+    /* Starts the threads that fetch the stream - one per raced stream URL */
+    private void startUpstream() {
+        int count = Math.min(RACE_WIDTH, mStreamUrls.size());
+        mPendingUpstreams.set(count);
+        for (int i = 0; i < count; i++) {
+            final String streamUrl = mStreamUrls.get(i);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    fetchUpstream(streamUrl);
+                }
+            }, LOG_TAG + "Upstream" + i).start();
+        }
+    }
+
+
+    /* Fetches stream URL - feeds the pipe if it delivers audio before the other raced URLs */
+    private void fetchUpstream(String streamUrl) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        Upstream upstream = new Upstream();
+        boolean winner = false;
+        mUpstreams.add(upstream);
+        try {
+            if (!mRunning) {
+                return;
+            }
+            upstream.open(streamUrl);
+
+            // the first audio bytes decide the race
+            int count = upstream.read(buffer);
+            if (count < 0) {
+                throw new IOException("Stream ended before first byte");
+            }
+            if (!mUpstreamWon.compareAndSet(false, true)) {
+                LogHelper.v(LOG_TAG, "Upstream lost race: " + streamUrl);
+                return;
+            }
+            winner = true;
+            for (Upstream otherUpstream : mUpstreams) {
+                if (otherUpstream != upstream) {
+                    otherUpstream.cancel();
+                }
+            }
+
+            // metadata interval must be set before the first byte enters the pipe
+            IcyHeaders headers = upstream.getHeaders();
+            mMetadataInterval = headers.METAINT;
+            String contentType = headers.CONTENT_TYPE;
+            mContentType = (contentType == null || contentType.isEmpty()) ? "audio/mpeg" : contentType;
+            int bitrate = headers.BITRATE;
+            mByteRate = bitrate * 1000 / 8;
+            openTimeShift(bitrate);
+            LogHelper.v(LOG_TAG, "Upstream connected: " + streamUrl + ", icy-metaint " + mMetadataInterval + " content-type " + mContentType);
+            mSelector.wakeup();
+
+            if (mUpstreamListener != null) {
+                mUpstreamListener.onUpstreamConnected(streamUrl, upstream.getFinalUrl(), contentType,
+                        mMetadataInterval, bitrate);
+            }
+
+            while (mRunning) {
+                if (mUpstreamListener != null) {
+                    mUpstreamListener.onUpstreamData(count);
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    mPipe.sink().write(buffer);
+                }
+                buffer.clear();
+                count = upstream.read(buffer);
+                if (count < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            if (mRunning && !mUpstreamWon.get()) {
+                LogHelper.e(LOG_TAG, "Upstream error: " + streamUrl + ": " + e);
+                if (mUpstreamListener != null) {
+                    mUpstreamListener.onUpstreamFailed(streamUrl);
+                }
+            } else if (mRunning && winner) {
+                LogHelper.e(LOG_TAG, "Upstream error: " + e);
+            }
+        } finally {
+            upstream.close();
+            mUpstreams.remove(upstream);
+            // end of stream once the relayed URL ends - or once every raced URL failed
+            if (winner || (mPendingUpstreams.decrementAndGet() == 0 && !mUpstreamWon.get())) {
+                disconnectUpstream();
+                try {
+                    mPipe.sink().close(); // event loop sees end of stream
+                } catch (IOException e) {
+                    LogHelper.e(LOG_TAG, "Unable to close pipe: " + e);
+                }
+            }
+        }
+    }
+
+
+    /* Creates time-shift buffer - runs on the upstream thread before the first byte enters the pipe */
+    private void openTimeShift(int bitrate) {
+        if (mTimeShiftFile == null || mTimeShiftMinutes <= 0) {
+            return;
+        }
+        try {
+            mTimeShift = TimeShiftBuffer.open(mTimeShiftFile, TimeShiftBuffer.getCapacity(mTimeShiftMinutes, bitrate));
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to create time-shift buffer. Continuing without: " + e);
+        }
+    }
+
+
+    /* Disconnects upstream connection */
+    private void disconnectUpstream() {
+        for (Upstream upstream : mUpstreams) {
+            upstream.cancel();
+        }
+    }
+
+
+    /* Checks if the HTTP request header has been received completely */
+    private boolean isRequestComplete(ByteBuffer request) {
+        int end = request.position();
+        if (end >= MAX_REQUEST_SIZE) {
+            return true;
+        }
+        for (int i = 3; i < end; i++) {
+            if (request.get(i - 3) == '\r' && request.get(i - 2) == '\n' && request.get(i - 1) == '\r' && request.get(i) == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /* Closes a client connection */
+    private void closeClient(Client client) {
+        mClients.remove(client);
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to close client: " + e);
+        }
+        LogHelper.v(LOG_TAG, "Client disconnected. Clients: " + mClients.size());
+    }
+
+
+    /* Closes all channels */
+    private void closeQuietly() {
+        for (int i = mClients.size() - 1; i >= 0; i--) {
+            closeClient(mClients.get(i));
+        }
+        try {
+            if (mServerChannel != null) {
+                mServerChannel.close();
+            }
+            if (mPipe != null) {
+                mPipe.source().close();
+                mPipe.sink().close();
+            }
+            if (mSelector != null) {
+                mSelector.close();
+            }
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to close proxy channels: " + e);
+        }
+    }
+
+
+    /**
+     * Inner class: A local client of the proxy
+     */
+    private static final class Client {
+        final SocketChannel channel;
+        final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+        SelectionKey key;
+        ByteBuffer header;
+        boolean headOnly = false;
+        int state = CLIENT_REQUEST;
+        long readPosition = 0;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+    /**
+     * End of inner class
+     */
+
+
+    /**
+     * Inner class: A connection to one stream URL - through OkHttp, or through IcyClient for a plain HTTP server OkHttp cannot parse
+     */
+    private static final class Upstream {
+        private volatile boolean mCanceled = false;
+        private volatile IcyClient mIcyClient = null;
+        private volatile Call mCall = null;
+        private Response mResponse = null;
+        private ReadableByteChannel mChannel = null;
+        private IcyHeaders mHeaders = null;
+        private String mFinalUrl = null;
+
+        /* Connects and reads response header - error pages must not win the race */
+        void open(String streamUrl) throws IOException {
+            Request request = new Request.Builder()
+                    .url(streamUrl)
+                    .header("Icy-MetaData", "1")
+                    .build();
+            Call call = TransistorCustomApplication.getHttpClient().newCall(request);
+            mCall = call;
+            if (mCanceled) {
+                call.cancel();
+            }
+            try {
+                mResponse = call.execute();
+            } catch (ProtocolException e) {
+                // malformed status line or header - e.g. an old Shoutcast server
+                if (mCanceled || !IcyClient.isSupported(streamUrl)) {
+                    throw e;
+                }
+                LogHelper.v(LOG_TAG, "Retrying with ICY client: " + streamUrl + " (" + e.getMessage() + ")");
+                openIcyClient(streamUrl);
+                return;
+            }
+            checkStatus(mResponse.code());
+            mHeaders = IcyHeaders.from(mResponse.headers());
+            mFinalUrl = mResponse.request().url().toString();
+            mChannel = Channels.newChannel(mResponse.body().byteStream());
+        }
+
+        /* Connects through IcyClient - plain HTTP only */
+        private void openIcyClient(String streamUrl) throws IOException {
+            IcyClient icyClient = new IcyClient(streamUrl);
+            mIcyClient = icyClient;
+            if (mCanceled) {
+                icyClient.close();
+            }
+            icyClient.connect();
+            if (icyClient.getRedirectLocation() != null) {
+                icyClient.close();
+                throw new IOException("Unsupported redirect: " + icyClient.getRedirectLocation());
+            }
+            checkStatus(icyClient.getStatusCode());
+            mHeaders = icyClient.getHeaders();
+            mFinalUrl = icyClient.getFinalUrl();
+            mChannel = icyClient;
+        }
+
+        /* Reads stream data into buffer - returns -1 at end of stream */
+        int read(ByteBuffer buffer) throws IOException {
+            return mChannel.read(buffer);
+        }
+
+        /* Getter for response headers */
+        IcyHeaders getHeaders() {
+            return mHeaders;
+        }
+
+        /* Getter for URL after redirects */
+        String getFinalUrl() {
+            return mFinalUrl;
+        }
+
+        /* Aborts connection - may be called from any thread */
+        void cancel() {
+            mCanceled = true;
+            IcyClient icyClient = mIcyClient;
+            if (icyClient != null) {
+                icyClient.close();
+            }
+            Call call = mCall;
+            if (call != null) {
+                call.cancel();
+            }
+        }
+
+        /* Releases connection - called by the thread that opened it */
+        void close() {
+            cancel();
+            if (mResponse != null) {
+                mResponse.close();
+            }
+        }
+
+        /* Throws if status code is not a success */
+        private static void checkStatus(int statusCode) throws IOException {
+            if (statusCode < 200 || statusCode >= 300) {
+                throw new IOException("HTTP " + statusCode);
+            }
+        }
+    }
+    /**
+     * End of inner class
+     */
+
+}
@@ -0,0 +1,197 @@
+/**
+ * StreamRecorder.java
+ * Implements the StreamRecorder class
+ * A StreamRecorder writes the audio a StreamProxy relays into files, one file per program
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import org.y20k.transistor.core.StreamProfile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * StreamRecorder class
+ * Audio is written as received - no re-encoding. Files are split whenever the stream title changes.
+ * Audio arrives on the proxy's event loop, so it is only copied there: opening, writing and closing files happens
+ * in order on a writer thread of the recorder. A file name already taken gets a counter.
+ */
+public final class StreamRecorder {
+
+    /* Define log tag */
+    private static final String LOG_TAG = StreamRecorder.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final int MAX_FILE_NAME_LENGTH = 128;
+    private final File mDirectory;
+    private final String mStationName;
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+    private volatile String mExtension = "mp3";
+    private volatile boolean mStopped = false;
+    private FileChannel mChannel = null; // used on writer thread only
+    private File mFile = null;
+    private long mBytesWritten = 0;
+
+
+    /* Constructor */
+    public StreamRecorder(File directory, String stationName) {
+        mDirectory = directory;
+        mStationName = stationName;
+    }
+
+
+    /* Sets file extension from the stream's content type - applies to the next file */
+    public void setContentType(String contentType) {
+        String codec = StreamProfile.getCodecFromContentType(contentType);
+        if ("aac".equals(codec) || "mp3".equals(codec) || "ogg".equals(codec)) {
+            mExtension = codec;
+        }
+    }
+
+
+    /* Appends the remaining bytes of audio to the current file - does not change the position of audio */
+    public synchronized void write(ByteBuffer audio) {
+        if (mStopped) {
+            return;
+        }
+        final ByteBuffer copy = ByteBuffer.allocate(audio.remaining());
+        copy.put(audio.duplicate());
+        copy.flip();
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mStopped) {
+                    return;
+                }
+                try {
+                    if (mChannel == null) {
+                        openFile(null, new Date());
+                    }
+                    while (copy.hasRemaining()) {
+                        mBytesWritten += mChannel.write(copy);
+                    }
+                } catch (IOException e) {
+                    // disk full or storage removed - give up instead of failing on every chunk
+                    LogHelper.e(LOG_TAG, "Unable to write recording. Stopping: " + e);
+                    stop();
+                }
+            }
+        });
+    }
+
+
+    /* Starts a new file - called when a new program begins */
+    public synchronized void split(final String title) {
+        if (mStopped) {
+            return;
+        }
+        final Date start = new Date();
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mStopped) {
+                    return;
+                }
+                try {
+                    closeFile();
+                    openFile(title, start);
+                } catch (IOException e) {
+                    LogHelper.e(LOG_TAG, "Unable to start new recording file. Stopping: " + e);
+                    stop();
+                }
+            }
+        });
+    }
+
+
+    /* Finishes recording - the file is closed after audio written so far */
+    public synchronized void stop() {
+        if (mWriter.isShutdown()) {
+            return;
+        }
+        mStopped = true;
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeFile();
+            }
+        });
+        mWriter.shutdown();
+    }
+
+
+    /* Checks if recorder still writes */
+    public boolean isRecording() {
+        return !mStopped;
+    }
+
+
+    /* Opens a new file named after station, time and title - on writer thread */
+    private void openFile(String title, Date start) throws IOException {
+        String timestamp = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss", Locale.US).format(start);
+        String name = mStationName + " " + timestamp;
+        if (title != null && !title.isEmpty()) {
+            name = name + " " + title;
+        }
+        name = sanitizeFileName(name);
+        String extension = mExtension;
+        mFile = new File(mDirectory, name + "." + extension);
+        // two splits within a second would share a name - never overwrite an earlier file
+        for (int i = 2; mFile.exists(); i++) {
+            mFile = new File(mDirectory, name + " (" + i + ")." + extension);
+        }
+        mChannel = new FileOutputStream(mFile).getChannel();
+        mBytesWritten = 0;
+        LogHelper.v(LOG_TAG, "Recording to: " + mFile.getName());
+    }
+
+
+    /* Closes current file - empty files are removed. On writer thread */
+    private void closeFile() {
+        if (mChannel == null) {
+            return;
+        }
+        try {
+            mChannel.close();
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to close recording: " + e);
+        }
+        if (mBytesWritten == 0) {
+            mFile.delete();
+        } else {
+            LogHelper.v(LOG_TAG, "Recording finished: " + mFile.getName() + " (" + mBytesWritten / 1024 + " KB)");
+        }
+        mChannel = null;
+        mFile = null;
+    }
+
+
+    /* Replaces characters that are not allowed in file names */
+    private static String sanitizeFileName(String name) {
+        String sanitized = name.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").trim();
+        if (sanitized.length() > MAX_FILE_NAME_LENGTH) {
+            sanitized = sanitized.substring(0, MAX_FILE_NAME_LENGTH).trim();
+        }
+        return sanitized;
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ * TimeShiftBuffer.java
+ * Implements the TimeShiftBuffer class
+ * A TimeShiftBuffer keeps the last minutes of a live stream in a memory-mapped file, so playback can continue where it was paused
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * TimeShiftBuffer class
+ * A circular file. Positions are absolute stream positions - the same numbering StreamProxy uses for its ring.
+ * Not thread-safe: it is written and read on the proxy's event loop only.
+ */
+public final class TimeShiftBuffer {
+
+    /* Define log tag */
+    private static final String LOG_TAG = TimeShiftBuffer.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final int DEFAULT_BITRATE = 128; // kbit/s - used if station does not send icy-br
+    private static final int MAX_BITRATE = 320; // kbit/s
+    private static final int MAX_CAPACITY = 128 * 1024 * 1024; // keep mapping small enough for 32 bit devices
+    private final File mFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final MappedByteBuffer mBuffer;
+    private final int mCapacity;
+    private long mWritten = 0;
+
+
+    /* Constructor - use open */
+    private TimeShiftBuffer(File file, RandomAccessFile randomAccessFile, MappedByteBuffer buffer, int capacity) {
+        mFile = file;
+        mRandomAccessFile = randomAccessFile;
+        mBuffer = buffer;
+        mCapacity = capacity;
+    }
+
+
+    /* Creates and maps the buffer file - an existing file is overwritten */
+    public static TimeShiftBuffer open(File file, int capacity) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(capacity);
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            LogHelper.v(LOG_TAG, "Time-shift buffer opened: " + file.getName() + " (" + capacity / 1024 + " KB)");
+            return new TimeShiftBuffer(file, randomAccessFile, buffer, capacity);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            file.delete();
+            throw e;
+        }
+    }
+
+
+    /* Calculates buffer size needed for given duration and bitrate */
+    public static int getCapacity(int minutes, int bitrate) {
+        if (bitrate <= 0) {
+            bitrate = DEFAULT_BITRATE;
+        }
+        bitrate = Math.min(bitrate, MAX_BITRATE);
+        long capacity = (long) minutes * 60 * bitrate * 1000 / 8;
+        return (int) Math.min(capacity, MAX_CAPACITY);
+    }
+
+
+    /* Appends the remaining bytes of src - does not change the position of src */
+    public void write(ByteBuffer src) {
+        ByteBuffer audio = src.duplicate();
+        while (audio.hasRemaining()) {
+            int position = (int) (mWritten % mCapacity);
+            int count = Math.min(mCapacity - position, audio.remaining());
+            ByteBuffer slice = audio.duplicate();
+            slice.limit(slice.position() + count);
+            ByteBuffer target = mBuffer.duplicate();
+            target.position(position);
+            target.put(slice);
+            audio.position(audio.position() + count);
+            mWritten += count;
+        }
+    }
+
+
+    /* Returns a view of the stored bytes starting at position, up to the end of the file or to end - whichever comes first */
+    public ByteBuffer getReadBuffer(long position, long end) {
+        int offset = (int) (position % mCapacity);
+        int count = (int) Math.min(mCapacity - offset, Math.min(end, mWritten) - position);
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position(offset);
+        buffer.limit(offset + count);
+        return buffer;
+    }
+
+
+    /* Returns the oldest position that has not been overwritten yet */
+    public long getOldestPosition() {
+        return Math.max(0, mWritten - mCapacity);
+    }
+
+
+    /* Getter for capacity */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+
+    /* Closes and deletes the buffer file */
+    public void close() {
+        try {
+            mRandomAccessFile.close();
+        } catch (IOException e) {
+            LogHelper.e(LOG_TAG, "Unable to close time-shift buffer: " + e);
+        }
+        if (!mFile.delete()) {
+            LogHelper.w(LOG_TAG, "Unable to delete time-shift buffer: " + mFile);
+        }
+    }
+
+}
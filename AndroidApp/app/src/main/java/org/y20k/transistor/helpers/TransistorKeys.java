@@ -32,6 +32,11 @@ public class TransistorKeys {
     public static final String ACTION_TIMER_RUNNING = "org.y20k.transistor.action.TIMER_RUNNING";
     public static final String ACTION_TIMER_START = "org.y20k.transistor.action.TIMER_START";
     public static final String ACTION_TIMER_STOP = "org.y20k.transistor.action.TIMER_STOP";
+    public static final String ACTION_TIMER_EXPIRED = "org.y20k.transistor.action.TIMER_EXPIRED";
+    public static final String ACTION_RECORD_START = "org.y20k.transistor.action.RECORD_START";
+    public static final String ACTION_RECORD_STOP = "org.y20k.transistor.action.RECORD_STOP";
+    public static final String ACTION_PREPARE_STANDBY = "org.y20k.transistor.action.PREPARE_STANDBY";
+    public static final String ACTION_PREPARE_SCHEDULED = "org.y20k.transistor.action.PREPARE_SCHEDULED";
 
     /* EXTRAS */
     public static final String EXTRA_COLLECTION_CHANGE = "COLLECTION_CHANGE";
@@ -50,6 +55,9 @@ public class TransistorKeys {
     public static final String EXTRA_STREAM_URI = "STREAM_URI";
     public static final String EXTRA_TIMER_DURATION = "TIMER_DURATION";
     public static final String EXTRA_TIMER_REMAINING = "TIMER_REMAINING";
+    public static final String EXTRA_FADE_OUT = "FADE_OUT";
+    public static final String EXTRA_SCHEDULED_TIME = "SCHEDULED_TIME";
+    public static final String EXTRA_REMOVED_STATION_IDS = "REMOVED_STATION_IDS";
 
     /* ARGS */
     public static final String ARG_STATION = "ArgStation";
@@ -66,9 +74,19 @@ public class TransistorKeys {
     public static final String PREF_STATION_ID_SELECTED = "prefStationIDSelected";
     public static final String PREF_STATION_METADATA = "prefStationMetadata";
     public static final String PREF_TIMER_RUNNING = "prefTimerRunning";
+    public static final String PREF_TIMER_DEADLINE = "prefTimerDeadline";
+    public static final String PREF_TIMER_FADE_OUT = "prefTimerFadeOut";
     public static final String PREF_LAYOUT_VIEW_MANAGER = "LayoutViewManager";
     public static final String PREF_TWO_PANE = "prefTwoPane";
     public static final String PREF_INITIAL_DATA_LOADED = "initialDataLoaded";
+    public static final String PREF_TIME_SHIFT_MINUTES = "prefTimeShiftMinutes";
+    public static final String PREF_PLAYBACK_ENGINE = "prefPlaybackEngine";
+    public static final String PREF_START_THRESHOLD = "prefStartThreshold";
+    public static final String PREF_HEALTH_LAST_PROBE = "prefHealthLastProbe";
+    public static final String PREF_CATALOG_ETAG = "prefCatalogETag";
+    public static final String PREF_CATALOG_LAST_MODIFIED = "prefCatalogLastModified";
+    public static final String PREF_DATA_SAVER = "prefDataSaver";
+    public static final String PREF_DATA_CAP_MB = "prefDataCapMB";
     /* RESULTS */
     public static final String RESULT_FETCH_ERROR = "FETCH_ERROR";
     public static final String RESULT_PLAYLIST_TYPE = "PLAYLIST_TYPE";
@@ -80,6 +98,11 @@ public class TransistorKeys {
     public static final int INFOSHEET_CONTENT_HOWTO = 2;
     public static final int PERMISSION_REQUEST_IMAGE_PICKER_READ_EXTERNAL_STORAGE = 1;
     public static final int PERMISSION_REQUEST_STATION_FETCHER_READ_EXTERNAL_STORAGE = 2;
+    public static final int TIME_SHIFT_MINUTES_DEFAULT = 30;
+    public static final int START_THRESHOLD_DEFAULT = 300; // ms of decoded audio before playback starts
+    public static final int DATA_CAP_MB_DEFAULT = 100; // per day on metered networks, 0 = no cap
+    public static final String PLAYBACK_ENGINE_MEDIA_PLAYER = "mediaplayer";
+    public static final String PLAYBACK_ENGINE_AUDIO_TRACK = "audiotrack";
 
     public static final int PLAYER_SERVICE_NOTIFICATION_ID = 1;
     public static final int REQUEST_LOAD_IMAGE = 1;
@@ -89,6 +112,7 @@ public class TransistorKeys {
     public static final int STATION_CHANGED_IMAGE = 4;
     public static final int STATION_CHANGED_RATING = 5;
     public static final int STATION_CHANGED_FAVORIT = 6;
+    public static final int STATION_CATALOG_SYNCED = 7;
 
     public static final int PLAYBACK_LOADING_STATION = 1;
     public static final int PLAYBACK_STARTED = 2;
@@ -0,0 +1,248 @@
+/**
+ * StationBatchWriter.java
+ * Implements the StationBatchWriter class
+ * A StationBatchWriter inserts or updates many stations in one transaction
+ * <p>
+ * This file is part of
+ * TRANSISTOR - Radio App for Android
+ * <p>
+ * Copyright (c) 2015-17 - Y20K.org
+ * Licensed under the MIT-License
+ * http://opensource.org/licenses/MIT
+ */
+
+
+package org.y20k.transistor.sqlcore;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import org.y20k.transistor.core.Station;
+import org.y20k.transistor.helpers.LogHelper;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.y20k.transistor.sqlcore.StationsDbContract.StationEntry.TABLE_NAME;
+
+
+/**
+ * StationBatchWriter class
+ * Stations are matched by unique ID. The update only touches catalog columns and only rows whose values differ,
+ * so favourite, rating, health and the row ID of existing stations survive a re-import. Statements are compiled
+ * once per batch. Counts add up over all batches written with the same writer. Catalog fingerprints passed along are
+ * stored in the same transaction, so a station never exists without the mark of the catalog it came from.
+ */
+public final class StationBatchWriter {
+
+    /* Define log tag */
+    private static final String LOG_TAG = StationBatchWriter.class.getSimpleName();
+
+
+    /* Main class variables */
+    private static final String[] CATALOG_COLUMNS = {
+            StationsDbContract.StationEntry.COLUMN_NAME_TITLE,
+            StationsDbContract.StationEntry.COLUMN_NAME_SUBTITLE,
+            StationsDbContract.StationEntry.COLUMN_DESCRIPTION,
+            StationsDbContract.StationEntry.COLUMN_IMAGE_PATH,
+            StationsDbContract.StationEntry.COLUMN_IMAGE_FILE_NAME,
+            StationsDbContract.StationEntry.COLUMN_SMALL_IMAGE_FILE_NAME,
+            StationsDbContract.StationEntry.COLUMN_URI,
+            StationsDbContract.StationEntry.COLUMN_CONTENT_TYPE,
+            StationsDbContract.StationEntry.COLUMN_COMMA_SEPARATED_TAGS,
+            StationsDbContract.StationEntry.COLUMN_CATEGORY,
+            StationsDbContract.StationEntry.COLUMN_MARKDOWN_DESCRIPTION,
+            StationsDbContract.StationEntry.COLUMN_SMALL_IMAGE_URL,
+            StationsDbContract.StationEntry.COLUMN_MIRROR_URIS,
+            StationsDbContract.StationEntry.COLUMN_VARIANT_URIS};
+    private final Context mContext;
+    private int mInsertedCount = 0;
+    private int mUpdatedCount = 0;
+    private int mUnchangedCount = 0;
+
+
+    /* Constructor */
+    public StationBatchWriter(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+
+    /* Inserts new stations and updates changed ones in one transaction - sets _ID of every station */
+    public void write(List<Station> stations) {
+        write(stations, null);
+    }
+
+
+    /* Inserts new stations and updates changed ones in one transaction - stores catalog fingerprints by unique ID along, may be null */
+    public void write(List<Station> stations, Map<String, String> catalogFingerprints) {
+        if (stations.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = new StationsDbHelper(mContext).getWritableDatabase();
+        SQLiteStatement selectStatement = db.compileStatement(buildSelect());
+        SQLiteStatement insertStatement = db.compileStatement(buildInsert());
+        SQLiteStatement updateStatement = db.compileStatement(buildUpdate());
+        SQLiteStatement fingerprintStatement = db.compileStatement(buildFingerprintInsert());
+        int inserted = 0;
+        int updated = 0;
+        int unchanged = 0;
+        db.beginTransaction();
+        try {
+            for (Station station : stations) {
+                long rowId = findStation(selectStatement, station.UNIQUE_ID);
+                if (rowId < 0) {
+                    bindInsert(insertStatement, station);
+                    station._ID = insertStatement.executeInsert();
+                    inserted++;
+                } else {
+                    station._ID = rowId;
+                    bindUpdate(updateStatement, station, rowId);
+                    if (updateStatement.executeUpdateDelete() > 0) {
+                        updated++;
+                    } else {
+                        unchanged++;
+                    }
+                }
+                String fingerprint = (catalogFingerprints != null) ? catalogFingerprints.get(station.UNIQUE_ID) : null;
+                if (fingerprint != null) {
+                    fingerprintStatement.clearBindings();
+                    fingerprintStatement.bindString(1, station.UNIQUE_ID);
+                    fingerprintStatement.bindString(2, fingerprint);
+                    fingerprintStatement.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            selectStatement.close();
+            insertStatement.close();
+            updateStatement.close();
+            fingerprintStatement.close();
+        }
+
+        // count only what has been committed
+        mInsertedCount += inserted;
+        mUpdatedCount += updated;
+        mUnchangedCount += unchanged;
+        LogHelper.v(LOG_TAG, "Stations written. Inserted: " + inserted + " / updated: " + updated + " / unchanged: " + unchanged);
+    }
+
+
+    /* Getter for number of stations inserted */
+    public int getInsertedCount() {
+        return mInsertedCount;
+    }
+
+
+    /* Getter for number of existing stations whose catalog data changed */
+    public int getUpdatedCount() {
+        return mUpdatedCount;
+    }
+
+
+    /* Getter for number of existing stations that were up to date */
+    public int getUnchangedCount() {
+        return mUnchangedCount;
+    }
+
+
+    /* Returns row ID of station with given unique ID - -1 if there is none */
+    private static long findStation(SQLiteStatement selectStatement, String uniqueId) {
+        bindString(selectStatement, 1, uniqueId);
+        try {
+            return selectStatement.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return -1;
+        }
+    }
+
+
+    /* Binds values for INSERT - unique ID, catalog columns, rating, favourite */
+    private static void bindInsert(SQLiteStatement insertStatement, Station station) {
+        insertStatement.clearBindings();
+        bindString(insertStatement, 1, station.UNIQUE_ID);
+        bindCatalogValues(insertStatement, 2, station);
+        insertStatement.bindLong(CATALOG_COLUMNS.length + 2, station.RATING);
+        insertStatement.bindLong(CATALOG_COLUMNS.length + 3, 0); //default
+    }
+
+
+    /* Binds values for UPDATE - new catalog values, row ID, then the values once more for the change check */
+    private static void bindUpdate(SQLiteStatement updateStatement, Station station, long rowId) {
+        updateStatement.clearBindings();
+        bindCatalogValues(updateStatement, 1, station);
+        updateStatement.bindLong(CATALOG_COLUMNS.length + 1, rowId);
+        bindCatalogValues(updateStatement, CATALOG_COLUMNS.length + 2, station);
+    }
+
+
+    /* Binds catalog values in order of CATALOG_COLUMNS, starting at given index */
+    private static void bindCatalogValues(SQLiteStatement statement, int index, Station station) {
+        String[] values = {station.TITLE, station.SUBTITLE, station.DESCRIPTION, station.IMAGE_PATH,
+                station.IMAGE_FILE_NAME, station.SMALL_IMAGE_FILE_NAME, station.StreamURI, station.CONTENT_TYPE,
+                station.COMMA_SEPARATED_TAGS, station.CATEGORY, station.MarkdownDescription, station.SMALL_IMAGE_PATH,
+                station.MIRROR_URIS, station.VARIANT_URIS};
+        for (int i = 0; i < values.length; i++) {
+            bindString(statement, index + i, values[i]);
+        }
+    }
+
+
+    /* Binds string or NULL */
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+
+    /* Builds SELECT of row ID by unique ID */
+    private static String buildSelect() {
+        return "SELECT " + StationsDbContract.StationEntry._ID + " FROM " + TABLE_NAME +
+                " WHERE " + StationsDbContract.StationEntry.COLUMN_UNIQUE_ID + " = ? LIMIT 1";
+    }
+
+
+    /* Builds INSERT of a new station */
+    private static String buildInsert() {
+        StringBuilder columns = new StringBuilder(StationsDbContract.StationEntry.COLUMN_UNIQUE_ID);
+        StringBuilder placeholders = new StringBuilder("?");
+        for (String column : CATALOG_COLUMNS) {
+            columns.append(", ").append(column);
+            placeholders.append(", ?");
+        }
+        columns.append(", ").append(StationsDbContract.StationEntry.COLUMN_RATING);
+        columns.append(", ").append(StationsDbContract.StationEntry.COLUMN_IS_FAVOURITE);
+        placeholders.append(", ?, ?");
+        return "INSERT INTO " + TABLE_NAME + " (" + columns + ") VALUES (" + placeholders + ")";
+    }
+
+
+    /* Builds INSERT of a catalog fingerprint - replaces the one stored before */
+    private static String buildFingerprintInsert() {
+        return "INSERT OR REPLACE INTO " + StationsDbContract.CatalogEntry.TABLE_NAME + " (" +
+                StationsDbContract.CatalogEntry.COLUMN_UNIQUE_ID + ", " + StationsDbContract.CatalogEntry.COLUMN_FINGERPRINT + ") VALUES (?, ?)";
+    }
+
+
+    /* Builds UPDATE of catalog columns - matches no row if all values are equal already ("IS" compares NULLs, too) */
+    private static String buildUpdate() {
+        StringBuilder assignments = new StringBuilder();
+        StringBuilder unchanged = new StringBuilder();
+        for (String column : CATALOG_COLUMNS) {
+            if (assignments.length() > 0) {
+                assignments.append(", ");
+                unchanged.append(" AND ");
+            }
+            assignments.append(column).append(" = ?");
+            unchanged.append(column).append(" IS ?");
+        }
+        return "UPDATE " + TABLE_NAME + " SET " + assignments +
+                " WHERE " + StationsDbContract.StationEntry._ID + " = ? AND NOT (" + unchanged + ")";
+    }
+
+}
@@ -72,6 +72,64 @@ public final class StationsDbContract {
         public static final String COLUMN_SMALL_IMAGE_URL = "small_image_URL";
         public static final String COLUMN_IS_FAVOURITE = "is_favourite";
         public static final String COLUMN_THUMP_UP_STATUS = "thump_up_status";
+        public static final String COLUMN_MIRROR_URIS = "mirror_uris"; // newline separated, in order of preference
+        public static final String COLUMN_HEALTH_CONNECT_TIME = "health_connect_time"; // ms until response headers
+        public static final String COLUMN_HEALTH_FIRST_BYTE_TIME = "health_first_byte_time"; // ms until first audio bytes
+        public static final String COLUMN_HEALTH_BITRATE = "health_bitrate"; // kbit/s
+        public static final String COLUMN_HEALTH_SUCCESS_RATIO = "health_success_ratio"; // 0.0 to 1.0, NULL if never probed
+        public static final String COLUMN_HEALTH_LAST_PROBE = "health_last_probe"; // ms since epoch
+        public static final String COLUMN_VARIANT_URIS = "variant_uris"; // newline separated "<kbit/s> <uri>" lines
+    }
+
+    /* Inner class that defines the stream profile table - one row per stream URI */
+    public static class StreamProfileEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "stream_profiles";
+
+        public static final String COLUMN_STREAM_URI = "stream_uri";
+        public static final String COLUMN_FINAL_URL = "final_url";
+        public static final String COLUMN_IS_HLS = "is_hls";
+        public static final String COLUMN_ICY_METAINT = "icy_metaint";
+        public static final String COLUMN_ICY_BR = "icy_br";
+        public static final String COLUMN_CODEC = "codec";
+        public static final String COLUMN_LAST_VERIFIED = "last_verified";
+    }
+
+    /* Inner class that defines the data usage table - one row per station and day */
+    public static class DataUsageEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "data_usage";
+
+        public static final String COLUMN_STATION_ID = "station_id";
+        public static final String COLUMN_DAY = "day"; // yyyy-MM-dd, local time
+        public static final String COLUMN_BYTES = "bytes";
+    }
+
+    public static class QoeHistogramEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "qoe_histograms";
+
+        public static final String COLUMN_STATION_ID = "station_id";
+        public static final String COLUMN_METRIC = "metric";
+        public static final String COLUMN_BUCKETS = "buckets"; // comma-separated counts, see QoeHistogram
+    }
+
+    public static class ScheduleEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "schedules";
+
+        public static final String COLUMN_STATION_ID = "station_id";
+        public static final String COLUMN_HOUR = "hour";
+        public static final String COLUMN_MINUTE = "minute";
+        public static final String COLUMN_DAYS = "days"; // bit mask of weekdays, see PlaybackSchedule
+    }
+
+    public static class CatalogEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "catalog_entries";
+
+        public static final String COLUMN_UNIQUE_ID = "unique_id"; // of a station that came with the remote catalog
+        public static final String COLUMN_FINGERPRINT = "fingerprint"; // of the catalog entry as stored last time
     }
 
     public static class StationSearchProviderEntry implements BaseColumns {
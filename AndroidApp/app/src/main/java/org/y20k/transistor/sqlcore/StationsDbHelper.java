@@ -8,12 +8,18 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.support.v7.util.SortedList;
 
+import org.y20k.transistor.core.PlaybackSchedule;
+import org.y20k.transistor.core.QoeHistogram;
 import org.y20k.transistor.core.Station;
+import org.y20k.transistor.core.StreamProfile;
 import org.y20k.transistor.helpers.LogHelper;
 import org.y20k.transistor.helpers.StorageHelper;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.y20k.transistor.sqlcore.StationsDbContract.StationEntry.TABLE_NAME;
 
@@ -25,7 +31,7 @@ public class StationsDbHelper extends SQLiteOpenHelper {
     private static final String LOG_TAG = StationsDbHelper.class.getSimpleName();
 
     // If you change the database schema, you must increment the database version.
-    public static final int DATABASE_VERSION = 6;
+    public static final int DATABASE_VERSION = 14;
     public static final String DATABASE_NAME = "StationsDb.db";
     private Context mContect;
     private static final String[] Query_Projection_all; //initialized below
@@ -48,7 +54,14 @@ public class StationsDbHelper extends SQLiteOpenHelper {
                 StationsDbContract.StationEntry.COLUMN_MARKDOWN_DESCRIPTION,
                 StationsDbContract.StationEntry.COLUMN_SMALL_IMAGE_URL,
                 StationsDbContract.StationEntry.COLUMN_IS_FAVOURITE,
-                StationsDbContract.StationEntry.COLUMN_THUMP_UP_STATUS
+                StationsDbContract.StationEntry.COLUMN_THUMP_UP_STATUS,
+                StationsDbContract.StationEntry.COLUMN_MIRROR_URIS,
+                StationsDbContract.StationEntry.COLUMN_HEALTH_CONNECT_TIME,
+                StationsDbContract.StationEntry.COLUMN_HEALTH_FIRST_BYTE_TIME,
+                StationsDbContract.StationEntry.COLUMN_HEALTH_BITRATE,
+                StationsDbContract.StationEntry.COLUMN_HEALTH_SUCCESS_RATIO,
+                StationsDbContract.StationEntry.COLUMN_HEALTH_LAST_PROBE,
+                StationsDbContract.StationEntry.COLUMN_VARIANT_URIS
         };
     }
 
@@ -70,11 +83,84 @@ public class StationsDbHelper extends SQLiteOpenHelper {
                     StationsDbContract.StationEntry.COLUMN_COMMA_SEPARATED_TAGS + " TEXT," +
                     StationsDbContract.StationEntry.COLUMN_IS_FAVOURITE + " INTEGER," +
                     StationsDbContract.StationEntry.COLUMN_THUMP_UP_STATUS + " INTEGER," +
+                    StationsDbContract.StationEntry.COLUMN_MIRROR_URIS + " TEXT," +
+                    StationsDbContract.StationEntry.COLUMN_HEALTH_CONNECT_TIME + " INTEGER," +
+                    StationsDbContract.StationEntry.COLUMN_HEALTH_FIRST_BYTE_TIME + " INTEGER," +
+                    StationsDbContract.StationEntry.COLUMN_HEALTH_BITRATE + " INTEGER," +
+                    StationsDbContract.StationEntry.COLUMN_HEALTH_SUCCESS_RATIO + " REAL," +
+                    StationsDbContract.StationEntry.COLUMN_HEALTH_LAST_PROBE + " INTEGER," +
+                    StationsDbContract.StationEntry.COLUMN_VARIANT_URIS + " TEXT," +
                     StationsDbContract.StationEntry.COLUMN_NAME_SUBTITLE + " TEXT)";
 
     private static final String SQL_DELETE_ENTRIES =
             "DROP TABLE IF EXISTS " + TABLE_NAME;
 
+    private static final String SQL_ADD_MIRROR_URIS =
+            "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + StationsDbContract.StationEntry.COLUMN_MIRROR_URIS + " TEXT";
+
+    private static final String[] SQL_ADD_HEALTH_COLUMNS = {
+            "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + StationsDbContract.StationEntry.COLUMN_HEALTH_CONNECT_TIME + " INTEGER",
+            "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + StationsDbContract.StationEntry.COLUMN_HEALTH_FIRST_BYTE_TIME + " INTEGER",
+            "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + StationsDbContract.StationEntry.COLUMN_HEALTH_BITRATE + " INTEGER",
+            "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + StationsDbContract.StationEntry.COLUMN_HEALTH_SUCCESS_RATIO + " REAL",
+            "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + StationsDbContract.StationEntry.COLUMN_HEALTH_LAST_PROBE + " INTEGER"
+    };
+
+    private static final String SQL_ADD_VARIANT_URIS =
+            "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + StationsDbContract.StationEntry.COLUMN_VARIANT_URIS + " TEXT";
+
+    // weight of the newest probe in the success ratio - a dead station sinks after two or three failed probes
+    private static final double HEALTH_RATIO_WEIGHT = 0.4;
+
+    // sorts stations that failed most recent probes to the end
+    public static final String SORT_UNHEALTHY_LAST = "(CASE WHEN " + StationsDbContract.StationEntry.COLUMN_HEALTH_SUCCESS_RATIO
+            + " < " + Station.UNHEALTHY_SUCCESS_RATIO + " THEN 1 ELSE 0 END)";
+
+    private static final String SQL_CREATE_STREAM_PROFILES =
+            "CREATE TABLE IF NOT EXISTS " + StationsDbContract.StreamProfileEntry.TABLE_NAME + " (" +
+                    StationsDbContract.StreamProfileEntry._ID + " INTEGER PRIMARY KEY," +
+                    StationsDbContract.StreamProfileEntry.COLUMN_STREAM_URI + " TEXT UNIQUE," +
+                    StationsDbContract.StreamProfileEntry.COLUMN_FINAL_URL + " TEXT," +
+                    StationsDbContract.StreamProfileEntry.COLUMN_IS_HLS + " INTEGER," +
+                    StationsDbContract.StreamProfileEntry.COLUMN_ICY_METAINT + " INTEGER," +
+                    StationsDbContract.StreamProfileEntry.COLUMN_ICY_BR + " INTEGER," +
+                    StationsDbContract.StreamProfileEntry.COLUMN_CODEC + " TEXT," +
+                    StationsDbContract.StreamProfileEntry.COLUMN_LAST_VERIFIED + " INTEGER)";
+
+    private static final String SQL_CREATE_DATA_USAGE =
+            "CREATE TABLE IF NOT EXISTS " + StationsDbContract.DataUsageEntry.TABLE_NAME + " (" +
+                    StationsDbContract.DataUsageEntry.COLUMN_STATION_ID + " INTEGER," +
+                    StationsDbContract.DataUsageEntry.COLUMN_DAY + " TEXT," +
+                    StationsDbContract.DataUsageEntry.COLUMN_BYTES + " INTEGER," +
+                    "PRIMARY KEY (" + StationsDbContract.DataUsageEntry.COLUMN_STATION_ID + ", " +
+                    StationsDbContract.DataUsageEntry.COLUMN_DAY + "))";
+
+    private static final String SQL_CREATE_QOE_HISTOGRAMS =
+            "CREATE TABLE IF NOT EXISTS " + StationsDbContract.QoeHistogramEntry.TABLE_NAME + " (" +
+                    StationsDbContract.QoeHistogramEntry.COLUMN_STATION_ID + " INTEGER," +
+                    StationsDbContract.QoeHistogramEntry.COLUMN_METRIC + " TEXT," +
+                    StationsDbContract.QoeHistogramEntry.COLUMN_BUCKETS + " TEXT," +
+                    "PRIMARY KEY (" + StationsDbContract.QoeHistogramEntry.COLUMN_STATION_ID + ", " +
+                    StationsDbContract.QoeHistogramEntry.COLUMN_METRIC + "))";
+
+    private static final String SQL_CREATE_SCHEDULES =
+            "CREATE TABLE IF NOT EXISTS " + StationsDbContract.ScheduleEntry.TABLE_NAME + " (" +
+                    StationsDbContract.ScheduleEntry._ID + " INTEGER PRIMARY KEY," +
+                    StationsDbContract.ScheduleEntry.COLUMN_STATION_ID + " INTEGER," +
+                    StationsDbContract.ScheduleEntry.COLUMN_HOUR + " INTEGER," +
+                    StationsDbContract.ScheduleEntry.COLUMN_MINUTE + " INTEGER," +
+                    StationsDbContract.ScheduleEntry.COLUMN_DAYS + " INTEGER)";
+
+    private static final String SQL_CREATE_CATALOG_ENTRIES =
+            "CREATE TABLE IF NOT EXISTS " + StationsDbContract.CatalogEntry.TABLE_NAME + " (" +
+                    StationsDbContract.CatalogEntry.COLUMN_UNIQUE_ID + " TEXT PRIMARY KEY," +
+                    StationsDbContract.CatalogEntry.COLUMN_FINGERPRINT + " TEXT)";
+
+    // not unique - older databases may hold duplicates
+    private static final String SQL_CREATE_UNIQUE_ID_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_" + StationsDbContract.StationEntry.COLUMN_UNIQUE_ID + " ON " +
+                    TABLE_NAME + " (" + StationsDbContract.StationEntry.COLUMN_UNIQUE_ID + ")";
+
     public StationsDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
         mContect = context;
@@ -83,14 +169,53 @@ public class StationsDbHelper extends SQLiteOpenHelper {
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SQL_CREATE_ENTRIES);
+        db.execSQL(SQL_CREATE_STREAM_PROFILES);
+        db.execSQL(SQL_CREATE_DATA_USAGE);
+        db.execSQL(SQL_CREATE_QOE_HISTOGRAMS);
+        db.execSQL(SQL_CREATE_SCHEDULES);
+        db.execSQL(SQL_CREATE_UNIQUE_ID_INDEX);
+        db.execSQL(SQL_CREATE_CATALOG_ENTRIES);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        db.execSQL(SQL_DELETE_ENTRIES);
-        onCreate(db);
+        if (oldVersion < 6) {
+            // schema before version 6 is only a cache for online data, so its upgrade policy is
+            // to simply to discard the data and start over
+            db.execSQL(SQL_DELETE_ENTRIES);
+            db.execSQL(SQL_CREATE_ENTRIES);
+        }
+        // from version 6 on upgrade step by step, keeping favourites and ratings of the user
+        if (oldVersion < 7) {
+            db.execSQL(SQL_CREATE_STREAM_PROFILES);
+        }
+        if (oldVersion < 8 && oldVersion >= 6) {
+            // tables created fresh above already have the column
+            db.execSQL(SQL_ADD_MIRROR_URIS);
+        }
+        if (oldVersion < 9 && oldVersion >= 6) {
+            for (String sql : SQL_ADD_HEALTH_COLUMNS) {
+                db.execSQL(sql);
+            }
+        }
+        if (oldVersion < 10) {
+            if (oldVersion >= 6) {
+                db.execSQL(SQL_ADD_VARIANT_URIS);
+            }
+            db.execSQL(SQL_CREATE_DATA_USAGE);
+        }
+        if (oldVersion < 11) {
+            db.execSQL(SQL_CREATE_QOE_HISTOGRAMS);
+        }
+        if (oldVersion < 12) {
+            db.execSQL(SQL_CREATE_SCHEDULES);
+        }
+        if (oldVersion < 13) {
+            db.execSQL(SQL_CREATE_UNIQUE_ID_INDEX);
+        }
+        if (oldVersion < 14) {
+            db.execSQL(SQL_CREATE_CATALOG_ENTRIES);
+        }
     }
 
     //delete station from DB
@@ -98,7 +223,9 @@ public class StationsDbHelper extends SQLiteOpenHelper {
         // Gets the data repository in write mode
         SQLiteDatabase db = this.getWritableDatabase();
 
-        //update db
+        //update db - scheduled starts of the station go with it
+        db.delete(StationsDbContract.ScheduleEntry.TABLE_NAME,
+                StationsDbContract.ScheduleEntry.COLUMN_STATION_ID + " = " + String.valueOf(station_ID), null);
         String strFilter = StationsDbContract.StationEntry._ID + " = " + String.valueOf(station_ID);
         return db.delete(TABLE_NAME, strFilter, null);
     }
@@ -233,6 +360,18 @@ public class StationsDbHelper extends SQLiteOpenHelper {
                         cursor.getColumnIndexOrThrow(StationsDbContract.StationEntry.COLUMN_IS_FAVOURITE));
                 station.THUMP_UP_STATUS = cursor.getString(
                         cursor.getColumnIndexOrThrow(StationsDbContract.StationEntry.COLUMN_THUMP_UP_STATUS));
+                station.MIRROR_URIS = cursor.getString(
+                        cursor.getColumnIndexOrThrow(StationsDbContract.StationEntry.COLUMN_MIRROR_URIS));
+                station.HEALTH_CONNECT_TIME = cursor.getInt(
+                        cursor.getColumnIndexOrThrow(StationsDbContract.StationEntry.COLUMN_HEALTH_CONNECT_TIME));
+                station.HEALTH_FIRST_BYTE_TIME = cursor.getInt(
+                        cursor.getColumnIndexOrThrow(StationsDbContract.StationEntry.COLUMN_HEALTH_FIRST_BYTE_TIME));
+                station.HEALTH_BITRATE = cursor.getInt(
+                        cursor.getColumnIndexOrThrow(StationsDbContract.StationEntry.COLUMN_HEALTH_BITRATE));
+                int successRatioIndex = cursor.getColumnIndexOrThrow(StationsDbContract.StationEntry.COLUMN_HEALTH_SUCCESS_RATIO);
+                station.HEALTH_SUCCESS_RATIO = cursor.isNull(successRatioIndex) ? -1 : cursor.getFloat(successRatioIndex);
+                station.VARIANT_URIS = cursor.getString(
+                        cursor.getColumnIndexOrThrow(StationsDbContract.StationEntry.COLUMN_VARIANT_URIS));
 
                 mStationListTemp.add(station);
             }
@@ -321,7 +460,7 @@ public class StationsDbHelper extends SQLiteOpenHelper {
                     new String[]{"%" + selectionArgs[0].toString() + "%","%" + selectionArgs[0].toString() + "%"},  // The values for the WHERE clause
                     null,                                       // don't group the rows
                     null,                                       // don't filter by row groups
-                    null,
+                    SORT_UNHEALTHY_LAST,
                     "20" //limit
             );
             return cursor;
@@ -344,6 +483,305 @@ public class StationsDbHelper extends SQLiteOpenHelper {
 //        return cursor;
     }
 
+    //get stream profile of given stream URI - returns null if stream has never been played
+    public StreamProfile GetStreamProfile(String streamUri) {
+        if (streamUri == null) {
+            return null;
+        }
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(
+                StationsDbContract.StreamProfileEntry.TABLE_NAME,
+                null,
+                StationsDbContract.StreamProfileEntry.COLUMN_STREAM_URI + " = ?",
+                new String[]{streamUri},
+                null,
+                null,
+                null
+        );
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            StreamProfile profile = new StreamProfile();
+            profile.STREAM_URI = streamUri;
+            profile.FINAL_URL = cursor.getString(
+                    cursor.getColumnIndexOrThrow(StationsDbContract.StreamProfileEntry.COLUMN_FINAL_URL));
+            profile.IS_HLS = cursor.getInt(
+                    cursor.getColumnIndexOrThrow(StationsDbContract.StreamProfileEntry.COLUMN_IS_HLS)) == 1;
+            profile.ICY_METAINT = cursor.getInt(
+                    cursor.getColumnIndexOrThrow(StationsDbContract.StreamProfileEntry.COLUMN_ICY_METAINT));
+            profile.ICY_BR = cursor.getInt(
+                    cursor.getColumnIndexOrThrow(StationsDbContract.StreamProfileEntry.COLUMN_ICY_BR));
+            profile.CODEC = cursor.getString(
+                    cursor.getColumnIndexOrThrow(StationsDbContract.StreamProfileEntry.COLUMN_CODEC));
+            profile.LAST_VERIFIED = cursor.getLong(
+                    cursor.getColumnIndexOrThrow(StationsDbContract.StreamProfileEntry.COLUMN_LAST_VERIFIED));
+            return profile;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //insert or replace stream profile
+    public long SaveStreamProfile(StreamProfile profile) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(StationsDbContract.StreamProfileEntry.COLUMN_STREAM_URI, profile.STREAM_URI);
+        values.put(StationsDbContract.StreamProfileEntry.COLUMN_FINAL_URL, profile.FINAL_URL);
+        values.put(StationsDbContract.StreamProfileEntry.COLUMN_IS_HLS, profile.IS_HLS ? 1 : 0);
+        values.put(StationsDbContract.StreamProfileEntry.COLUMN_ICY_METAINT, profile.ICY_METAINT);
+        values.put(StationsDbContract.StreamProfileEntry.COLUMN_ICY_BR, profile.ICY_BR);
+        values.put(StationsDbContract.StreamProfileEntry.COLUMN_CODEC, profile.CODEC);
+        values.put(StationsDbContract.StreamProfileEntry.COLUMN_LAST_VERIFIED, profile.LAST_VERIFIED);
+        return db.insertWithOnConflict(StationsDbContract.StreamProfileEntry.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    //delete stream profile - next playback will probe the stream again
+    public int DeleteStreamProfile(String streamUri) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        return db.delete(StationsDbContract.StreamProfileEntry.TABLE_NAME,
+                StationsDbContract.StreamProfileEntry.COLUMN_STREAM_URI + " = ?",
+                new String[]{streamUri});
+    }
+
+    //store result of a health probe - timings and bitrate only if the probe succeeded, success ratio is a moving average
+    public void SaveStationHealth(long station_ID, boolean success, int connectTime, int firstByteTime, int bitrate) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        String ratio = StationsDbContract.StationEntry.COLUMN_HEALTH_SUCCESS_RATIO;
+        double result = success ? 1.0 : 0.0;
+        StringBuilder sql = new StringBuilder("UPDATE " + TABLE_NAME + " SET ")
+                .append(ratio).append(" = CASE WHEN ").append(ratio).append(" IS NULL THEN ").append(result)
+                .append(" ELSE ").append(ratio).append(" * ").append(1 - HEALTH_RATIO_WEIGHT)
+                .append(" + ").append(result * HEALTH_RATIO_WEIGHT).append(" END, ")
+                .append(StationsDbContract.StationEntry.COLUMN_HEALTH_LAST_PROBE).append(" = ").append(System.currentTimeMillis());
+        if (success) {
+            sql.append(", ").append(StationsDbContract.StationEntry.COLUMN_HEALTH_CONNECT_TIME).append(" = ").append(connectTime)
+                    .append(", ").append(StationsDbContract.StationEntry.COLUMN_HEALTH_FIRST_BYTE_TIME).append(" = ").append(firstByteTime);
+            if (bitrate > 0) {
+                sql.append(", ").append(StationsDbContract.StationEntry.COLUMN_HEALTH_BITRATE).append(" = ").append(bitrate);
+            }
+        }
+        sql.append(" WHERE ").append(StationsDbContract.StationEntry._ID).append(" = ").append(station_ID);
+        db.execSQL(sql.toString());
+    }
+
+    //add bytes streamed from station today
+    public void AddDataUsage(long station_ID, String day, long bytes) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.execSQL("INSERT OR IGNORE INTO " + StationsDbContract.DataUsageEntry.TABLE_NAME + " ("
+                        + StationsDbContract.DataUsageEntry.COLUMN_STATION_ID + ", "
+                        + StationsDbContract.DataUsageEntry.COLUMN_DAY + ", "
+                        + StationsDbContract.DataUsageEntry.COLUMN_BYTES + ") VALUES (?, ?, 0)",
+                new Object[]{station_ID, day});
+        db.execSQL("UPDATE " + StationsDbContract.DataUsageEntry.TABLE_NAME + " SET "
+                        + StationsDbContract.DataUsageEntry.COLUMN_BYTES + " = " + StationsDbContract.DataUsageEntry.COLUMN_BYTES + " + ?"
+                        + " WHERE " + StationsDbContract.DataUsageEntry.COLUMN_STATION_ID + " = ?"
+                        + " AND " + StationsDbContract.DataUsageEntry.COLUMN_DAY + " = ?",
+                new Object[]{bytes, station_ID, day});
+    }
+
+    //get bytes streamed on given day - of one station, or of all stations if station ID is -1
+    public long GetDataUsage(long station_ID, String day) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        String selection = StationsDbContract.DataUsageEntry.COLUMN_DAY + " = ?";
+        String[] selectionArgs = new String[]{day};
+        if (station_ID != -1) {
+            selection += " AND " + StationsDbContract.DataUsageEntry.COLUMN_STATION_ID + " = ?";
+            selectionArgs = new String[]{day, String.valueOf(station_ID)};
+        }
+        Cursor cursor = db.query(StationsDbContract.DataUsageEntry.TABLE_NAME,
+                new String[]{"SUM(" + StationsDbContract.DataUsageEntry.COLUMN_BYTES + ")"},
+                selection, selectionArgs, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //delete data usage of days before given day
+    public int DeleteDataUsageBefore(String day) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        return db.delete(StationsDbContract.DataUsageEntry.TABLE_NAME,
+                StationsDbContract.DataUsageEntry.COLUMN_DAY + " < ?",
+                new String[]{day});
+    }
+
+    //count values of one play session in the histograms of the station - in one transaction
+    public void AddQoeSamples(long station_ID, Map<String, Long> samples) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Map.Entry<String, Long> sample : samples.entrySet()) {
+                Cursor cursor = db.query(StationsDbContract.QoeHistogramEntry.TABLE_NAME,
+                        new String[]{StationsDbContract.QoeHistogramEntry.COLUMN_BUCKETS},
+                        StationsDbContract.QoeHistogramEntry.COLUMN_STATION_ID + " = ? AND "
+                                + StationsDbContract.QoeHistogramEntry.COLUMN_METRIC + " = ?",
+                        new String[]{String.valueOf(station_ID), sample.getKey()}, null, null, null);
+                String buckets;
+                try {
+                    buckets = cursor.moveToFirst() ? cursor.getString(0) : null;
+                } finally {
+                    cursor.close();
+                }
+                QoeHistogram histogram = new QoeHistogram(station_ID, null, sample.getKey(), buckets);
+                histogram.add(sample.getValue());
+
+                ContentValues values = new ContentValues();
+                values.put(StationsDbContract.QoeHistogramEntry.COLUMN_STATION_ID, station_ID);
+                values.put(StationsDbContract.QoeHistogramEntry.COLUMN_METRIC, sample.getKey());
+                values.put(StationsDbContract.QoeHistogramEntry.COLUMN_BUCKETS, histogram.toString());
+                db.insertWithOnConflict(StationsDbContract.QoeHistogramEntry.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    //get histograms of all stations, ordered by station title
+    public ArrayList<QoeHistogram> GetQoeHistograms() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT h." + StationsDbContract.QoeHistogramEntry.COLUMN_STATION_ID
+                + ", s." + StationsDbContract.StationEntry.COLUMN_NAME_TITLE
+                + ", h." + StationsDbContract.QoeHistogramEntry.COLUMN_METRIC
+                + ", h." + StationsDbContract.QoeHistogramEntry.COLUMN_BUCKETS
+                + " FROM " + StationsDbContract.QoeHistogramEntry.TABLE_NAME + " h"
+                + " LEFT JOIN " + TABLE_NAME + " s ON s." + StationsDbContract.StationEntry._ID
+                + " = h." + StationsDbContract.QoeHistogramEntry.COLUMN_STATION_ID
+                + " ORDER BY s." + StationsDbContract.StationEntry.COLUMN_NAME_TITLE
+                + ", h." + StationsDbContract.QoeHistogramEntry.COLUMN_STATION_ID, null);
+        ArrayList<QoeHistogram> histograms = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                histograms.add(new QoeHistogram(cursor.getLong(0), cursor.getString(1), cursor.getString(2), cursor.getString(3)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return histograms;
+    }
+
+    //delete all histograms
+    public int DeleteQoeHistograms() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        return db.delete(StationsDbContract.QoeHistogramEntry.TABLE_NAME, null, null);
+    }
+
+    //add scheduled start - returns row ID
+    public long AddSchedule(PlaybackSchedule schedule) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(StationsDbContract.ScheduleEntry.COLUMN_STATION_ID, schedule.STATION_ID);
+        values.put(StationsDbContract.ScheduleEntry.COLUMN_HOUR, schedule.HOUR);
+        values.put(StationsDbContract.ScheduleEntry.COLUMN_MINUTE, schedule.MINUTE);
+        values.put(StationsDbContract.ScheduleEntry.COLUMN_DAYS, schedule.DAYS);
+        schedule._ID = db.insert(StationsDbContract.ScheduleEntry.TABLE_NAME, null, values);
+        return schedule._ID;
+    }
+
+    //get scheduled starts - of one station, or of all stations if station ID is -1
+    public ArrayList<PlaybackSchedule> GetSchedules(long station_ID) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        String selection = null;
+        String[] selectionArgs = null;
+        if (station_ID != -1) {
+            selection = StationsDbContract.ScheduleEntry.COLUMN_STATION_ID + " = ?";
+            selectionArgs = new String[]{String.valueOf(station_ID)};
+        }
+        Cursor cursor = db.query(StationsDbContract.ScheduleEntry.TABLE_NAME,
+                new String[]{StationsDbContract.ScheduleEntry._ID,
+                        StationsDbContract.ScheduleEntry.COLUMN_STATION_ID,
+                        StationsDbContract.ScheduleEntry.COLUMN_HOUR,
+                        StationsDbContract.ScheduleEntry.COLUMN_MINUTE,
+                        StationsDbContract.ScheduleEntry.COLUMN_DAYS},
+                selection, selectionArgs, null, null,
+                StationsDbContract.ScheduleEntry.COLUMN_HOUR + ", " + StationsDbContract.ScheduleEntry.COLUMN_MINUTE);
+        ArrayList<PlaybackSchedule> schedules = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                PlaybackSchedule schedule = new PlaybackSchedule(cursor.getLong(1), cursor.getInt(2), cursor.getInt(3), cursor.getInt(4));
+                schedule._ID = cursor.getLong(0);
+                schedules.add(schedule);
+            }
+        } finally {
+            cursor.close();
+        }
+        return schedules;
+    }
+
+    //delete scheduled start
+    public int DeleteSchedule(long schedule_ID) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        return db.delete(StationsDbContract.ScheduleEntry.TABLE_NAME,
+                StationsDbContract.ScheduleEntry._ID + " = ?",
+                new String[]{String.valueOf(schedule_ID)});
+    }
+
+    //get fingerprints of catalog entries - unique ID to fingerprint
+    public Map<String, String> GetCatalogFingerprints() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(StationsDbContract.CatalogEntry.TABLE_NAME,
+                new String[]{StationsDbContract.CatalogEntry.COLUMN_UNIQUE_ID, StationsDbContract.CatalogEntry.COLUMN_FINGERPRINT},
+                null, null, null, null, null);
+        Map<String, String> fingerprints = new HashMap<>();
+        try {
+            while (cursor.moveToNext()) {
+                fingerprints.put(cursor.getString(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return fingerprints;
+    }
+
+    //save fingerprints of catalog entries - in one transaction
+    public void SaveCatalogFingerprints(Map<String, String> fingerprints) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Map.Entry<String, String> fingerprint : fingerprints.entrySet()) {
+                ContentValues values = new ContentValues();
+                values.put(StationsDbContract.CatalogEntry.COLUMN_UNIQUE_ID, fingerprint.getKey());
+                values.put(StationsDbContract.CatalogEntry.COLUMN_FINGERPRINT, fingerprint.getValue());
+                db.insertWithOnConflict(StationsDbContract.CatalogEntry.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    //delete stations removed from catalog - with their fingerprints and schedules, in one transaction. Returns row IDs of deleted stations
+    public ArrayList<Long> DeleteCatalogStations(Collection<String> uniqueIds) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ArrayList<Long> deletedIds = new ArrayList<>();
+        db.beginTransaction();
+        try {
+            for (String uniqueId : uniqueIds) {
+                String[] selectionArgs = {uniqueId};
+                Cursor cursor = db.query(TABLE_NAME, new String[]{StationsDbContract.StationEntry._ID},
+                        StationsDbContract.StationEntry.COLUMN_UNIQUE_ID + " = ?", selectionArgs, null, null, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        long stationId = cursor.getLong(0);
+                        db.delete(StationsDbContract.ScheduleEntry.TABLE_NAME,
+                                StationsDbContract.ScheduleEntry.COLUMN_STATION_ID + " = " + stationId, null);
+                        deletedIds.add(stationId);
+                    }
+                } finally {
+                    cursor.close();
+                }
+                db.delete(TABLE_NAME, StationsDbContract.StationEntry.COLUMN_UNIQUE_ID + " = ?", selectionArgs);
+                db.delete(StationsDbContract.CatalogEntry.TABLE_NAME, StationsDbContract.CatalogEntry.COLUMN_UNIQUE_ID + " = ?", selectionArgs);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return deletedIds;
+    }
+
     //get stations count
     public int GetStationsCount() {
 